@@ -0,0 +1,225 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.camera;
+
+import android.graphics.ImageFormat;
+import android.graphics.SurfaceTexture;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Handler;
+import android.util.Size;
+import androidx.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the camera id list, the parsed characteristics of each camera and the sizes chosen for
+ * each resolution preset, so that listing and opening cameras does not query the camera service
+ * every time.
+ *
+ * <p>Characteristics don't change while a device is connected, so cameras becoming unavailable,
+ * for example because another app opened them, are ignored. The id list is only read again when
+ * {@link CameraManager.AvailabilityCallback} reports a camera that was not listed before, such as
+ * a newly connected external camera.
+ *
+ * <p>All methods must be called on the thread of the handler passed to the constructor. The cache
+ * is shared by every plugin instance, so its {@link CameraManager} must come from the application
+ * context.
+ */
+class CameraCharacteristicsCache {
+  /** The characteristics the plugin reads from {@link CameraCharacteristics}. */
+  static class CameraInfo {
+    final int sensorOrientation;
+    final int lensFacing;
+    final Size[] previewSizes;
+    final Size captureSize;
+    final int timestampSource;
+
+    CameraInfo(
+        int sensorOrientation,
+        int lensFacing,
+        Size[] previewSizes,
+        Size captureSize,
+        int timestampSource) {
+      this.sensorOrientation = sensorOrientation;
+      this.lensFacing = lensFacing;
+      this.previewSizes = previewSizes;
+      this.captureSize = captureSize;
+      this.timestampSource = timestampSource;
+    }
+  }
+
+  /** The preview and recording sizes chosen for a preset. */
+  static class SizeSelection {
+    final Size previewSize;
+    final Size videoSize;
+
+    SizeSelection(Size previewSize, Size videoSize) {
+      this.previewSize = previewSize;
+      this.videoSize = videoSize;
+    }
+  }
+
+  static class CompareSizesByArea implements Comparator<Size> {
+    @Override
+    public int compare(Size lhs, Size rhs) {
+      // We cast here to ensure the multiplications won't overflow.
+      return Long.signum(
+          (long) lhs.getWidth() * lhs.getHeight() - (long) rhs.getWidth() * rhs.getHeight());
+    }
+  }
+
+  private final CameraManager cameraManager;
+  private final Map<String, CameraInfo> cameraInfos = new HashMap<>();
+  private final Map<String, SizeSelection> sizeSelections = new HashMap<>();
+  // The ids of the cameras listed or queried so far.
+  private final Set<String> knownCameraIds = new HashSet<>();
+  private String[] cameraIds;
+
+  CameraCharacteristicsCache(CameraManager cameraManager, Handler handler) {
+    this.cameraManager = cameraManager;
+    cameraManager.registerAvailabilityCallback(
+        new CameraManager.AvailabilityCallback() {
+          @Override
+          public void onCameraAvailable(@NonNull String cameraId) {
+            if (!knownCameraIds.contains(cameraId)) {
+              invalidate(cameraId);
+            }
+          }
+        },
+        handler);
+  }
+
+  String[] getCameraIds() throws CameraAccessException {
+    if (cameraIds == null) {
+      cameraIds = cameraManager.getCameraIdList();
+      knownCameraIds.addAll(Arrays.asList(cameraIds));
+    }
+    return cameraIds;
+  }
+
+  CameraInfo getCameraInfo(String cameraId) throws CameraAccessException {
+    CameraInfo info = cameraInfos.get(cameraId);
+    if (info == null) {
+      CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
+      StreamConfigurationMap streamConfigurationMap =
+          characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+      //noinspection ConstantConditions
+      info =
+          new CameraInfo(
+              characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION),
+              characteristics.get(CameraCharacteristics.LENS_FACING),
+              streamConfigurationMap.getOutputSizes(SurfaceTexture.class),
+              // For still image captures, we use the largest available size.
+              Collections.max(
+                  Arrays.asList(streamConfigurationMap.getOutputSizes(ImageFormat.JPEG)),
+                  new CompareSizesByArea()),
+              characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE));
+      cameraInfos.put(cameraId, info);
+      knownCameraIds.add(cameraId);
+    }
+    return info;
+  }
+
+  /**
+   * Returns the preview and recording sizes for a preset on a screen of the given size, in the
+   * orientation of the sensor.
+   */
+  SizeSelection getSizeSelection(
+      String cameraId, String resolutionPreset, int screenWidth, int screenHeight)
+      throws CameraAccessException {
+    final String key = cameraId + '/' + resolutionPreset + '/' + screenWidth + 'x' + screenHeight;
+    SizeSelection selection = sizeSelections.get(key);
+    if (selection == null) {
+      selection =
+          selectSizes(
+              getCameraInfo(cameraId),
+              getMinPreviewSize(resolutionPreset),
+              screenWidth,
+              screenHeight);
+      sizeSelections.put(key, selection);
+    }
+    return selection;
+  }
+
+  /** Records that this plugin opened {@code cameraId}, so its unavailability is expected. */
+  private void invalidate(String cameraId) {
+    cameraIds = null;
+    cameraInfos.remove(cameraId);
+    final String prefix = cameraId + '/';
+    for (Iterator<String> keys = sizeSelections.keySet().iterator(); keys.hasNext(); ) {
+      if (keys.next().startsWith(prefix)) {
+        keys.remove();
+      }
+    }
+  }
+
+  private static Size getMinPreviewSize(String resolutionPreset) {
+    switch (resolutionPreset) {
+      case "high":
+        return new Size(1024, 768);
+      case "medium":
+        return new Size(640, 480);
+      case "low":
+        return new Size(320, 240);
+      default:
+        throw new IllegalArgumentException("Unknown preset: " + resolutionPreset);
+    }
+  }
+
+  private static SizeSelection selectSizes(
+      CameraInfo info, Size minPreviewSize, int screenWidth, int screenHeight) {
+    final Size[] sizes = info.previewSizes;
+
+    // Preview size and video size should not be greater than screen resolution or 1080.
+    List<Size> goodEnough = new ArrayList<>();
+    for (Size s : sizes) {
+      if (minPreviewSize.getWidth() < s.getWidth()
+          && minPreviewSize.getHeight() < s.getHeight()
+          && s.getWidth() <= screenWidth
+          && s.getHeight() <= screenHeight
+          && s.getHeight() <= 1080) {
+        goodEnough.add(s);
+      }
+    }
+
+    Collections.sort(goodEnough, new CompareSizesByArea());
+
+    if (goodEnough.isEmpty()) {
+      return new SizeSelection(sizes[0], sizes[0]);
+    }
+
+    final Size captureSize = info.captureSize;
+    float captureSizeRatio = (float) captureSize.getWidth() / captureSize.getHeight();
+
+    Size previewSize = goodEnough.get(0);
+    for (Size s : goodEnough) {
+      if ((float) s.getWidth() / s.getHeight() == captureSizeRatio) {
+        previewSize = s;
+        break;
+      }
+    }
+
+    Collections.reverse(goodEnough);
+    Size videoSize = goodEnough.get(0);
+    for (Size s : goodEnough) {
+      if ((float) s.getWidth() / s.getHeight() == captureSizeRatio) {
+        videoSize = s;
+        break;
+      }
+    }
+    return new SizeSelection(previewSize, videoSize);
+  }
+}
@@ -12,24 +12,34 @@ import android.graphics.Point;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
-import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CameraMetadata;
 import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
-import android.hardware.camera2.params.StreamConfigurationMap;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.CamcorderProfile;
 import android.media.Image;
 import android.media.ImageReader;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
 import android.media.MediaRecorder;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
 import android.util.Size;
 import android.view.Display;
 import android.view.OrientationEventListener;
 import android.view.Surface;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryCodec;
 import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
@@ -39,23 +49,35 @@ import io.flutter.plugin.common.PluginRegistry;
 import io.flutter.plugin.common.PluginRegistry.Registrar;
 import io.flutter.view.FlutterView;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class CameraPlugin implements MethodCallHandler {
 
   private static final int CAMERA_REQUEST_ID = 513469796;
   private static final String TAG = "CameraPlugin";
+  // Candidate profiles for the default video encoding, largest first.
+  private static final int[] CAMCORDER_QUALITIES = {
+    CamcorderProfile.QUALITY_2160P,
+    CamcorderProfile.QUALITY_1080P,
+    CamcorderProfile.QUALITY_720P,
+    CamcorderProfile.QUALITY_480P,
+    CamcorderProfile.QUALITY_CIF,
+    CamcorderProfile.QUALITY_QVGA
+  };
 
   private static CameraManager cameraManager;
+  private static CameraCharacteristicsCache cameraCharacteristicsCache;
   private final FlutterView view;
   private Camera camera;
   private Activity activity;
@@ -140,6 +162,15 @@ public class CameraPlugin implements MethodCallHandler {
         new MethodChannel(registrar.messenger(), "plugins.flutter.io/camera");
 
     cameraManager = (CameraManager) registrar.activity().getSystemService(Context.CAMERA_SERVICE);
+    if (cameraCharacteristicsCache == null) {
+      // The cache outlives the activity, so it must not hold the activity's CameraManager.
+      CameraManager applicationCameraManager =
+          (CameraManager)
+              registrar.context().getApplicationContext().getSystemService(Context.CAMERA_SERVICE);
+      cameraCharacteristicsCache =
+          new CameraCharacteristicsCache(
+              applicationCameraManager, new Handler(Looper.getMainLooper()));
+    }
 
     channel.setMethodCallHandler(
         new CameraPlugin(registrar, registrar.view(), registrar.activity()));
@@ -150,16 +181,12 @@ public class CameraPlugin implements MethodCallHandler {
     switch (call.method) {
       case "availableCameras":
         try {
-          String[] cameraNames = cameraManager.getCameraIdList();
+          String[] cameraNames = cameraCharacteristicsCache.getCameraIds();
           List<Map<String, Object>> cameras = new ArrayList<>();
           for (String cameraName : cameraNames) {
             HashMap<String, Object> details = new HashMap<>();
-            CameraCharacteristics characteristics =
-                cameraManager.getCameraCharacteristics(cameraName);
             details.put("name", cameraName);
-            @SuppressWarnings("ConstantConditions")
-            int lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
-            switch (lensFacing) {
+            switch (cameraCharacteristicsCache.getCameraInfo(cameraName).lensFacing) {
               case CameraMetadata.LENS_FACING_FRONT:
                 details.put("lensFacing", "front");
                 break;
@@ -196,10 +223,17 @@ public class CameraPlugin implements MethodCallHandler {
           camera.takePicture((String) call.argument("path"), result);
           break;
         }
+      case "takePictureBurst":
+        {
+          final List<String> paths = call.argument("paths");
+          camera.takePictureBurst(paths, result);
+          break;
+        }
       case "startVideoRecording":
         {
           final String filePath = call.argument("filePath");
-          camera.startVideoRecording(filePath, result);
+          final Map<String, Object> encoding = call.argument("encoding");
+          camera.startVideoRecording(filePath, encoding, result);
           break;
         }
       case "stopVideoRecording":
@@ -210,21 +244,50 @@ public class CameraPlugin implements MethodCallHandler {
       case "startImageStream":
         {
           try {
-            camera.startPreviewWithImageStream();
-            result.success(null);
-          } catch (CameraAccessException e) {
-            result.error("CameraAccess", e.getMessage(), null);
+            Boolean binaryTransport = call.argument("binaryTransport");
+            Integer maxFramesInFlight = call.argument("maxFramesInFlight");
+            ImageStreamTransform transform = null;
+            if (call.argument("planes") != null) {
+              transform =
+                  new ImageStreamTransform(
+                      intArgument(call, "cropLeft"),
+                      intArgument(call, "cropTop"),
+                      intArgument(call, "cropWidth"),
+                      intArgument(call, "cropHeight"),
+                      intArgument(call, "targetWidth"),
+                      intArgument(call, "targetHeight"),
+                      ImageStreamTransform.parsePlanes((String) call.argument("planes")));
+            }
+            Boolean reportFrameTimings = call.argument("reportFrameTimings");
+            camera.startPreviewWithImageStream(
+                binaryTransport != null && binaryTransport,
+                maxFramesInFlight == null ? 0 : maxFramesInFlight,
+                transform,
+                reportFrameTimings != null && reportFrameTimings);
+            result.success(camera.imageStreamFlowControl.getGeneration());
+          } catch (IllegalArgumentException e) {
+            result.error("IllegalArgumentException", e.getMessage(), null);
           }
           break;
         }
-      case "stopImageStream":
+      case "acknowledgeImageStreamFrame":
         {
-          try {
-            camera.startPreview();
-            result.success(null);
-          } catch (CameraAccessException e) {
-            result.error("CameraAccess", e.getMessage(), null);
+          Integer generation = call.argument("generation");
+          if (generation != null) {
+            camera.imageStreamFlowControl.acknowledge(generation);
           }
+          result.success(null);
+          break;
+        }
+      case "getImageStreamStatistics":
+        {
+          result.success(camera.imageStreamFlowControl.getStatistics());
+          break;
+        }
+      case "stopImageStream":
+        {
+          camera.startPreview();
+          result.success(null);
           break;
         }
       case "dispose":
@@ -246,12 +309,83 @@ public class CameraPlugin implements MethodCallHandler {
     }
   }
 
-  private static class CompareSizesByArea implements Comparator<Size> {
+  private static int intArgument(MethodCall call, String key) {
+    Integer value = call.argument(key);
+    return value == null ? 0 : value;
+  }
+
+  /** Reports the outcome of a {@code Camera} mode switch. */
+  private interface ModeCallback {
+    void onStarted();
+
+    void onFailed(String errorCode, String errorDescription);
+  }
+
+  /** Forwards replies to a {@link Result} on the platform thread. */
+  private static class MainThreadResult implements Result {
+    private final Result result;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    MainThreadResult(Result result) {
+      this.result = result;
+    }
+
+    @Override
+    public void success(final Object reply) {
+      handler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              result.success(reply);
+            }
+          });
+    }
+
+    @Override
+    public void error(final String errorCode, final String errorMessage, final Object details) {
+      handler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              result.error(errorCode, errorMessage, details);
+            }
+          });
+    }
+
+    @Override
+    public void notImplemented() {
+      handler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              result.notImplemented();
+            }
+          });
+    }
+  }
+
+  /** Exposes the planes of an {@link Image} to the image stream encoders. */
+  private static class ImagePlanes implements ImageStreamFrameEncoder.FramePlanes {
+    Image.Plane[] planes;
+
+    @Override
+    public int getPlaneCount() {
+      return planes.length;
+    }
+
+    @Override
+    public ByteBuffer getBuffer(int plane) {
+      return planes[plane].getBuffer();
+    }
+
+    @Override
+    public int getRowStride(int plane) {
+      return planes[plane].getRowStride();
+    }
+
     @Override
-    public int compare(Size lhs, Size rhs) {
-      // We cast here to ensure the multiplications won't overflow.
-      return Long.signum(
-          (long) lhs.getWidth() * lhs.getHeight() - (long) rhs.getWidth() * rhs.getHeight());
+    public int getPixelStride(int plane) {
+      return planes[plane].getPixelStride();
     }
   }
 
@@ -268,21 +402,77 @@ public class CameraPlugin implements MethodCallHandler {
   }
 
   private class Camera {
+    private static final int MODE_PREVIEW = 0;
+    private static final int MODE_IMAGE_STREAM = 1;
+    private static final int MODE_RECORDING = 2;
+    private static final int MODE_RECORDING_WITH_IMAGE_STREAM = 3;
+
+    // JPEGs are copied out of the reader before they are written, so the reader only holds the
+    // images the listener has not handled yet.
+    private static final int PICTURE_MAX_IMAGES = 4;
+    private static final int PICTURE_WRITE_THREADS = 2;
+
     private final FlutterView.SurfaceTextureEntry textureEntry;
-    private CameraDevice cameraDevice;
-    private CameraCaptureSession cameraCaptureSession;
+    // Written from Camera2 callbacks on the camera thread.
+    private volatile CameraDevice cameraDevice;
+    // The session and the fields describing it are only written on the camera thread, see
+    // switchMode. Pictures read the session from the platform thread.
+    private volatile CameraCaptureSession cameraCaptureSession;
     private EventChannel.EventSink eventSink;
     private ImageReader pictureImageReader;
+    // Shots whose capture was requested and whose JPEG has not arrived yet, in request order.
+    private final ArrayDeque<PictureBurst.Shot> pendingShots = new ArrayDeque<>();
+    // Read by the picture reader listener on the camera thread.
+    private volatile ThreadPoolExecutor pictureWriteExecutor;
+    private final PictureBurst.Clock clock =
+        new PictureBurst.Clock() {
+          @Override
+          public long nanoTime() {
+            return SystemClock.elapsedRealtimeNanos();
+          }
+        };
     private ImageReader imageStreamReader;
+    private ImageStreamBufferPool imageStreamBufferPool;
+    private boolean imageStreamBinaryTransport;
+    private ImageStreamFlowControl imageStreamFlowControl = new ImageStreamFlowControl(0, 0);
+    // Incremented for every image stream, see ImageStreamFlowControl.
+    private int imageStreamGeneration;
+    private ImageStreamTransform imageStreamTransform;
+    // Sends a frameTiming event for every delivered frame when set.
+    private boolean imageStreamFrameTimings;
+    private HandlerThread imageStreamThread;
+    private Handler imageStreamHandler;
+    // Runs Camera2 callbacks and picture file writes off the platform thread.
+    private HandlerThread cameraThread;
+    private Handler cameraHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private int sensorOrientation;
     private boolean isFrontFacing;
     private String cameraName;
     private Size captureSize;
     private Size previewSize;
+    // Whether frame timestamps use SystemClock#elapsedRealtimeNanos instead of System#nanoTime.
+    private boolean realtimeTimestamps;
     private CaptureRequest.Builder captureRequestBuilder;
     private Size videoSize;
+    // Computed lazily, first on the camera thread for the recorder surface.
+    private volatile VideoEncodingSettings defaultVideoEncoding;
     private MediaRecorder mediaRecorder;
+    // Records instead of mediaRecorder when the image stream keeps running during a recording.
+    private MediaCodecRecorder mediaCodecRecorder;
     private boolean recordingVideo;
+    private boolean imageStreaming;
+    private Surface previewSurface;
+    // A persistent encoder input surface on API 23+, so the recorder can be part of the shared
+    // session. Null when recordings need a session of their own. Created on the camera thread when
+    // the camera is first opened, and kept until the camera is disposed.
+    private volatile Surface recorderSurface;
+    private boolean recorderSurfaceCreated;
+    // True when the current session holds every output, so modes are switched by changing the
+    // targets of the repeating request only.
+    private boolean sessionIsShared;
+    // Set when the device rejected the shared session, modes then get a session each.
+    private boolean sharedSessionUnsupported;
 
     Camera(final String cameraName, final String resolutionPreset, @NonNull final Result result) {
 
@@ -292,32 +482,14 @@ public class CameraPlugin implements MethodCallHandler {
       registerEventChannel();
 
       try {
-        Size minPreviewSize;
-        switch (resolutionPreset) {
-          case "high":
-            minPreviewSize = new Size(1024, 768);
-            break;
-          case "medium":
-            minPreviewSize = new Size(640, 480);
-            break;
-          case "low":
-            minPreviewSize = new Size(320, 240);
-            break;
-          default:
-            throw new IllegalArgumentException("Unknown preset: " + resolutionPreset);
-        }
-
-        CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraName);
-        StreamConfigurationMap streamConfigurationMap =
-            characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        //noinspection ConstantConditions
-        sensorOrientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
-        //noinspection ConstantConditions
-        isFrontFacing =
-            characteristics.get(CameraCharacteristics.LENS_FACING)
-                == CameraMetadata.LENS_FACING_FRONT;
-        computeBestCaptureSize(streamConfigurationMap);
-        computeBestPreviewAndRecordingSize(streamConfigurationMap, minPreviewSize, captureSize);
+        CameraCharacteristicsCache.CameraInfo info =
+            cameraCharacteristicsCache.getCameraInfo(cameraName);
+        sensorOrientation = info.sensorOrientation;
+        isFrontFacing = info.lensFacing == CameraMetadata.LENS_FACING_FRONT;
+        captureSize = info.captureSize;
+        realtimeTimestamps =
+            info.timestampSource == CameraMetadata.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+        computeBestPreviewAndRecordingSize(resolutionPreset);
 
         if (cameraPermissionContinuation != null) {
           result.error("cameraPermission", "Camera permission request ongoing", null);
@@ -389,10 +561,8 @@ public class CameraPlugin implements MethodCallHandler {
               == PackageManager.PERMISSION_GRANTED;
     }
 
-    private void computeBestPreviewAndRecordingSize(
-        StreamConfigurationMap streamConfigurationMap, Size minPreviewSize, Size captureSize) {
-      Size[] sizes = streamConfigurationMap.getOutputSizes(SurfaceTexture.class);
-
+    private void computeBestPreviewAndRecordingSize(String resolutionPreset)
+        throws CameraAccessException {
       // Preview size and video size should not be greater than screen resolution or 1080.
       Point screenResolution = new Point();
       Display display = activity.getWindowManager().getDefaultDisplay();
@@ -402,85 +572,207 @@ public class CameraPlugin implements MethodCallHandler {
       int screenWidth = swapWH ? screenResolution.y : screenResolution.x;
       int screenHeight = swapWH ? screenResolution.x : screenResolution.y;
 
-      List<Size> goodEnough = new ArrayList<>();
-      for (Size s : sizes) {
-        if (minPreviewSize.getWidth() < s.getWidth()
-            && minPreviewSize.getHeight() < s.getHeight()
-            && s.getWidth() <= screenWidth
-            && s.getHeight() <= screenHeight
-            && s.getHeight() <= 1080) {
-          goodEnough.add(s);
-        }
-      }
-
-      Collections.sort(goodEnough, new CompareSizesByArea());
-
-      if (goodEnough.isEmpty()) {
-        previewSize = sizes[0];
-        videoSize = sizes[0];
-      } else {
-        float captureSizeRatio = (float) captureSize.getWidth() / captureSize.getHeight();
-
-        previewSize = goodEnough.get(0);
-        for (Size s : goodEnough) {
-          if ((float) s.getWidth() / s.getHeight() == captureSizeRatio) {
-            previewSize = s;
-            break;
-          }
-        }
-
-        Collections.reverse(goodEnough);
-        videoSize = goodEnough.get(0);
-        for (Size s : goodEnough) {
-          if ((float) s.getWidth() / s.getHeight() == captureSizeRatio) {
-            videoSize = s;
-            break;
-          }
-        }
-      }
-    }
-
-    private void computeBestCaptureSize(StreamConfigurationMap streamConfigurationMap) {
-      // For still image captures, we use the largest available size.
-      captureSize =
-          Collections.max(
-              Arrays.asList(streamConfigurationMap.getOutputSizes(ImageFormat.JPEG)),
-              new CompareSizesByArea());
+      CameraCharacteristicsCache.SizeSelection sizes =
+          cameraCharacteristicsCache.getSizeSelection(
+              cameraName, resolutionPreset, screenWidth, screenHeight);
+      previewSize = sizes.previewSize;
+      videoSize = sizes.videoSize;
     }
 
-    private void prepareMediaRecorder(String outputFilePath) throws IOException {
+    private void prepareMediaRecorder(String outputFilePath, VideoEncodingSettings encoding)
+        throws IOException {
       if (mediaRecorder != null) {
         mediaRecorder.release();
       }
-      mediaRecorder = new MediaRecorder();
+      mediaRecorder = createMediaRecorder(outputFilePath, encoding);
+    }
+
+    private MediaRecorder createMediaRecorder(
+        String outputFilePath, VideoEncodingSettings encoding) throws IOException {
+      MediaRecorder mediaRecorder = new MediaRecorder();
       mediaRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
       mediaRecorder.setVideoSource(MediaRecorder.VideoSource.SURFACE);
       mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
       mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
-      mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
-      mediaRecorder.setVideoEncodingBitRate(1024 * 1000);
-      mediaRecorder.setAudioSamplingRate(16000);
-      mediaRecorder.setVideoFrameRate(27);
-      mediaRecorder.setVideoSize(videoSize.getWidth(), videoSize.getHeight());
+      mediaRecorder.setVideoEncoder(
+          VideoEncodingSettings.CODEC_HEVC.equals(encoding.codec)
+              ? MediaRecorder.VideoEncoder.HEVC
+              : MediaRecorder.VideoEncoder.H264);
+      mediaRecorder.setVideoEncodingBitRate(encoding.videoBitRate);
+      mediaRecorder.setAudioEncodingBitRate(encoding.audioBitRate);
+      mediaRecorder.setAudioSamplingRate(encoding.audioSampleRate);
+      mediaRecorder.setAudioChannels(encoding.audioChannels);
+      mediaRecorder.setVideoFrameRate(encoding.frameRate);
+      mediaRecorder.setVideoSize(encoding.width, encoding.height);
       mediaRecorder.setOutputFile(outputFilePath);
       mediaRecorder.setOrientationHint(getMediaOrientation());
+      if (recorderSurface != null) {
+        mediaRecorder.setInputSurface(recorderSurface);
+      }
 
       mediaRecorder.prepare();
+      return mediaRecorder;
+    }
+
+    private VideoEncodingSettings getDefaultVideoEncoding() {
+      if (defaultVideoEncoding == null) {
+        defaultVideoEncoding = createDefaultVideoEncoding();
+      }
+      return defaultVideoEncoding;
     }
 
-    private void open(@Nullable final Result result) {
+    /** Scales the largest CamcorderProfile that is not larger than the recording size. */
+    private VideoEncodingSettings createDefaultVideoEncoding() {
+      final int width = videoSize.getWidth();
+      final int height = videoSize.getHeight();
+      final int cameraId;
+      try {
+        cameraId = Integer.parseInt(cameraName);
+      } catch (NumberFormatException e) {
+        return VideoEncodingSettings.fallback(width, height);
+      }
+      CamcorderProfile profile = null;
+      for (int quality : CAMCORDER_QUALITIES) {
+        if (!CamcorderProfile.hasProfile(cameraId, quality)) {
+          continue;
+        }
+        profile = CamcorderProfile.get(cameraId, quality);
+        if ((long) profile.videoFrameWidth * profile.videoFrameHeight <= (long) width * height) {
+          break;
+        }
+      }
+      if (profile == null) {
+        return VideoEncodingSettings.fallback(width, height);
+      }
+      return VideoEncodingSettings.fromProfile(
+          width,
+          height,
+          profile.videoFrameWidth,
+          profile.videoFrameHeight,
+          profile.videoBitRate,
+          profile.videoFrameRate,
+          profile.audioBitRate,
+          profile.audioSampleRate,
+          profile.audioChannels);
+    }
+
+    /**
+     * Applies the options from Dart to the default encoding and clamps the result to the encoder
+     * capabilities, returns null if no encoder supports the requested codec at the recording size.
+     */
+    @Nullable
+    private VideoEncodingSettings resolveVideoEncoding(@Nullable Map<String, Object> options) {
+      VideoEncodingSettings encoding = getDefaultVideoEncoding().withOptions(options);
+      if (VideoEncodingSettings.CODEC_HEVC.equals(encoding.codec)
+          && Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+        return null;
+      }
+      MediaCodecInfo.VideoCapabilities capabilities =
+          findVideoEncoder(encoding.getVideoMimeType(), encoding.width, encoding.height);
+      if (capabilities == null) {
+        // Every device can record H.264 at the sizes from its stream configuration map.
+        return VideoEncodingSettings.CODEC_H264.equals(encoding.codec) ? encoding : null;
+      }
+      return encoding.clamp(
+          capabilities.getBitrateRange().getLower(),
+          capabilities.getBitrateRange().getUpper(),
+          capabilities
+              .getSupportedFrameRatesFor(encoding.width, encoding.height)
+              .getUpper()
+              .intValue());
+    }
+
+    @Nullable
+    private MediaCodecInfo.VideoCapabilities findVideoEncoder(
+        String mimeType, int width, int height) {
+      MediaCodecList codecList = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
+      for (MediaCodecInfo info : codecList.getCodecInfos()) {
+        if (!info.isEncoder()) {
+          continue;
+        }
+        for (String type : info.getSupportedTypes()) {
+          if (!type.equalsIgnoreCase(mimeType)) {
+            continue;
+          }
+          MediaCodecInfo.VideoCapabilities capabilities =
+              info.getCapabilitiesForType(type).getVideoCapabilities();
+          if (capabilities != null && capabilities.isSizeSupported(width, height)) {
+            return capabilities;
+          }
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Creates the persistent recorder surface on API 23 and above, once per camera. A throwaway
+     * recorder without audio is prepared with it so that the surface gets its buffer size before
+     * the session is created.
+     *
+     * <p>Creates a file and prepares an encoder, so it runs on the camera thread.
+     */
+    private void createRecorderSurface() {
+      if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M || recorderSurfaceCreated) {
+        return;
+      }
+      recorderSurfaceCreated = true;
+      Surface surface = MediaCodec.createPersistentInputSurface();
+      File file = null;
+      MediaRecorder sizingRecorder = new MediaRecorder();
+      try {
+        file = File.createTempFile("camera", ".mp4", activity.getCacheDir());
+        VideoEncodingSettings encoding = getDefaultVideoEncoding();
+        sizingRecorder.setVideoSource(MediaRecorder.VideoSource.SURFACE);
+        sizingRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
+        sizingRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
+        sizingRecorder.setVideoEncodingBitRate(encoding.videoBitRate);
+        sizingRecorder.setVideoFrameRate(encoding.frameRate);
+        sizingRecorder.setVideoSize(encoding.width, encoding.height);
+        sizingRecorder.setOutputFile(file.getPath());
+        sizingRecorder.setInputSurface(surface);
+        sizingRecorder.prepare();
+        recorderSurface = surface;
+      } catch (IOException | RuntimeException e) {
+        surface.release();
+      } finally {
+        sizingRecorder.release();
+        if (file != null) {
+          file.delete();
+        }
+      }
+    }
+
+    private void open(@Nullable Result result) {
       if (!hasCameraPermission()) {
         if (result != null) result.error("cameraPermission", "Camera permission not granted", null);
       } else {
+        final Result openResult = result == null ? null : new MainThreadResult(result);
         try {
+          startCameraThread();
           pictureImageReader =
               ImageReader.newInstance(
-                  captureSize.getWidth(), captureSize.getHeight(), ImageFormat.JPEG, 2);
+                  captureSize.getWidth(),
+                  captureSize.getHeight(),
+                  ImageFormat.JPEG,
+                  PICTURE_MAX_IMAGES);
+          pictureWriteExecutor =
+              new ThreadPoolExecutor(
+                  PICTURE_WRITE_THREADS,
+                  PICTURE_WRITE_THREADS,
+                  0L,
+                  TimeUnit.MILLISECONDS,
+                  new LinkedBlockingQueue<Runnable>());
+          setPictureImageAvailableListener();
 
           // Used to steam image byte data to dart side.
           imageStreamReader =
               ImageReader.newInstance(
                   previewSize.getWidth(), previewSize.getHeight(), ImageFormat.YUV_420_888, 2);
+          imageStreamBufferPool =
+              new ImageStreamBufferPool(
+                  ImageStreamFrameEncoder.estimateFrameSize(
+                      previewSize.getWidth(), previewSize.getHeight()),
+                  2);
 
           cameraManager.openCamera(
               cameraName,
@@ -488,31 +780,24 @@ public class CameraPlugin implements MethodCallHandler {
                 @Override
                 public void onOpened(@NonNull CameraDevice cameraDevice) {
                   Camera.this.cameraDevice = cameraDevice;
-                  try {
-                    startPreview();
-                  } catch (CameraAccessException e) {
-                    if (result != null) result.error("CameraAccess", e.getMessage(), null);
-                    cameraDevice.close();
-                    Camera.this.cameraDevice = null;
-                    return;
-                  }
+                  // Before the first session, and before Dart can start a recording.
+                  createRecorderSurface();
+                  startPreview();
 
-                  if (result != null) {
+                  if (openResult != null) {
                     Map<String, Object> reply = new HashMap<>();
                     reply.put("textureId", textureEntry.id());
                     reply.put("previewWidth", previewSize.getWidth());
                     reply.put("previewHeight", previewSize.getHeight());
-                    result.success(reply);
+                    openResult.success(reply);
                   }
                 }
 
                 @Override
                 public void onClosed(@NonNull CameraDevice camera) {
-                  if (eventSink != null) {
-                    Map<String, String> event = new HashMap<>();
-                    event.put("eventType", "cameraClosing");
-                    eventSink.success(event);
-                  }
+                  Map<String, String> event = new HashMap<>();
+                  event.put("eventType", "cameraClosing");
+                  sendEvent(event);
                   super.onClosed(camera);
                 }
 
@@ -551,55 +836,100 @@ public class CameraPlugin implements MethodCallHandler {
                   sendErrorEvent(errorDescription);
                 }
               },
-              null);
+              cameraHandler);
         } catch (CameraAccessException e) {
           if (result != null) result.error("cameraAccess", e.getMessage(), null);
         }
       }
     }
 
-    private void writeToFile(ByteBuffer buffer, File file) throws IOException {
-      try (FileOutputStream outputStream = new FileOutputStream(file)) {
-        while (0 < buffer.remaining()) {
-          outputStream.getChannel().write(buffer);
-        }
-      }
-    }
+    private void takePicture(String filePath, @NonNull Result result) {
+      final Result pictureResult = new MainThreadResult(result);
+      takePictures(
+          Collections.singletonList(filePath),
+          result,
+          new PictureBurst.Listener() {
+            @Override
+            public void onShotCompleted(PictureBurst.Shot shot) {
+              if (shot.isSaved()) {
+                pictureResult.success(null);
+              } else {
+                pictureResult.error(shot.getErrorCode(), shot.getErrorDescription(), null);
+              }
+            }
 
-    private void takePicture(String filePath, @NonNull final Result result) {
-      final File file = new File(filePath);
+            @Override
+            public void onBurstCompleted(List<PictureBurst.Shot> shots) {}
+          });
+    }
 
-      if (file.exists()) {
-        result.error(
-            "fileExists",
-            "File at path '" + filePath + "' already exists. Cannot overwrite.",
-            null);
-        return;
-      }
+    private void takePictureBurst(List<String> filePaths, @NonNull Result result) {
+      final Result burstResult = new MainThreadResult(result);
+      takePictures(
+          filePaths,
+          result,
+          new PictureBurst.Listener() {
+            @Override
+            public void onShotCompleted(PictureBurst.Shot shot) {
+              Map<String, Object> event = shot.toMap();
+              event.put("eventType", "pictureSaved");
+              sendEvent(event);
+            }
 
-      pictureImageReader.setOnImageAvailableListener(
-          new ImageReader.OnImageAvailableListener() {
             @Override
-            public void onImageAvailable(ImageReader reader) {
-              try (Image image = reader.acquireLatestImage()) {
-                ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-                writeToFile(buffer, file);
-                result.success(null);
-              } catch (IOException e) {
-                result.error("IOError", "Failed saving image", null);
+            public void onBurstCompleted(List<PictureBurst.Shot> shots) {
+              List<Map<String, Object>> reply = new ArrayList<>();
+              for (PictureBurst.Shot shot : shots) {
+                reply.add(shot.toMap());
               }
+              burstResult.success(reply);
             }
-          },
-          null);
+          });
+    }
 
+    /**
+     * Queues one still capture per path in a single burst. JPEGs are matched to shots in request
+     * order by the picture reader listener and written on {@link #pictureWriteExecutor}.
+     */
+    private void takePictures(
+        List<String> filePaths, @NonNull Result result, PictureBurst.Listener listener) {
+      if (filePaths == null || filePaths.isEmpty()) {
+        result.error("IllegalArgumentException", "No file paths were given.", null);
+        return;
+      }
+      List<File> files = new ArrayList<>();
+      for (String filePath : filePaths) {
+        File file = new File(filePath);
+        if (file.exists()) {
+          result.error(
+              "fileExists",
+              "File at path '" + filePath + "' already exists. Cannot overwrite.",
+              null);
+          return;
+        }
+        files.add(file);
+      }
+
+      PictureBurst burst = new PictureBurst(files, clock, listener);
       try {
-        final CaptureRequest.Builder captureBuilder =
-            cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
-        captureBuilder.addTarget(pictureImageReader.getSurface());
-        captureBuilder.set(CaptureRequest.JPEG_ORIENTATION, getMediaOrientation());
+        List<CaptureRequest> requests = new ArrayList<>();
+        for (PictureBurst.Shot shot : burst.getShots()) {
+          final CaptureRequest.Builder captureBuilder =
+              cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+          captureBuilder.addTarget(pictureImageReader.getSurface());
+          captureBuilder.set(CaptureRequest.JPEG_ORIENTATION, getMediaOrientation());
+          captureBuilder.setTag(shot);
+          requests.add(captureBuilder.build());
+        }
 
-        cameraCaptureSession.capture(
-            captureBuilder.build(),
+        synchronized (pendingShots) {
+          for (PictureBurst.Shot shot : burst.getShots()) {
+            shot.onRequested();
+            pendingShots.add(shot);
+          }
+        }
+        cameraCaptureSession.captureBurst(
+            requests,
             new CameraCaptureSession.CaptureCallback() {
               @Override
               public void onCaptureFailed(
@@ -617,16 +947,101 @@ public class CameraPlugin implements MethodCallHandler {
                   default:
                     reason = "Unknown reason";
                 }
-                result.error("captureFailure", reason, null);
+                PictureBurst.Shot shot = (PictureBurst.Shot) request.getTag();
+                final boolean pending;
+                synchronized (pendingShots) {
+                  pending = pendingShots.remove(shot);
+                }
+                if (pending) {
+                  shot.onFailed("captureFailure", reason);
+                }
               }
             },
-            null);
+            cameraHandler);
       } catch (CameraAccessException e) {
+        synchronized (pendingShots) {
+          pendingShots.removeAll(burst.getShots());
+        }
         result.error("cameraAccess", e.getMessage(), null);
       }
     }
 
-    private void startVideoRecording(String filePath, @NonNull final Result result) {
+    private void setPictureImageAvailableListener() {
+      pictureImageReader.setOnImageAvailableListener(
+          new ImageReader.OnImageAvailableListener() {
+            @Override
+            public void onImageAvailable(ImageReader reader) {
+              final Image image = reader.acquireNextImage();
+              if (image == null) return;
+              final PictureBurst.Shot shot;
+              synchronized (pendingShots) {
+                shot = pendingShots.poll();
+              }
+              if (shot == null) {
+                image.close();
+                return;
+              }
+              shot.onImageAvailable();
+
+              // Copy the JPEG so the image goes back to the reader before the write; holding it
+              // would make acquireNextImage throw once PICTURE_MAX_IMAGES writes are queued.
+              final ByteBuffer jpeg;
+              try {
+                ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+                jpeg = ByteBuffer.allocate(buffer.remaining());
+                jpeg.put(buffer);
+                jpeg.flip();
+              } finally {
+                image.close();
+              }
+              final ThreadPoolExecutor executor = pictureWriteExecutor;
+              try {
+                if (executor == null) {
+                  throw new RejectedExecutionException();
+                }
+                executor.execute(
+                    new Runnable() {
+                      @Override
+                      public void run() {
+                        try {
+                          PictureBurst.writeToFile(jpeg, shot.file);
+                          shot.onSaved();
+                        } catch (IOException e) {
+                          shot.onFailed("IOError", "Failed saving image");
+                        }
+                      }
+                    });
+              } catch (RejectedExecutionException e) {
+                shot.onFailed(
+                    "cameraClosed", "The camera was closed before the picture was saved.");
+              }
+            }
+          },
+          cameraHandler);
+    }
+
+    private void stopPictureWrites() {
+      if (pictureWriteExecutor != null) {
+        pictureWriteExecutor.shutdown();
+        try {
+          pictureWriteExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        pictureWriteExecutor = null;
+      }
+      final List<PictureBurst.Shot> abandonedShots;
+      synchronized (pendingShots) {
+        abandonedShots = new ArrayList<>(pendingShots);
+        pendingShots.clear();
+      }
+      for (PictureBurst.Shot shot : abandonedShots) {
+        shot.onFailed("cameraClosed", "The camera was closed before the picture was taken.");
+      }
+    }
+
+    private void startVideoRecording(
+        String filePath, @Nullable Map<String, Object> encodingOptions, @NonNull Result result) {
       if (cameraDevice == null) {
         result.error("configureFailed", "Camera was closed during configuration.", null);
         return;
@@ -638,57 +1053,134 @@ public class CameraPlugin implements MethodCallHandler {
             null);
         return;
       }
+      final VideoEncodingSettings encoding;
+      try {
+        encoding = resolveVideoEncoding(encodingOptions);
+      } catch (IllegalArgumentException e) {
+        result.error("IllegalArgumentException", e.getMessage(), null);
+        return;
+      }
+      if (encoding == null) {
+        result.error(
+            "videoCodecUnsupported",
+            "No encoder supports the requested codec at "
+                + videoSize.getWidth()
+                + "x"
+                + videoSize.getHeight()
+                + ".",
+            null);
+        return;
+      }
+      if (imageStreaming) {
+        startMediaCodecRecording(filePath, encoding, result);
+        return;
+      }
+      final Result recordingResult = new MainThreadResult(result);
       try {
-        closeCaptureSession();
-        prepareMediaRecorder(filePath);
+        prepareMediaRecorder(filePath, encoding);
+      } catch (IOException e) {
+        result.error("videoRecordingFailed", e.getMessage(), null);
+        return;
+      }
+      recordingVideo = true;
 
-        recordingVideo = true;
+      switchMode(
+          MODE_RECORDING,
+          new ModeCallback() {
+            @Override
+            public void onStarted() {
+              mediaRecorder.start();
+              recordingResult.success(encoding.toMap());
+            }
 
-        SurfaceTexture surfaceTexture = textureEntry.surfaceTexture();
-        surfaceTexture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
-        captureRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+            @Override
+            public void onFailed(String errorCode, String errorDescription) {
+              recordingResult.error(errorCode, errorDescription, null);
+            }
+          });
+    }
 
-        List<Surface> surfaces = new ArrayList<>();
+    private void startMediaCodecRecording(
+        String filePath, final VideoEncodingSettings encoding, @NonNull Result result) {
+      final MediaCodecRecorder recorder;
+      try {
+        recorder =
+            new MediaCodecRecorder(
+                filePath, encoding, getMediaOrientation(), recorderSurface, realtimeTimestamps);
+      } catch (IOException | RuntimeException e) {
+        result.error("videoRecordingFailed", e.getMessage(), null);
+        return;
+      }
+      // Start encoding before the surface is targeted so that no frame is lost.
+      recorder.start();
+      mediaCodecRecorder = recorder;
+      recordingVideo = true;
+
+      final Result recordingResult = new MainThreadResult(result);
+      switchMode(
+          MODE_RECORDING_WITH_IMAGE_STREAM,
+          new ModeCallback() {
+            @Override
+            public void onStarted() {
+              recordingResult.success(encoding.toMap());
+            }
 
-        Surface previewSurface = new Surface(surfaceTexture);
-        surfaces.add(previewSurface);
-        captureRequestBuilder.addTarget(previewSurface);
+            @Override
+            public void onFailed(String errorCode, String errorDescription) {
+              recordingVideo = false;
+              mediaCodecRecorder = null;
+              stopMediaCodecRecorder(recorder);
+              recordingResult.error(errorCode, errorDescription, null);
+            }
+          });
+    }
 
-        Surface recorderSurface = mediaRecorder.getSurface();
-        surfaces.add(recorderSurface);
-        captureRequestBuilder.addTarget(recorderSurface);
+    /** Returns to the image stream, then finalizes the file on the camera thread. */
+    private void stopMediaCodecRecording(@NonNull Result result) {
+      final MediaCodecRecorder recorder = mediaCodecRecorder;
+      mediaCodecRecorder = null;
+      recordingVideo = false;
+      final Result stopResult = new MainThreadResult(result);
+      switchMode(
+          MODE_IMAGE_STREAM,
+          new ModeCallback() {
+            @Override
+            public void onStarted() {
+              recorder.stop(
+                  cameraHandler,
+                  new MediaCodecRecorder.StopCallback() {
+                    @Override
+                    public void onStopped(boolean finalized) {
+                      if (finalized) {
+                        stopResult.success(null);
+                      } else {
+                        stopResult.error(
+                            "videoRecordingFailed", "Failed to finalize the recording.", null);
+                      }
+                    }
+                  });
+            }
 
-        cameraDevice.createCaptureSession(
-            surfaces,
-            new CameraCaptureSession.StateCallback() {
-              @Override
-              public void onConfigured(@NonNull CameraCaptureSession cameraCaptureSession) {
-                try {
-                  if (cameraDevice == null) {
-                    result.error("configureFailed", "Camera was closed during configuration", null);
-                    return;
-                  }
-                  Camera.this.cameraCaptureSession = cameraCaptureSession;
-                  captureRequestBuilder.set(
-                      CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-                  cameraCaptureSession.setRepeatingRequest(
-                      captureRequestBuilder.build(), null, null);
-                  mediaRecorder.start();
-                  result.success(null);
-                } catch (CameraAccessException e) {
-                  result.error("cameraAccess", e.getMessage(), null);
-                }
-              }
+            @Override
+            public void onFailed(String errorCode, String errorDescription) {
+              stopMediaCodecRecorder(recorder);
+              stopResult.error(errorCode, errorDescription, null);
+            }
+          });
+    }
 
-              @Override
-              public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
-                result.error("configureFailed", "Failed to configure camera session", null);
+    /** Stops {@code recorder} without waiting for its encoders to drain. */
+    private void stopMediaCodecRecorder(MediaCodecRecorder recorder) {
+      recorder.stop(
+          cameraHandler,
+          new MediaCodecRecorder.StopCallback() {
+            @Override
+            public void onStopped(boolean finalized) {
+              if (!finalized) {
+                Log.e(TAG, "Failed to finalize the recording");
               }
-            },
-            null);
-      } catch (CameraAccessException | IOException e) {
-        result.error("videoRecordingFailed", e.getMessage(), null);
-      }
+            }
+          });
     }
 
     private void stopVideoRecording(@NonNull final Result result) {
@@ -696,6 +1188,10 @@ public class CameraPlugin implements MethodCallHandler {
         result.success(null);
         return;
       }
+      if (mediaCodecRecorder != null) {
+        stopMediaCodecRecording(result);
+        return;
+      }
 
       try {
         recordingVideo = false;
@@ -703,71 +1199,113 @@ public class CameraPlugin implements MethodCallHandler {
         mediaRecorder.reset();
         startPreview();
         result.success(null);
-      } catch (CameraAccessException | IllegalStateException e) {
+      } catch (IllegalStateException e) {
         result.error("videoRecordingFailed", e.getMessage(), null);
       }
     }
 
-    private void startPreview() throws CameraAccessException {
-      closeCaptureSession();
-
-      SurfaceTexture surfaceTexture = textureEntry.surfaceTexture();
-      surfaceTexture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
-      captureRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+    private void startPreview() {
+      imageStreaming = false;
+      switchMode(MODE_PREVIEW, reportErrorsCallback("Failed to configure the camera for preview."));
+    }
 
-      List<Surface> surfaces = new ArrayList<>();
+    private void startPreviewWithImageStream(
+        boolean binaryTransport,
+        int maxFramesInFlight,
+        @Nullable ImageStreamTransform transform,
+        boolean reportFrameTimings) {
+      // Transformed frames are only sent over the binary transport.
+      imageStreamBinaryTransport = binaryTransport || transform != null;
+      imageStreamFrameTimings = reportFrameTimings;
+      imageStreamFlowControl =
+          new ImageStreamFlowControl(maxFramesInFlight, ++imageStreamGeneration);
+      imageStreamTransform = transform;
+      imageStreaming = true;
+
+      switchMode(
+          MODE_IMAGE_STREAM,
+          reportErrorsCallback("Failed to configure the camera for streaming images."));
 
-      Surface previewSurface = new Surface(surfaceTexture);
-      surfaces.add(previewSurface);
-      captureRequestBuilder.addTarget(previewSurface);
+      registerImageStreamEventChannel();
+    }
 
-      surfaces.add(pictureImageReader.getSurface());
+    private ModeCallback reportErrorsCallback(final String configureFailedDescription) {
+      return new ModeCallback() {
+        @Override
+        public void onStarted() {}
 
-      cameraDevice.createCaptureSession(
-          surfaces,
-          new CameraCaptureSession.StateCallback() {
+        @Override
+        public void onFailed(String errorCode, String errorDescription) {
+          sendErrorEvent(
+              "configureFailed".equals(errorCode) ? configureFailedDescription : errorDescription);
+        }
+      };
+    }
 
+    /**
+     * Makes {@code mode} the active mode.
+     *
+     * <p>The first switch creates a session holding the preview, JPEG, image stream and, when
+     * available, recorder outputs. Later switches only replace the repeating request, which avoids
+     * the blank preview of a session rebuild. Devices that reject the combined session, and
+     * recordings without a persistent recorder surface, fall back to one session per mode.
+     *
+     * <p>The switch runs on the camera thread, which is the only thread that touches the session,
+     * and {@code callback} is called there.
+     */
+    private void switchMode(final int mode, final ModeCallback callback) {
+      final long switchStartNanos = SystemClock.elapsedRealtimeNanos();
+      final Handler handler = cameraHandler;
+      if (handler == null) {
+        callback.onFailed("configureFailed", "The camera was closed during configuration.");
+        return;
+      }
+      handler.post(
+          new Runnable() {
             @Override
-            public void onConfigured(@NonNull CameraCaptureSession session) {
+            public void run() {
               if (cameraDevice == null) {
-                sendErrorEvent("The camera was closed during configuration.");
+                callback.onFailed(
+                    "configureFailed", "The camera was closed during configuration.");
                 return;
               }
               try {
-                cameraCaptureSession = session;
-                captureRequestBuilder.set(
-                    CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-                cameraCaptureSession.setRepeatingRequest(captureRequestBuilder.build(), null, null);
+                switchModeOnCameraThread(mode, switchStartNanos, callback);
               } catch (CameraAccessException e) {
-                sendErrorEvent(e.getMessage());
+                callback.onFailed("cameraAccess", e.getMessage());
               }
             }
-
-            @Override
-            public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
-              sendErrorEvent("Failed to configure the camera for preview.");
-            }
-          },
-          null);
+          });
     }
 
-    private void startPreviewWithImageStream() throws CameraAccessException {
-      closeCaptureSession();
-
-      SurfaceTexture surfaceTexture = textureEntry.surfaceTexture();
-      surfaceTexture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
+    private void switchModeOnCameraThread(
+        final int mode, final long switchStartNanos, final ModeCallback callback)
+        throws CameraAccessException {
+      final boolean canShare = !isRecordingMode(mode) || recorderSurface != null;
+      if (cameraCaptureSession != null && sessionIsShared && canShare) {
+        startRepeatingRequest(mode, switchStartNanos, true, callback);
+        return;
+      }
 
-      captureRequestBuilder =
-          cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+      closeCaptureSession();
+      final boolean shared = canShare && !sharedSessionUnsupported;
+      if (previewSurface == null) {
+        SurfaceTexture surfaceTexture = textureEntry.surfaceTexture();
+        surfaceTexture.setDefaultBufferSize(previewSize.getWidth(), previewSize.getHeight());
+        previewSurface = new Surface(surfaceTexture);
+      }
 
       List<Surface> surfaces = new ArrayList<>();
-
-      Surface previewSurface = new Surface(surfaceTexture);
       surfaces.add(previewSurface);
-      captureRequestBuilder.addTarget(previewSurface);
-
-      surfaces.add(imageStreamReader.getSurface());
-      captureRequestBuilder.addTarget(imageStreamReader.getSurface());
+      if (shared || mode == MODE_PREVIEW) {
+        surfaces.add(pictureImageReader.getSurface());
+      }
+      if (shared || mode == MODE_IMAGE_STREAM || mode == MODE_RECORDING_WITH_IMAGE_STREAM) {
+        surfaces.add(imageStreamReader.getSurface());
+      }
+      if ((shared && recorderSurface != null) || isRecordingMode(mode)) {
+        surfaces.add(getRecordingSurface());
+      }
 
       cameraDevice.createCaptureSession(
           surfaces,
@@ -775,27 +1313,127 @@ public class CameraPlugin implements MethodCallHandler {
             @Override
             public void onConfigured(@NonNull CameraCaptureSession session) {
               if (cameraDevice == null) {
-                sendErrorEvent("The camera was closed during configuration.");
+                callback.onFailed(
+                    "configureFailed", "The camera was closed during configuration.");
                 return;
               }
+              cameraCaptureSession = session;
+              sessionIsShared = shared;
               try {
-                cameraCaptureSession = session;
-                captureRequestBuilder.set(
-                    CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-                cameraCaptureSession.setRepeatingRequest(captureRequestBuilder.build(), null, null);
+                startRepeatingRequest(mode, switchStartNanos, false, callback);
               } catch (CameraAccessException e) {
-                sendErrorEvent(e.getMessage());
+                callback.onFailed("cameraAccess", e.getMessage());
               }
             }
 
             @Override
-            public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
-              sendErrorEvent("Failed to configure the camera for streaming images.");
+            public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+              if (shared) {
+                sharedSessionUnsupported = true;
+                try {
+                  switchModeOnCameraThread(mode, switchStartNanos, callback);
+                } catch (CameraAccessException e) {
+                  callback.onFailed("cameraAccess", e.getMessage());
+                }
+                return;
+              }
+              callback.onFailed("configureFailed", "Failed to configure camera session");
             }
           },
-          null);
+          cameraHandler);
+    }
 
-      registerImageStreamEventChannel();
+    private void startRepeatingRequest(
+        int mode, long switchStartNanos, boolean sessionReused, ModeCallback callback)
+        throws CameraAccessException {
+      final int template;
+      switch (mode) {
+        case MODE_IMAGE_STREAM:
+          template = CameraDevice.TEMPLATE_STILL_CAPTURE;
+          break;
+        case MODE_RECORDING:
+        case MODE_RECORDING_WITH_IMAGE_STREAM:
+          template = CameraDevice.TEMPLATE_RECORD;
+          break;
+        default:
+          template = CameraDevice.TEMPLATE_PREVIEW;
+      }
+      captureRequestBuilder = cameraDevice.createCaptureRequest(template);
+      captureRequestBuilder.addTarget(previewSurface);
+      if (mode == MODE_IMAGE_STREAM || mode == MODE_RECORDING_WITH_IMAGE_STREAM) {
+        captureRequestBuilder.addTarget(imageStreamReader.getSurface());
+      }
+      if (isRecordingMode(mode)) {
+        captureRequestBuilder.addTarget(getRecordingSurface());
+      }
+      captureRequestBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+      cameraCaptureSession.setRepeatingRequest(
+          captureRequestBuilder.build(),
+          new ModeSwitchTimer(mode, switchStartNanos, sessionReused),
+          cameraHandler);
+      callback.onStarted();
+    }
+
+    private boolean isRecordingMode(int mode) {
+      return mode == MODE_RECORDING || mode == MODE_RECORDING_WITH_IMAGE_STREAM;
+    }
+
+    /**
+     * The surface the recorder reads from. Recorders configured with the persistent {@link
+     * #recorderSurface} read from it even when the session could not be shared, and {@link
+     * MediaRecorder#getSurface()} must not be called on them.
+     */
+    private Surface getRecordingSurface() {
+      if (recorderSurface != null) {
+        return recorderSurface;
+      }
+      return mediaCodecRecorder != null
+          ? mediaCodecRecorder.getInputSurface()
+          : mediaRecorder.getSurface();
+    }
+
+    private String modeName(int mode) {
+      switch (mode) {
+        case MODE_IMAGE_STREAM:
+          return "imageStream";
+        case MODE_RECORDING:
+          return "recording";
+        case MODE_RECORDING_WITH_IMAGE_STREAM:
+          return "recordingWithImageStream";
+        default:
+          return "preview";
+      }
+    }
+
+    /** Reports the time from a mode switch request until the first frame of the new mode. */
+    private class ModeSwitchTimer extends CameraCaptureSession.CaptureCallback {
+      private final int mode;
+      private final long switchStartNanos;
+      private final boolean sessionReused;
+      private boolean reported;
+
+      ModeSwitchTimer(int mode, long switchStartNanos, boolean sessionReused) {
+        this.mode = mode;
+        this.switchStartNanos = switchStartNanos;
+        this.sessionReused = sessionReused;
+      }
+
+      @Override
+      public void onCaptureCompleted(
+          @NonNull CameraCaptureSession session,
+          @NonNull CaptureRequest request,
+          @NonNull TotalCaptureResult result) {
+        if (reported) {
+          return;
+        }
+        reported = true;
+        Map<String, Object> event = new HashMap<>();
+        event.put("eventType", "modeSwitched");
+        event.put("mode", modeName(mode));
+        event.put("sessionReused", sessionReused);
+        event.put("latencyMicros", (SystemClock.elapsedRealtimeNanos() - switchStartNanos) / 1000);
+        sendEvent(event);
+      }
     }
 
     private void registerImageStreamEventChannel() {
@@ -806,75 +1444,325 @@ public class CameraPlugin implements MethodCallHandler {
           new EventChannel.StreamHandler() {
             @Override
             public void onListen(Object o, EventChannel.EventSink eventSink) {
-              setImageStreamImageAvailableListener(eventSink);
+              startImageStreamThread();
+              if (imageStreamBinaryTransport) {
+                BasicMessageChannel<ByteBuffer> frameChannel =
+                    new BasicMessageChannel<>(
+                        registrar.messenger(),
+                        "plugins.flutter.io/camera/imageStreamFrames",
+                        BinaryCodec.INSTANCE);
+                if (imageStreamTransform != null) {
+                  setImageStreamTransformImageAvailableListener(frameChannel, imageStreamTransform);
+                } else {
+                  setImageStreamBinaryImageAvailableListener(frameChannel);
+                }
+              } else {
+                setImageStreamImageAvailableListener(eventSink);
+              }
             }
 
             @Override
             public void onCancel(Object o) {
               imageStreamReader.setOnImageAvailableListener(null, null);
+              stopImageStreamThread();
             }
           });
     }
 
     private void setImageStreamImageAvailableListener(final EventChannel.EventSink eventSink) {
+      final ImageStreamFlowControl flowControl = imageStreamFlowControl;
+      final boolean frameTimings = imageStreamFrameTimings;
+      final ImagePlanes imagePlanes = new ImagePlanes();
       imageStreamReader.setOnImageAvailableListener(
           new ImageReader.OnImageAvailableListener() {
             @Override
             public void onImageAvailable(final ImageReader reader) {
               Image img = reader.acquireLatestImage();
               if (img == null) return;
+              if (!flowControl.tryAcquire()) {
+                img.close();
+                return;
+              }
+
+              final long copyStartNanos = System.nanoTime();
+              imagePlanes.planes = img.getPlanes();
+              final Map<String, Object> imageBuffer =
+                  ImageStreamFrameEncoder.frameToMap(
+                      img.getWidth(), img.getHeight(), img.getFormat(), imagePlanes);
+              imagePlanes.planes = null;
+              final long timestamp = img.getTimestamp();
+              img.close();
+              final long copyNanos = System.nanoTime() - copyStartNanos;
+
+              mainHandler.post(
+                  new Runnable() {
+                    @Override
+                    public void run() {
+                      final long sendStartNanos = System.nanoTime();
+                      eventSink.success(imageBuffer);
+                      flowControl.onDelivered();
+                      if (frameTimings) {
+                        sendFrameTiming(
+                            timestamp, copyNanos, System.nanoTime() - sendStartNanos);
+                      }
+                    }
+                  });
+            }
+          },
+          imageStreamHandler);
+    }
 
-              List<Map<String, Object>> planes = new ArrayList<>();
-              for (Image.Plane plane : img.getPlanes()) {
-                ByteBuffer buffer = plane.getBuffer();
+    /**
+     * Streams frames as {@link ImageStreamFrameEncoder} messages written into pooled direct
+     * buffers, instead of allocating a map and a byte array per plane for every frame.
+     */
+    private void setImageStreamBinaryImageAvailableListener(
+        final BasicMessageChannel<ByteBuffer> frameChannel) {
+      final BasicMessageChannel.Reply<ByteBuffer> acknowledgeReply = createAcknowledgeReply();
+      final ImageStreamFlowControl flowControl = imageStreamFlowControl;
+      final ImageStreamBufferPool bufferPool = imageStreamBufferPool;
+      final boolean frameTimings = imageStreamFrameTimings;
+      final ImagePlanes imagePlanes = new ImagePlanes();
+      imageStreamReader.setOnImageAvailableListener(
+          new ImageReader.OnImageAvailableListener() {
+            @Override
+            public void onImageAvailable(final ImageReader reader) {
+              Image img = reader.acquireLatestImage();
+              if (img == null) return;
+              if (!flowControl.tryAcquire()) {
+                img.close();
+                return;
+              }
 
-                byte[] bytes = new byte[buffer.remaining()];
-                buffer.get(bytes, 0, bytes.length);
+              final long copyStartNanos = System.nanoTime();
+              imagePlanes.planes = img.getPlanes();
+              final ByteBuffer frame =
+                  ImageStreamFrameEncoder.writeFrame(
+                      bufferPool,
+                      img.getWidth(),
+                      img.getHeight(),
+                      img.getFormat(),
+                      img.getTimestamp(),
+                      imagePlanes);
+              imagePlanes.planes = null;
+              if (frame == null) {
+                flowControl.cancel();
+                img.close();
+                return;
+              }
 
-                Map<String, Object> planeBuffer = new HashMap<>();
-                planeBuffer.put("bytesPerRow", plane.getRowStride());
-                planeBuffer.put("bytesPerPixel", plane.getPixelStride());
-                planeBuffer.put("bytes", bytes);
+              final long timestamp = img.getTimestamp();
+              img.close();
+              final long copyNanos = System.nanoTime() - copyStartNanos;
+
+              mainHandler.post(
+                  new Runnable() {
+                    @Override
+                    public void run() {
+                      final long sendStartNanos = System.nanoTime();
+                      sendImageStreamFrame(
+                          frameChannel, frame, acknowledgeReply, flowControl, bufferPool);
+                      if (frameTimings) {
+                        sendFrameTiming(
+                            timestamp, copyNanos, System.nanoTime() - sendStartNanos);
+                      }
+                    }
+                  });
+            }
+          },
+          imageStreamHandler);
+    }
 
-                planes.add(planeBuffer);
+    /** Crops, scales and repacks frames with {@code transform} before they are sent. */
+    private void setImageStreamTransformImageAvailableListener(
+        final BasicMessageChannel<ByteBuffer> frameChannel, final ImageStreamTransform transform) {
+      final BasicMessageChannel.Reply<ByteBuffer> acknowledgeReply = createAcknowledgeReply();
+      final ImageStreamFlowControl flowControl = imageStreamFlowControl;
+      final ImageStreamBufferPool bufferPool = imageStreamBufferPool;
+      final boolean frameTimings = imageStreamFrameTimings;
+      final ImagePlanes imagePlanes = new ImagePlanes();
+      imageStreamReader.setOnImageAvailableListener(
+          new ImageReader.OnImageAvailableListener() {
+            @Override
+            public void onImageAvailable(final ImageReader reader) {
+              Image img = reader.acquireLatestImage();
+              if (img == null) return;
+              if (!flowControl.tryAcquire()) {
+                img.close();
+                return;
               }
 
-              Map<String, Object> imageBuffer = new HashMap<>();
-              imageBuffer.put("width", img.getWidth());
-              imageBuffer.put("height", img.getHeight());
-              imageBuffer.put("format", img.getFormat());
-              imageBuffer.put("planes", planes);
+              final long copyStartNanos = System.nanoTime();
+              imagePlanes.planes = img.getPlanes();
+              final ByteBuffer frame =
+                  transform.writeFrame(
+                      bufferPool, img.getWidth(), img.getHeight(), img.getTimestamp(), imagePlanes);
+              imagePlanes.planes = null;
+              if (frame == null) {
+                flowControl.cancel();
+                img.close();
+                return;
+              }
 
-              eventSink.success(imageBuffer);
+              final long timestamp = img.getTimestamp();
               img.close();
+              final long copyNanos = System.nanoTime() - copyStartNanos;
+
+              mainHandler.post(
+                  new Runnable() {
+                    @Override
+                    public void run() {
+                      final long sendStartNanos = System.nanoTime();
+                      sendImageStreamFrame(
+                          frameChannel, frame, acknowledgeReply, flowControl, bufferPool);
+                      if (frameTimings) {
+                        sendFrameTiming(
+                            timestamp, copyNanos, System.nanoTime() - sendStartNanos);
+                      }
+                    }
+                  });
             }
           },
-          null);
+          imageStreamHandler);
     }
 
-    private void sendErrorEvent(String errorDescription) {
-      if (eventSink != null) {
-        Map<String, String> event = new HashMap<>();
-        event.put("eventType", "error");
-        event.put("errorDescription", errorDescription);
-        eventSink.success(event);
+    /** Dart replies once it has processed a frame, which frees a slot of the in-flight window. */
+    private BasicMessageChannel.Reply<ByteBuffer> createAcknowledgeReply() {
+      final ImageStreamFlowControl flowControl = imageStreamFlowControl;
+      return new BasicMessageChannel.Reply<ByteBuffer>() {
+        @Override
+        public void reply(ByteBuffer reply) {
+          flowControl.acknowledge();
+        }
+      };
+    }
+
+    private void sendImageStreamFrame(
+        BasicMessageChannel<ByteBuffer> frameChannel,
+        ByteBuffer frame,
+        BasicMessageChannel.Reply<ByteBuffer> acknowledgeReply,
+        ImageStreamFlowControl flowControl,
+        ImageStreamBufferPool bufferPool) {
+      // The messenger copies the bytes up to the buffer position before returning.
+      if (flowControl.isLimited()) {
+        frameChannel.send(frame, acknowledgeReply);
+      } else {
+        frameChannel.send(frame);
+      }
+      flowControl.onDelivered();
+      bufferPool.release(frame);
+    }
+
+    /**
+     * Reports the cost of one image stream frame: the copy on the image stream thread and the send
+     * on the platform thread.
+     */
+    private void sendFrameTiming(long sensorTimestamp, long copyNanos, long sendNanos) {
+      Map<String, Object> event = new HashMap<>();
+      event.put("eventType", "frameTiming");
+      event.put("sensorTimestamp", sensorTimestamp);
+      event.put("copyMicros", copyNanos / 1000);
+      event.put("sendMicros", sendNanos / 1000);
+      sendEvent(event);
+    }
+
+    /** Starts the thread that copies image stream frames before they are sent to Dart. */
+    private void startImageStreamThread() {
+      stopImageStreamThread();
+      imageStreamThread = new HandlerThread("CameraImageStream");
+      imageStreamThread.start();
+      imageStreamHandler = new Handler(imageStreamThread.getLooper());
+    }
+
+    private void stopImageStreamThread() {
+      if (imageStreamThread != null) {
+        quitAndJoin(imageStreamThread);
+        imageStreamThread = null;
+        imageStreamHandler = null;
       }
     }
 
+    private void startCameraThread() {
+      if (cameraThread == null) {
+        cameraThread = new HandlerThread("CameraBackground");
+        cameraThread.start();
+        cameraHandler = new Handler(cameraThread.getLooper());
+      }
+    }
+
+    private void stopCameraThread() {
+      if (cameraThread != null) {
+        quitAndJoin(cameraThread);
+        cameraThread = null;
+        cameraHandler = null;
+      }
+    }
+
+    /**
+     * Lets {@code thread} finish the callbacks already posted to it, such as a picture being
+     * written or the camera closed event, so that the readers they use can be closed safely.
+     */
+    private void quitAndJoin(HandlerThread thread) {
+      thread.quitSafely();
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void sendErrorEvent(String errorDescription) {
+      Map<String, String> event = new HashMap<>();
+      event.put("eventType", "error");
+      event.put("errorDescription", errorDescription);
+      sendEvent(event);
+    }
+
+    /** Sends {@code event} on the platform thread, it may be called from the camera thread. */
+    private void sendEvent(final Map<String, ?> event) {
+      mainHandler.post(
+          new Runnable() {
+            @Override
+            public void run() {
+              if (eventSink != null) {
+                eventSink.success(event);
+              }
+            }
+          });
+    }
+
     private void closeCaptureSession() {
       if (cameraCaptureSession != null) {
         cameraCaptureSession.close();
         cameraCaptureSession = null;
+        sessionIsShared = false;
       }
     }
 
-    private void close() {
+    private void closeCameraDevice() {
       closeCaptureSession();
-
       if (cameraDevice != null) {
         cameraDevice.close();
         cameraDevice = null;
       }
+    }
+
+    private void close() {
+      if (cameraHandler != null) {
+        // The session belongs to the camera thread, which runs this before it stops.
+        cameraHandler.post(
+            new Runnable() {
+              @Override
+              public void run() {
+                closeCameraDevice();
+              }
+            });
+      } else {
+        closeCameraDevice();
+      }
+      stopImageStreamThread();
+      stopCameraThread();
+      stopPictureWrites();
       if (pictureImageReader != null) {
         pictureImageReader.close();
         pictureImageReader = null;
@@ -888,10 +1776,23 @@ public class CameraPlugin implements MethodCallHandler {
         mediaRecorder.release();
         mediaRecorder = null;
       }
+      if (mediaCodecRecorder != null) {
+        // The camera thread has stopped, so the file is finalized on the last encoder thread.
+        stopMediaCodecRecorder(mediaCodecRecorder);
+        mediaCodecRecorder = null;
+      }
+      if (previewSurface != null) {
+        previewSurface.release();
+        previewSurface = null;
+      }
     }
 
     private void dispose() {
       close();
+      if (recorderSurface != null) {
+        recorderSurface.release();
+        recorderSurface = null;
+      }
       textureEntry.release();
     }
 
@@ -0,0 +1,60 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.camera;
+
+import androidx.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * A bounded pool of direct {@link ByteBuffer}s that image stream frames are copied into before
+ * being sent to Dart.
+ *
+ * <p>Buffers are allocated lazily up to {@code maxBuffers} and then recycled, so a running image
+ * stream does not allocate per frame. A buffer that is too small for a frame is replaced by a
+ * larger one, which only happens when the stream resolution changes.
+ */
+class ImageStreamBufferPool {
+  private final ArrayDeque<ByteBuffer> freeBuffers;
+  private final int maxBuffers;
+  private int bufferCapacity;
+  private int allocatedBuffers;
+
+  ImageStreamBufferPool(int bufferCapacity, int maxBuffers) {
+    this.bufferCapacity = bufferCapacity;
+    this.maxBuffers = maxBuffers;
+    this.freeBuffers = new ArrayDeque<>(maxBuffers);
+  }
+
+  /**
+   * Returns a cleared little-endian buffer with at least {@code minCapacity} bytes, or null when
+   * every buffer of the pool is currently in use.
+   */
+  @Nullable
+  synchronized ByteBuffer acquire(int minCapacity) {
+    ByteBuffer buffer = freeBuffers.poll();
+    if (buffer == null) {
+      if (allocatedBuffers == maxBuffers) {
+        return null;
+      }
+      allocatedBuffers++;
+    } else if (buffer.capacity() >= minCapacity) {
+      buffer.clear();
+      return buffer;
+    }
+    bufferCapacity = Math.max(bufferCapacity, minCapacity);
+    return ByteBuffer.allocateDirect(bufferCapacity).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /** Returns a buffer obtained from {@link #acquire(int)} to the pool. */
+  synchronized void release(ByteBuffer buffer) {
+    freeBuffers.offer(buffer);
+  }
+
+  synchronized int getAllocatedBuffers() {
+    return allocatedBuffers;
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.camera;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limits the number of image stream frames that have been sent to Dart but not yet acknowledged.
+ *
+ * <p>Frames that arrive while the window is full are counted as dropped and must be discarded
+ * before they are copied. A window of zero or less disables the limit.
+ *
+ * <p>Each image stream gets a new instance with its own generation, so that acknowledgements sent
+ * by Dart for frames of a stopped stream do not open the window of the next one.
+ */
+class ImageStreamFlowControl {
+  private final int maxFramesInFlight;
+  private final int generation;
+  private int framesInFlight;
+  private long deliveredFrames;
+  private long droppedFrames;
+
+  ImageStreamFlowControl(int maxFramesInFlight, int generation) {
+    this.maxFramesInFlight = maxFramesInFlight;
+    this.generation = generation;
+  }
+
+  int getGeneration() {
+    return generation;
+  }
+
+  boolean isLimited() {
+    return maxFramesInFlight > 0;
+  }
+
+  /** Reserves a slot for the next frame, or counts it as dropped if the window is full. */
+  synchronized boolean tryAcquire() {
+    if (isLimited() && framesInFlight >= maxFramesInFlight) {
+      droppedFrames++;
+      return false;
+    }
+    framesInFlight++;
+    return true;
+  }
+
+  /** Releases a slot reserved by {@link #tryAcquire()} and counts the frame as dropped. */
+  synchronized void cancel() {
+    framesInFlight--;
+    droppedFrames++;
+  }
+
+  /** Records that a frame reserved by {@link #tryAcquire()} was sent to Dart. */
+  synchronized void onDelivered() {
+    deliveredFrames++;
+    if (!isLimited()) {
+      framesInFlight--;
+    }
+  }
+
+  /** Called when Dart has finished processing a delivered frame. */
+  synchronized void acknowledge() {
+    if (isLimited() && framesInFlight > 0) {
+      framesInFlight--;
+    }
+  }
+
+  /** Like {@link #acknowledge()}, but ignores acknowledgements of another stream's frames. */
+  synchronized void acknowledge(int generation) {
+    if (generation == this.generation) {
+      acknowledge();
+    }
+  }
+
+  synchronized Map<String, Object> getStatistics() {
+    Map<String, Object> statistics = new HashMap<>();
+    statistics.put("maxFramesInFlight", maxFramesInFlight);
+    statistics.put("framesInFlight", framesInFlight);
+    statistics.put("deliveredFrames", deliveredFrames);
+    statistics.put("droppedFrames", droppedFrames);
+    return statistics;
+  }
+}
@@ -0,0 +1,140 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.camera;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes image stream frames in the compact binary layout read by `CameraImage._fromBinaryData`
+ * on the Dart side.
+ *
+ * <p>All values are little-endian. A frame is laid out as:
+ *
+ * <pre>
+ *   int32 version, int32 width, int32 height, int32 format, int64 timestamp, int32 planeCount
+ *   planeCount times: int32 bytesPerRow, int32 bytesPerPixel, int32 length, length bytes
+ * </pre>
+ *
+ * <p>The binary writers never allocate, so frames can be written into pooled buffers. The map
+ * methods build the payload of the default event channel transport.
+ */
+final class ImageStreamFrameEncoder {
+  static final int VERSION = 1;
+  static final int FRAME_HEADER_SIZE = 4 * 4 + 8 + 4;
+  static final int PLANE_HEADER_SIZE = 3 * 4;
+
+  /** The planes of a frame, so that frames can be written without an {@code Image}. */
+  interface FramePlanes {
+    int getPlaneCount();
+
+    ByteBuffer getBuffer(int plane);
+
+    int getRowStride(int plane);
+
+    int getPixelStride(int plane);
+  }
+
+  private ImageStreamFrameEncoder() {}
+
+  /** Returns a buffer size that fits a YUV_420_888 frame of the given dimensions. */
+  static int estimateFrameSize(int width, int height) {
+    // The chroma planes of a semi-planar image each span about half of the luma plane.
+    return FRAME_HEADER_SIZE + 3 * PLANE_HEADER_SIZE + width * height * 2;
+  }
+
+  /** Returns the number of bytes a plane backed by {@code planeBuffer} takes in a frame. */
+  static int planeSize(ByteBuffer planeBuffer) {
+    return PLANE_HEADER_SIZE + planeBuffer.remaining();
+  }
+
+  static void writeHeader(
+      ByteBuffer out, int width, int height, int format, long timestamp, int planeCount) {
+    out.putInt(VERSION);
+    out.putInt(width);
+    out.putInt(height);
+    out.putInt(format);
+    out.putLong(timestamp);
+    out.putInt(planeCount);
+  }
+
+  /**
+   * Copies the remaining bytes of {@code planeBuffer} into {@code out}.
+   *
+   * <p>The position of {@code planeBuffer} is left unchanged.
+   */
+  static void writePlane(ByteBuffer out, ByteBuffer planeBuffer, int rowStride, int pixelStride) {
+    final int position = planeBuffer.position();
+    out.putInt(rowStride);
+    out.putInt(pixelStride);
+    out.putInt(planeBuffer.remaining());
+    out.put(planeBuffer);
+    planeBuffer.position(position);
+  }
+
+  /**
+   * Writes a whole frame into a buffer of {@code pool}.
+   *
+   * <p>Returns null, without writing anything, if the pool has no buffer left.
+   */
+  static ByteBuffer writeFrame(
+      ImageStreamBufferPool pool,
+      int width,
+      int height,
+      int format,
+      long timestamp,
+      FramePlanes planes) {
+    final int planeCount = planes.getPlaneCount();
+    int frameSize = FRAME_HEADER_SIZE;
+    for (int i = 0; i < planeCount; i++) {
+      frameSize += planeSize(planes.getBuffer(i));
+    }
+    final ByteBuffer frame = pool.acquire(frameSize);
+    if (frame == null) {
+      return null;
+    }
+    writeHeader(frame, width, height, format, timestamp, planeCount);
+    for (int i = 0; i < planeCount; i++) {
+      writePlane(frame, planes.getBuffer(i), planes.getRowStride(i), planes.getPixelStride(i));
+    }
+    return frame;
+  }
+
+  /** Copies a whole frame into the map form of the default event channel transport. */
+  static Map<String, Object> frameToMap(int width, int height, int format, FramePlanes planes) {
+    final int planeCount = planes.getPlaneCount();
+    List<Map<String, Object>> planeMaps = new ArrayList<>(planeCount);
+    for (int i = 0; i < planeCount; i++) {
+      planeMaps.add(
+          planeToMap(planes.getBuffer(i), planes.getRowStride(i), planes.getPixelStride(i)));
+    }
+    return imageToMap(width, height, format, planeMaps);
+  }
+
+  /** Copies the remaining bytes of {@code planeBuffer} into the map form of a plane. */
+  static Map<String, Object> planeToMap(ByteBuffer planeBuffer, int rowStride, int pixelStride) {
+    byte[] bytes = new byte[planeBuffer.remaining()];
+    planeBuffer.get(bytes, 0, bytes.length);
+
+    Map<String, Object> planeMap = new HashMap<>();
+    planeMap.put("bytesPerRow", rowStride);
+    planeMap.put("bytesPerPixel", pixelStride);
+    planeMap.put("bytes", bytes);
+    return planeMap;
+  }
+
+  static Map<String, Object> imageToMap(
+      int width, int height, int format, List<Map<String, Object>> planes) {
+    Map<String, Object> imageMap = new HashMap<>();
+    imageMap.put("width", width);
+    imageMap.put("height", height);
+    imageMap.put("format", format);
+    imageMap.put("planes", planes);
+    return imageMap;
+  }
+}
@@ -0,0 +1,281 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Crops, downscales and repacks YUV_420_888 frames of the image stream before they are sent to
+ * Dart.
+ *
+ * <p>Sampling is nearest neighbour. Frames are written in the {@link ImageStreamFrameEncoder}
+ * layout with one of the following plane selections:
+ *
+ * <ul>
+ *   <li>{@link #PLANES_ALL}: three planes Y, U and V with a pixel stride of 1.
+ *   <li>{@link #PLANES_Y}: the Y plane only, reported as {@link #FORMAT_Y8}.
+ *   <li>{@link #PLANES_NV21}: a single plane holding Y followed by interleaved V and U samples,
+ *       reported as {@link #FORMAT_NV21}.
+ * </ul>
+ *
+ * <p>Instances cache their sampling tables and are not thread safe.
+ */
+class ImageStreamTransform {
+  static final int PLANES_ALL = 0;
+  static final int PLANES_Y = 1;
+  static final int PLANES_NV21 = 2;
+
+  static final int FORMAT_YUV_420_888 = 35;
+  static final int FORMAT_NV21 = 17;
+  // Matches android.graphics.ImageFormat.Y8, which is only defined on API 29 and above.
+  static final int FORMAT_Y8 = 0x20203859;
+
+  private final int requestedCropLeft;
+  private final int requestedCropTop;
+  private final int requestedCropWidth;
+  private final int requestedCropHeight;
+  private final int requestedWidth;
+  private final int requestedHeight;
+  private final int planes;
+
+  // Resolved for the last source size seen by configure().
+  private int sourceWidth = -1;
+  private int sourceHeight = -1;
+  private int cropLeft;
+  private int cropTop;
+  private int outputWidth;
+  private int outputHeight;
+  private int[] lumaColumns;
+  private int[] lumaRows;
+  private int[] chromaColumns;
+  private int[] chromaRows;
+  private boolean lumaRowsContiguous;
+
+  /**
+   * @param cropLeft left edge of the region of interest, in source pixels.
+   * @param cropTop top edge of the region of interest, in source pixels.
+   * @param cropWidth width of the region of interest, or 0 for the whole frame.
+   * @param cropHeight height of the region of interest, or 0 for the whole frame.
+   * @param width output width, or 0 to keep the width of the region of interest.
+   * @param height output height, or 0 to keep the height of the region of interest.
+   * @param planes one of {@link #PLANES_ALL}, {@link #PLANES_Y} or {@link #PLANES_NV21}.
+   */
+  ImageStreamTransform(
+      int cropLeft,
+      int cropTop,
+      int cropWidth,
+      int cropHeight,
+      int width,
+      int height,
+      int planes) {
+    if (planes != PLANES_ALL && planes != PLANES_Y && planes != PLANES_NV21) {
+      throw new IllegalArgumentException("Unknown plane selection: " + planes);
+    }
+    this.requestedCropLeft = Math.max(0, cropLeft);
+    this.requestedCropTop = Math.max(0, cropTop);
+    this.requestedCropWidth = Math.max(0, cropWidth);
+    this.requestedCropHeight = Math.max(0, cropHeight);
+    this.requestedWidth = Math.max(0, width);
+    this.requestedHeight = Math.max(0, height);
+    this.planes = planes;
+  }
+
+  static int parsePlanes(String planes) {
+    if (planes == null) {
+      return PLANES_ALL;
+    }
+    switch (planes) {
+      case "all":
+        return PLANES_ALL;
+      case "y":
+        return PLANES_Y;
+      case "nv21":
+        return PLANES_NV21;
+      default:
+        throw new IllegalArgumentException("Unknown plane selection: " + planes);
+    }
+  }
+
+  /** Resolves the crop and output size for frames of the given size. */
+  void configure(int width, int height) {
+    if (width == sourceWidth && height == sourceHeight) {
+      return;
+    }
+    sourceWidth = width;
+    sourceHeight = height;
+
+    // Chroma is subsampled by two, so the crop and the output are kept on even coordinates.
+    cropLeft = Math.min(requestedCropLeft, width - 2) & ~1;
+    cropTop = Math.min(requestedCropTop, height - 2) & ~1;
+    int cropWidth = requestedCropWidth == 0 ? width : requestedCropWidth;
+    int cropHeight = requestedCropHeight == 0 ? height : requestedCropHeight;
+    cropWidth = Math.max(2, Math.min(cropWidth, width - cropLeft) & ~1);
+    cropHeight = Math.max(2, Math.min(cropHeight, height - cropTop) & ~1);
+
+    // The stage only ever downscales.
+    outputWidth = requestedWidth == 0 ? cropWidth : Math.min(requestedWidth, cropWidth);
+    outputHeight = requestedHeight == 0 ? cropHeight : Math.min(requestedHeight, cropHeight);
+    outputWidth = Math.max(2, outputWidth & ~1);
+    outputHeight = Math.max(2, outputHeight & ~1);
+
+    lumaColumns = sample(cropLeft, cropWidth, outputWidth, 1);
+    lumaRows = sample(cropTop, cropHeight, outputHeight, 1);
+    chromaColumns = sample(cropLeft, cropWidth, outputWidth / 2, 2);
+    chromaRows = sample(cropTop, cropHeight, outputHeight / 2, 2);
+    lumaRowsContiguous = outputWidth == cropWidth;
+  }
+
+  private static int[] sample(int start, int length, int count, int subsampling) {
+    int[] positions = new int[count];
+    for (int i = 0; i < count; i++) {
+      positions[i] = (start + (int) ((long) i * length / count)) / subsampling;
+    }
+    return positions;
+  }
+
+  int getOutputWidth() {
+    return outputWidth;
+  }
+
+  int getOutputHeight() {
+    return outputHeight;
+  }
+
+  /** Returns the size of an encoded frame, {@link #configure(int, int)} must be called first. */
+  int frameSize() {
+    final int lumaSize = outputWidth * outputHeight;
+    switch (planes) {
+      case PLANES_Y:
+        return ImageStreamFrameEncoder.FRAME_HEADER_SIZE
+            + ImageStreamFrameEncoder.PLANE_HEADER_SIZE
+            + lumaSize;
+      case PLANES_NV21:
+        return ImageStreamFrameEncoder.FRAME_HEADER_SIZE
+            + ImageStreamFrameEncoder.PLANE_HEADER_SIZE
+            + lumaSize
+            + lumaSize / 2;
+      default:
+        return ImageStreamFrameEncoder.FRAME_HEADER_SIZE
+            + 3 * ImageStreamFrameEncoder.PLANE_HEADER_SIZE
+            + lumaSize
+            + lumaSize / 2;
+    }
+  }
+
+  /**
+   * Configures the transform for a frame and writes it into a buffer of {@code pool}.
+   *
+   * <p>Returns null, without writing anything, if the pool has no buffer left.
+   */
+  ByteBuffer writeFrame(
+      ImageStreamBufferPool pool,
+      int width,
+      int height,
+      long timestamp,
+      ImageStreamFrameEncoder.FramePlanes planes) {
+    configure(width, height);
+    final ByteBuffer frame = pool.acquire(frameSize());
+    if (frame == null) {
+      return null;
+    }
+    write(
+        frame,
+        timestamp,
+        planes.getBuffer(0),
+        planes.getRowStride(0),
+        planes.getPixelStride(0),
+        planes.getBuffer(1),
+        planes.getBuffer(2),
+        planes.getRowStride(1),
+        planes.getPixelStride(1));
+    return frame;
+  }
+
+  /**
+   * Writes the transformed frame into {@code out}, {@link #configure(int, int)} must be called
+   * with the source size first.
+   */
+  void write(
+      ByteBuffer out,
+      long timestamp,
+      ByteBuffer y,
+      int yRowStride,
+      int yPixelStride,
+      ByteBuffer u,
+      ByteBuffer v,
+      int uvRowStride,
+      int uvPixelStride) {
+    final int lumaSize = outputWidth * outputHeight;
+    final int chromaWidth = outputWidth / 2;
+    final int chromaSize = lumaSize / 4;
+    switch (planes) {
+      case PLANES_Y:
+        ImageStreamFrameEncoder.writeHeader(
+            out, outputWidth, outputHeight, FORMAT_Y8, timestamp, 1);
+        writePlaneHeader(out, outputWidth, 1, lumaSize);
+        writeLuma(out, y, yRowStride, yPixelStride);
+        break;
+      case PLANES_NV21:
+        ImageStreamFrameEncoder.writeHeader(
+            out, outputWidth, outputHeight, FORMAT_NV21, timestamp, 1);
+        writePlaneHeader(out, outputWidth, 1, lumaSize + 2 * chromaSize);
+        writeLuma(out, y, yRowStride, yPixelStride);
+        writeChroma(out, v, u, uvRowStride, uvPixelStride);
+        break;
+      default:
+        ImageStreamFrameEncoder.writeHeader(
+            out, outputWidth, outputHeight, FORMAT_YUV_420_888, timestamp, 3);
+        writePlaneHeader(out, outputWidth, 1, lumaSize);
+        writeLuma(out, y, yRowStride, yPixelStride);
+        writePlaneHeader(out, chromaWidth, 1, chromaSize);
+        writeChroma(out, u, null, uvRowStride, uvPixelStride);
+        writePlaneHeader(out, chromaWidth, 1, chromaSize);
+        writeChroma(out, v, null, uvRowStride, uvPixelStride);
+    }
+  }
+
+  private static void writePlaneHeader(ByteBuffer out, int rowStride, int pixelStride, int size) {
+    out.putInt(rowStride);
+    out.putInt(pixelStride);
+    out.putInt(size);
+  }
+
+  private void writeLuma(ByteBuffer out, ByteBuffer y, int rowStride, int pixelStride) {
+    final boolean contiguousRows = lumaRowsContiguous && pixelStride == 1;
+    final int limit = y.limit();
+    final int position = y.position();
+    for (int row : lumaRows) {
+      final int rowStart = position + row * rowStride;
+      if (contiguousRows) {
+        // Without horizontal scaling a row is a plain copy.
+        y.limit(rowStart + cropLeft + outputWidth);
+        y.position(rowStart + cropLeft);
+        out.put(y);
+        y.limit(limit);
+      } else {
+        for (int column : lumaColumns) {
+          out.put(y.get(rowStart + column * pixelStride));
+        }
+      }
+    }
+    y.position(position);
+  }
+
+  /** Writes one chroma plane, or two interleaved ones when {@code second} is not null. */
+  private void writeChroma(
+      ByteBuffer out, ByteBuffer first, ByteBuffer second, int rowStride, int pixelStride) {
+    final int firstPosition = first.position();
+    final int secondPosition = second == null ? 0 : second.position();
+    for (int row : chromaRows) {
+      for (int column : chromaColumns) {
+        final int offset = row * rowStride + column * pixelStride;
+        out.put(first.get(firstPosition + offset));
+        if (second != null) {
+          out.put(second.get(secondPosition + offset));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,371 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.camera;
+
+import android.annotation.TargetApi;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.Surface;
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Records video from an encoder input surface and audio from the microphone into an MP4 file.
+ *
+ * <p>Unlike {@link MediaRecorder}, the encoder is configured directly, so its input surface can be
+ * one more output of a capture session that also feeds the image stream. Each track is drained on
+ * its own thread. Samples are dropped until both tracks have reported their format and the muxer
+ * has started, after which video resumes at the next key frame.
+ *
+ * <p>Audio is stamped with the clock of the camera frames, and both tracks are rebased to the first
+ * written video key frame. Audio samples from before that frame are dropped, so the file starts
+ * with a picture and the tracks keep their offset.
+ */
+class MediaCodecRecorder {
+  /** Receives the outcome of {@link #stop}. */
+  interface StopCallback {
+    /** @param finalized whether the file was finalized and can be played back. */
+    void onStopped(boolean finalized);
+  }
+
+  private static final String AUDIO_MIME_TYPE = "audio/mp4a-latm";
+  private static final long DEQUEUE_TIMEOUT_US = 10000;
+
+  private final MediaMuxer muxer;
+  private final Track videoTrack;
+  private final Track audioTrack;
+  private final AudioRecord audioRecord;
+  private final Surface inputSurface;
+  private final boolean ownsInputSurface;
+  private final boolean realtimeTimestamps;
+  private volatile boolean stopRequested;
+  // Set when the end of the video stream could not be signaled, so the drain threads give up.
+  private volatile boolean abandoned;
+  private int addedTracks;
+  private boolean muxerStarted;
+  private long originPresentationTimeUs = -1;
+  private int runningDrainThreads;
+  private Handler stopHandler;
+  private StopCallback stopCallback;
+  private boolean finishScheduled;
+
+  /**
+   * @param persistentInputSurface a surface from {@code MediaCodec.createPersistentInputSurface},
+   *     or null to let the encoder create its own input surface.
+   * @param realtimeTimestamps whether the camera stamps frames with {@link
+   *     SystemClock#elapsedRealtimeNanos} rather than {@link System#nanoTime}, so that audio is
+   *     stamped with the same clock.
+   */
+  MediaCodecRecorder(
+      String outputFilePath,
+      VideoEncodingSettings encoding,
+      int orientationHint,
+      @Nullable Surface persistentInputSurface,
+      boolean realtimeTimestamps)
+      throws IOException {
+    this.realtimeTimestamps = realtimeTimestamps;
+    MediaMuxer muxer = null;
+    MediaCodec videoEncoder = null;
+    Surface inputSurface = null;
+    AudioRecord audioRecord = null;
+    MediaCodec audioEncoder = null;
+    try {
+      muxer = new MediaMuxer(outputFilePath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+      muxer.setOrientationHint(orientationHint);
+
+      MediaFormat videoFormat =
+          MediaFormat.createVideoFormat(
+              encoding.getVideoMimeType(), encoding.width, encoding.height);
+      videoFormat.setInteger(
+          MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+      videoFormat.setInteger(MediaFormat.KEY_BIT_RATE, encoding.videoBitRate);
+      videoFormat.setInteger(MediaFormat.KEY_FRAME_RATE, encoding.frameRate);
+      videoFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, encoding.keyFrameInterval);
+      videoEncoder = MediaCodec.createEncoderByType(encoding.getVideoMimeType());
+      videoEncoder.configure(videoFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+      if (persistentInputSurface != null) {
+        setInputSurface(videoEncoder, persistentInputSurface);
+      } else {
+        inputSurface = videoEncoder.createInputSurface();
+      }
+
+      final int channelConfig =
+          encoding.audioChannels == 1 ? AudioFormat.CHANNEL_IN_MONO : AudioFormat.CHANNEL_IN_STEREO;
+      final int minBufferSize =
+          AudioRecord.getMinBufferSize(
+              encoding.audioSampleRate, channelConfig, AudioFormat.ENCODING_PCM_16BIT);
+      audioRecord =
+          new AudioRecord(
+              MediaRecorder.AudioSource.MIC,
+              encoding.audioSampleRate,
+              channelConfig,
+              AudioFormat.ENCODING_PCM_16BIT,
+              2 * minBufferSize);
+      if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+        throw new IllegalStateException("Failed to initialize the microphone.");
+      }
+      MediaFormat audioFormat =
+          MediaFormat.createAudioFormat(
+              AUDIO_MIME_TYPE, encoding.audioSampleRate, encoding.audioChannels);
+      audioFormat.setInteger(
+          MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+      audioFormat.setInteger(MediaFormat.KEY_BIT_RATE, encoding.audioBitRate);
+      audioFormat.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, minBufferSize);
+      audioEncoder = MediaCodec.createEncoderByType(AUDIO_MIME_TYPE);
+      audioEncoder.configure(audioFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+    } catch (IOException | RuntimeException e) {
+      if (audioEncoder != null) {
+        audioEncoder.release();
+      }
+      if (audioRecord != null) {
+        audioRecord.release();
+      }
+      if (inputSurface != null) {
+        inputSurface.release();
+      }
+      if (videoEncoder != null) {
+        videoEncoder.release();
+      }
+      if (muxer != null) {
+        muxer.release();
+      }
+      throw e;
+    }
+    this.muxer = muxer;
+    this.audioRecord = audioRecord;
+    if (inputSurface != null) {
+      this.inputSurface = inputSurface;
+      this.ownsInputSurface = true;
+    } else {
+      this.inputSurface = persistentInputSurface;
+      this.ownsInputSurface = false;
+    }
+    videoTrack = new Track(videoEncoder, true);
+    audioTrack = new Track(audioEncoder, false);
+  }
+
+  @TargetApi(Build.VERSION_CODES.M)
+  private static void setInputSurface(MediaCodec encoder, Surface surface) {
+    encoder.setInputSurface(surface);
+  }
+
+  /** The surface to add to the capture session and the repeating request. */
+  Surface getInputSurface() {
+    return inputSurface;
+  }
+
+  void start() {
+    videoTrack.codec.start();
+    audioTrack.codec.start();
+    audioRecord.startRecording();
+
+    final Thread videoThread =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  while (!abandoned && !videoTrack.drain()) {}
+                } finally {
+                  onDrainThreadFinished();
+                }
+              }
+            },
+            "CameraVideoEncoder");
+    final Thread audioThread =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  boolean inputEnded = false;
+                  do {
+                    if (!inputEnded) {
+                      inputEnded = feedAudio();
+                    }
+                  } while (!abandoned && !audioTrack.drain());
+                } finally {
+                  onDrainThreadFinished();
+                }
+              }
+            },
+            "CameraAudioEncoder");
+    synchronized (this) {
+      runningDrainThreads = 2;
+    }
+    videoThread.start();
+    audioThread.start();
+  }
+
+  /**
+   * Ends both tracks and returns without waiting for their last samples.
+   *
+   * <p>Once both encoders are drained, the file is finalized and the recorder released on {@code
+   * handler}, or on the last encoder thread if {@code handler} is null or no longer running. The
+   * encoders and the microphone are released even if the file could not be finalized.
+   */
+  void stop(@Nullable Handler handler, StopCallback callback) {
+    synchronized (this) {
+      stopHandler = handler;
+      stopCallback = callback;
+    }
+    stopRequested = true;
+    try {
+      videoTrack.codec.signalEndOfInputStream();
+    } catch (IllegalStateException e) {
+      abandoned = true;
+    }
+    finishIfDrained();
+  }
+
+  private void onDrainThreadFinished() {
+    synchronized (this) {
+      runningDrainThreads--;
+    }
+    finishIfDrained();
+  }
+
+  private void finishIfDrained() {
+    final Handler handler;
+    synchronized (this) {
+      // The codecs must not be released while they are drained.
+      if (runningDrainThreads > 0 || stopCallback == null || finishScheduled) {
+        return;
+      }
+      finishScheduled = true;
+      handler = stopHandler;
+    }
+    final Runnable finish =
+        new Runnable() {
+          @Override
+          public void run() {
+            finish();
+          }
+        };
+    if (handler == null || !handler.post(finish)) {
+      finish.run();
+    }
+  }
+
+  private void finish() {
+    boolean finalized = !abandoned;
+    try {
+      synchronized (this) {
+        if (finalized && muxerStarted) {
+          muxer.stop();
+        }
+      }
+    } catch (IllegalStateException e) {
+      finalized = false;
+    } finally {
+      release();
+    }
+    stopCallback.onStopped(finalized);
+  }
+
+  /** Releases the encoders without finalizing the file, for recordings that failed to start. */
+  void release() {
+    audioRecord.release();
+    videoTrack.codec.release();
+    audioTrack.codec.release();
+    muxer.release();
+    if (ownsInputSurface) {
+      inputSurface.release();
+    }
+  }
+
+  /** Queues one buffer of microphone samples, returns true once the end of stream was queued. */
+  private boolean feedAudio() {
+    final MediaCodec codec = audioTrack.codec;
+    final int index = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+    if (index < 0) {
+      return false;
+    }
+    final long presentationTimeUs =
+        (realtimeTimestamps ? SystemClock.elapsedRealtimeNanos() : System.nanoTime()) / 1000;
+    if (stopRequested) {
+      audioRecord.stop();
+      codec.queueInputBuffer(
+          index, 0, 0, presentationTimeUs, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+      return true;
+    }
+    final ByteBuffer input = codec.getInputBuffer(index);
+    final int read = audioRecord.read(input, input.remaining());
+    codec.queueInputBuffer(index, 0, Math.max(read, 0), presentationTimeUs, 0);
+    return false;
+  }
+
+  private synchronized void onOutputFormatChanged(Track track, MediaFormat format) {
+    track.muxerIndex = muxer.addTrack(format);
+    if (++addedTracks == 2) {
+      muxer.start();
+      muxerStarted = true;
+      // Frames encoded before the muxer started were dropped, so restart at a key frame.
+      Bundle parameters = new Bundle();
+      parameters.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+      videoTrack.codec.setParameters(parameters);
+    }
+  }
+
+  private synchronized void writeSample(
+      Track track, ByteBuffer data, MediaCodec.BufferInfo info) {
+    if (!muxerStarted) {
+      return;
+    }
+    if (track.waitingForKeyFrame) {
+      if ((info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) == 0) {
+        return;
+      }
+      track.waitingForKeyFrame = false;
+      originPresentationTimeUs = info.presentationTimeUs;
+    }
+    if (originPresentationTimeUs < 0 || info.presentationTimeUs < originPresentationTimeUs) {
+      return;
+    }
+    info.presentationTimeUs -= originPresentationTimeUs;
+    muxer.writeSampleData(track.muxerIndex, data, info);
+  }
+
+  private class Track {
+    final MediaCodec codec;
+    final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+    int muxerIndex = -1;
+    boolean waitingForKeyFrame;
+
+    Track(MediaCodec codec, boolean video) {
+      this.codec = codec;
+      this.waitingForKeyFrame = video;
+    }
+
+    /** Writes the available output of the encoder, returns true at the end of the stream. */
+    boolean drain() {
+      final int index = codec.dequeueOutputBuffer(bufferInfo, DEQUEUE_TIMEOUT_US);
+      if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+        onOutputFormatChanged(this, codec.getOutputFormat());
+        return false;
+      }
+      if (index < 0) {
+        return false;
+      }
+      final boolean endOfStream = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+      // The codec config is already part of the track format.
+      if ((bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && bufferInfo.size > 0) {
+        writeSample(this, codec.getOutputBuffer(index), bufferInfo);
+      }
+      codec.releaseOutputBuffer(index, false);
+      return endOfStream;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.camera;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of still captures requested together.
+ *
+ * <p>Each {@link Shot} records when it was requested, when its JPEG became available and when the
+ * file was written, and reports itself to the {@link Listener} once saved or failed. The burst
+ * completes after its last shot.
+ */
+class PictureBurst {
+  interface Listener {
+    /** Called once per shot, on the thread that saved or failed it. */
+    void onShotCompleted(Shot shot);
+
+    /** Called after the last shot completed, with the shots in request order. */
+    void onBurstCompleted(List<Shot> shots);
+  }
+
+  /** Elapsed time source, {@code SystemClock.elapsedRealtimeNanos} on devices. */
+  interface Clock {
+    long nanoTime();
+  }
+
+  class Shot {
+    final int index;
+    final File file;
+    private long requestedNanos;
+    private long imageAvailableNanos;
+    private long completedNanos;
+    private String errorCode;
+    private String errorDescription;
+
+    Shot(int index, File file) {
+      this.index = index;
+      this.file = file;
+    }
+
+    void onRequested() {
+      requestedNanos = clock.nanoTime();
+    }
+
+    void onImageAvailable() {
+      imageAvailableNanos = clock.nanoTime();
+    }
+
+    void onSaved() {
+      completedNanos = clock.nanoTime();
+      complete(this);
+    }
+
+    void onFailed(String errorCode, String errorDescription) {
+      completedNanos = clock.nanoTime();
+      this.errorCode = errorCode;
+      this.errorDescription = errorDescription;
+      complete(this);
+    }
+
+    boolean isSaved() {
+      return errorCode == null;
+    }
+
+    String getErrorCode() {
+      return errorCode;
+    }
+
+    String getErrorDescription() {
+      return errorDescription;
+    }
+
+    /** Returns the time from the capture request to the JPEG being written, in microseconds. */
+    long getCaptureToDiskMicros() {
+      return (completedNanos - requestedNanos) / 1000;
+    }
+
+    Map<String, Object> toMap() {
+      Map<String, Object> shot = new HashMap<>();
+      shot.put("index", index);
+      shot.put("path", file.getPath());
+      if (errorCode != null) {
+        shot.put("errorCode", errorCode);
+        shot.put("errorDescription", errorDescription);
+      } else {
+        shot.put("captureMicros", (imageAvailableNanos - requestedNanos) / 1000);
+        shot.put("writeMicros", (completedNanos - imageAvailableNanos) / 1000);
+        shot.put("captureToDiskMicros", getCaptureToDiskMicros());
+      }
+      return shot;
+    }
+  }
+
+  private final List<Shot> shots = new ArrayList<>();
+  private final Clock clock;
+  private final Listener listener;
+  private int remainingShots;
+
+  PictureBurst(List<File> files, Clock clock, Listener listener) {
+    this.clock = clock;
+    this.listener = listener;
+    for (File file : files) {
+      shots.add(new Shot(shots.size(), file));
+    }
+    remainingShots = shots.size();
+  }
+
+  List<Shot> getShots() {
+    return shots;
+  }
+
+  /** Writes the remaining bytes of {@code buffer} to {@code file}. */
+  static void writeToFile(ByteBuffer buffer, File file) throws IOException {
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      while (0 < buffer.remaining()) {
+        outputStream.getChannel().write(buffer);
+      }
+    }
+  }
+
+  private void complete(Shot shot) {
+    listener.onShotCompleted(shot);
+    final boolean last;
+    synchronized (this) {
+      last = --remainingShots == 0;
+    }
+    if (last) {
+      listener.onBurstCompleted(shots);
+    }
+  }
+}
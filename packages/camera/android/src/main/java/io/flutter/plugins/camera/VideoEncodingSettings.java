@@ -0,0 +1,176 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.camera;
+
+import androidx.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The encoder settings of a video recording.
+ *
+ * <p>Defaults come from the {@code CamcorderProfile} closest to the recording size, with the
+ * bitrate scaled by the pixel count. Options passed from Dart override the defaults, and the
+ * result is clamped to what the selected encoder supports.
+ */
+final class VideoEncodingSettings {
+  static final String CODEC_H264 = "h264";
+  static final String CODEC_HEVC = "hevc";
+
+  static final String MIME_H264 = "video/avc";
+  static final String MIME_HEVC = "video/hevc";
+
+  // Used when the camera has no CamcorderProfile, for example external cameras.
+  private static final int FALLBACK_BITS_PER_PIXEL_SECOND = 4;
+  private static final int FALLBACK_FRAME_RATE = 30;
+  private static final int FALLBACK_AUDIO_BIT_RATE = 96000;
+  private static final int FALLBACK_AUDIO_SAMPLE_RATE = 44100;
+  private static final int DEFAULT_KEY_FRAME_INTERVAL = 1;
+
+  final String codec;
+  final int width;
+  final int height;
+  final int videoBitRate;
+  final int frameRate;
+  final int keyFrameInterval;
+  final int audioBitRate;
+  final int audioSampleRate;
+  final int audioChannels;
+
+  private VideoEncodingSettings(
+      String codec,
+      int width,
+      int height,
+      int videoBitRate,
+      int frameRate,
+      int keyFrameInterval,
+      int audioBitRate,
+      int audioSampleRate,
+      int audioChannels) {
+    this.codec = codec;
+    this.width = width;
+    this.height = height;
+    this.videoBitRate = videoBitRate;
+    this.frameRate = frameRate;
+    this.keyFrameInterval = keyFrameInterval;
+    this.audioBitRate = audioBitRate;
+    this.audioSampleRate = audioSampleRate;
+    this.audioChannels = audioChannels;
+  }
+
+  /**
+   * Returns H.264 settings for a {@code width}x{@code height} recording derived from a
+   * CamcorderProfile recorded at {@code profileWidth}x{@code profileHeight}.
+   */
+  static VideoEncodingSettings fromProfile(
+      int width,
+      int height,
+      int profileWidth,
+      int profileHeight,
+      int profileVideoBitRate,
+      int profileFrameRate,
+      int profileAudioBitRate,
+      int profileAudioSampleRate,
+      int profileAudioChannels) {
+    final long pixels = (long) width * height;
+    final long profilePixels = (long) profileWidth * profileHeight;
+    return new VideoEncodingSettings(
+        CODEC_H264,
+        width,
+        height,
+        (int) Math.min(Integer.MAX_VALUE, profileVideoBitRate * pixels / profilePixels),
+        profileFrameRate,
+        DEFAULT_KEY_FRAME_INTERVAL,
+        profileAudioBitRate,
+        profileAudioSampleRate,
+        profileAudioChannels);
+  }
+
+  /** Returns H.264 settings for cameras without a CamcorderProfile. */
+  static VideoEncodingSettings fallback(int width, int height) {
+    return new VideoEncodingSettings(
+        CODEC_H264,
+        width,
+        height,
+        width * height * FALLBACK_BITS_PER_PIXEL_SECOND,
+        FALLBACK_FRAME_RATE,
+        DEFAULT_KEY_FRAME_INTERVAL,
+        FALLBACK_AUDIO_BIT_RATE,
+        FALLBACK_AUDIO_SAMPLE_RATE,
+        1);
+  }
+
+  /**
+   * Returns a copy with the values present in {@code options} replaced.
+   *
+   * <p>Recognized keys are {@code codec} ({@code h264} or {@code hevc}), {@code videoBitRate},
+   * {@code frameRate}, {@code keyFrameInterval} in seconds and {@code audioBitRate}.
+   */
+  VideoEncodingSettings withOptions(@Nullable Map<?, ?> options) {
+    if (options == null) {
+      return this;
+    }
+    String codec = this.codec;
+    if (options.get("codec") != null) {
+      codec = (String) options.get("codec");
+      if (!CODEC_H264.equals(codec) && !CODEC_HEVC.equals(codec)) {
+        throw new IllegalArgumentException("Unknown video codec: " + codec);
+      }
+    }
+    return new VideoEncodingSettings(
+        codec,
+        width,
+        height,
+        positiveOption(options, "videoBitRate", videoBitRate),
+        positiveOption(options, "frameRate", frameRate),
+        positiveOption(options, "keyFrameInterval", keyFrameInterval),
+        positiveOption(options, "audioBitRate", audioBitRate),
+        audioSampleRate,
+        audioChannels);
+  }
+
+  /** Returns a copy with the bitrate and frame rate limited to the given encoder ranges. */
+  VideoEncodingSettings clamp(int minVideoBitRate, int maxVideoBitRate, int maxFrameRate) {
+    return new VideoEncodingSettings(
+        codec,
+        width,
+        height,
+        Math.max(minVideoBitRate, Math.min(maxVideoBitRate, videoBitRate)),
+        Math.max(1, Math.min(maxFrameRate, frameRate)),
+        keyFrameInterval,
+        audioBitRate,
+        audioSampleRate,
+        audioChannels);
+  }
+
+  String getVideoMimeType() {
+    return CODEC_HEVC.equals(codec) ? MIME_HEVC : MIME_H264;
+  }
+
+  Map<String, Object> toMap() {
+    Map<String, Object> settings = new HashMap<>();
+    settings.put("codec", codec);
+    settings.put("width", width);
+    settings.put("height", height);
+    settings.put("videoBitRate", videoBitRate);
+    settings.put("frameRate", frameRate);
+    settings.put("keyFrameInterval", keyFrameInterval);
+    settings.put("audioBitRate", audioBitRate);
+    settings.put("audioSampleRate", audioSampleRate);
+    return settings;
+  }
+
+  private static int positiveOption(Map<?, ?> options, String key, int defaultValue) {
+    final Object value = options.get(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    final int option = ((Number) value).intValue();
+    if (option <= 0) {
+      throw new IllegalArgumentException(key + " must be positive, got " + option);
+    }
+    return option;
+  }
+}
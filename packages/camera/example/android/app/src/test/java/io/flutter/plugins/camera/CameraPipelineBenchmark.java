@@ -0,0 +1,151 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.StandardMethodCodec;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import org.junit.Test;
+
+/**
+ * Measures the per-frame costs of the image stream transports and the cost of writing a picture.
+ *
+ * <p>Each benchmark runs a warm-up phase before it is timed, like a single JMH fork. Results are
+ * printed and appended to {@code build/benchmarks/camera_pipeline.csv} so CI can track them.
+ *
+ * <p>The benchmarks are excluded from the regular unit tests. Run them with {@code ./gradlew
+ * testDebugUnitTest -PcameraBenchmarks}.
+ */
+public class CameraPipelineBenchmark {
+  private static final int WIDTH = 1920;
+  private static final int HEIGHT = 1080;
+  private static final int YUV_420_888 = 35;
+  private static final int WARMUP_ITERATIONS = 50;
+  private static final int ITERATIONS = 200;
+  private static final File RESULTS = new File("build/benchmarks/camera_pipeline.csv");
+
+  /** Copies each message out of its buffer, as the engine does before {@code send} returns. */
+  private static class FakeMessenger implements BinaryMessenger {
+    private final ByteBuffer engineBuffer =
+        ByteBuffer.allocateDirect(ImageStreamFrameEncoder.estimateFrameSize(WIDTH, HEIGHT) * 2);
+
+    @Override
+    public void send(String channel, ByteBuffer message) {
+      send(channel, message, null);
+    }
+
+    @Override
+    public void send(String channel, ByteBuffer message, BinaryReply callback) {
+      if (message == null) {
+        return;
+      }
+      ByteBuffer bytes = message.duplicate();
+      bytes.flip();
+      engineBuffer.clear();
+      engineBuffer.put(bytes);
+    }
+
+    @Override
+    public void setMessageHandler(String channel, BinaryMessageHandler handler) {}
+  }
+
+  private final FakeImage image = new FakeImage(WIDTH, HEIGHT, 42L);
+  private final FakeMessenger messenger = new FakeMessenger();
+
+  private static void measure(String name, Runnable operation) throws IOException {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      operation.run();
+    }
+    final long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      operation.run();
+    }
+    final double microsPerOperation = (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+
+    System.out.println(String.format("%-32s %10.1f us/op", name, microsPerOperation));
+    RESULTS.getParentFile().mkdirs();
+    try (Writer writer = new FileWriter(RESULTS, true)) {
+      writer.write(name + "," + microsPerOperation + "\n");
+    }
+  }
+
+  @Test
+  public void mapTransport() throws IOException {
+    measure(
+        "imageStream.map",
+        new Runnable() {
+          @Override
+          public void run() {
+            image.rewind();
+            Map<String, Object> imageMap =
+                ImageStreamFrameEncoder.frameToMap(WIDTH, HEIGHT, YUV_420_888, image);
+            messenger.send(
+                "plugins.flutter.io/camera/imageStream",
+                StandardMethodCodec.INSTANCE.encodeSuccessEnvelope(imageMap));
+          }
+        });
+  }
+
+  @Test
+  public void binaryTransport() throws IOException {
+    final ImageStreamBufferPool pool =
+        new ImageStreamBufferPool(ImageStreamFrameEncoder.estimateFrameSize(WIDTH, HEIGHT), 2);
+    measure(
+        "imageStream.binary",
+        new Runnable() {
+          @Override
+          public void run() {
+            ByteBuffer frame =
+                ImageStreamFrameEncoder.writeFrame(
+                    pool, WIDTH, HEIGHT, YUV_420_888, image.timestamp, image);
+            messenger.send("plugins.flutter.io/camera/imageStreamFrames", frame);
+            pool.release(frame);
+          }
+        });
+  }
+
+  @Test
+  public void transformTransport() throws IOException {
+    final ImageStreamTransform transform =
+        new ImageStreamTransform(0, 0, 0, 0, 640, 360, ImageStreamTransform.PLANES_NV21);
+    transform.configure(WIDTH, HEIGHT);
+    final ImageStreamBufferPool pool = new ImageStreamBufferPool(transform.frameSize(), 2);
+    measure(
+        "imageStream.transform.nv21_360p",
+        new Runnable() {
+          @Override
+          public void run() {
+            ByteBuffer frame = transform.writeFrame(pool, WIDTH, HEIGHT, image.timestamp, image);
+            messenger.send("plugins.flutter.io/camera/imageStreamFrames", frame);
+            pool.release(frame);
+          }
+        });
+  }
+
+  @Test
+  public void writePicture() throws IOException {
+    // About the size of a 12 megapixel JPEG.
+    final ByteBuffer jpeg = ByteBuffer.allocateDirect(4 * 1024 * 1024);
+    final File file = File.createTempFile("benchmark", ".jpg");
+    try {
+      measure(
+          "picture.writeToFile",
+          new Runnable() {
+            @Override
+            public void run() {
+              jpeg.clear();
+              try {
+                PictureBurst.writeToFile(jpeg, file);
+              } catch (IOException e) {
+                throw new RuntimeException(e);
+              }
+            }
+          });
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package io.flutter.plugins.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stands in for a YUV_420_888 {@code android.media.Image} with semi-planar chroma, which cannot be
+ * constructed in tests.
+ */
+class FakeImage implements ImageStreamFrameEncoder.FramePlanes {
+  /** Stands in for {@code android.media.Image.Plane}. */
+  static class Plane {
+    final ByteBuffer buffer;
+    final int rowStride;
+    final int pixelStride;
+
+    Plane(int size, int rowStride, int pixelStride) {
+      this.buffer = ByteBuffer.allocateDirect(size);
+      this.rowStride = rowStride;
+      this.pixelStride = pixelStride;
+      for (int i = 0; i < size; i++) {
+        buffer.put(i, (byte) i);
+      }
+    }
+  }
+
+  final int width;
+  final int height;
+  final long timestamp;
+  final Plane[] planes;
+
+  FakeImage(int width, int height, long timestamp) {
+    this.width = width;
+    this.height = height;
+    this.timestamp = timestamp;
+    this.planes =
+        new Plane[] {
+          new Plane(width * height, width, 1),
+          new Plane(width * height / 2 - 1, width, 2),
+          new Plane(width * height / 2 - 1, width, 2),
+        };
+  }
+
+  /** Makes the planes readable again after the map transport consumed them. */
+  void rewind() {
+    for (Plane plane : planes) {
+      plane.buffer.rewind();
+    }
+  }
+
+  @Override
+  public int getPlaneCount() {
+    return planes.length;
+  }
+
+  @Override
+  public ByteBuffer getBuffer(int plane) {
+    return planes[plane].buffer;
+  }
+
+  @Override
+  public int getRowStride(int plane) {
+    return planes[plane].rowStride;
+  }
+
+  @Override
+  public int getPixelStride(int plane) {
+    return planes[plane].pixelStride;
+  }
+}
@@ -0,0 +1,78 @@
+package io.flutter.plugins.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import org.junit.Test;
+
+public class ImageStreamFlowControlTest {
+  @Test
+  public void tryAcquire_dropsFramesPastTheWindowUntilAcknowledged() {
+    ImageStreamFlowControl flowControl = new ImageStreamFlowControl(2, 1);
+
+    assertTrue(flowControl.tryAcquire());
+    flowControl.onDelivered();
+    assertTrue(flowControl.tryAcquire());
+    flowControl.onDelivered();
+    assertFalse(flowControl.tryAcquire());
+    assertFalse(flowControl.tryAcquire());
+    flowControl.acknowledge();
+    assertTrue(flowControl.tryAcquire());
+    flowControl.onDelivered();
+
+    Map<String, Object> statistics = flowControl.getStatistics();
+    assertEquals(2, statistics.get("maxFramesInFlight"));
+    assertEquals(2, statistics.get("framesInFlight"));
+    assertEquals(3L, statistics.get("deliveredFrames"));
+    assertEquals(2L, statistics.get("droppedFrames"));
+  }
+
+  @Test
+  public void tryAcquire_neverDropsWhenUnlimited() {
+    ImageStreamFlowControl flowControl = new ImageStreamFlowControl(0, 1);
+
+    for (int i = 0; i < 100; i++) {
+      assertTrue(flowControl.tryAcquire());
+      flowControl.onDelivered();
+    }
+
+    Map<String, Object> statistics = flowControl.getStatistics();
+    assertEquals(0, statistics.get("framesInFlight"));
+    assertEquals(100L, statistics.get("deliveredFrames"));
+    assertEquals(0L, statistics.get("droppedFrames"));
+  }
+
+  @Test
+  public void cancel_releasesTheSlotAndCountsADrop() {
+    ImageStreamFlowControl flowControl = new ImageStreamFlowControl(1, 1);
+
+    assertTrue(flowControl.tryAcquire());
+    flowControl.cancel();
+    assertTrue(flowControl.tryAcquire());
+
+    assertEquals(1L, flowControl.getStatistics().get("droppedFrames"));
+  }
+
+  @Test
+  public void acknowledge_ignoresUnmatchedAcknowledgements() {
+    ImageStreamFlowControl flowControl = new ImageStreamFlowControl(1, 1);
+
+    flowControl.acknowledge();
+
+    assertEquals(0, flowControl.getStatistics().get("framesInFlight"));
+  }
+
+  @Test
+  public void acknowledge_ignoresAcknowledgementsOfAnotherGeneration() {
+    ImageStreamFlowControl flowControl = new ImageStreamFlowControl(1, 2);
+
+    assertTrue(flowControl.tryAcquire());
+    flowControl.onDelivered();
+    flowControl.acknowledge(1);
+    assertFalse(flowControl.tryAcquire());
+    flowControl.acknowledge(2);
+    assertTrue(flowControl.tryAcquire());
+  }
+}
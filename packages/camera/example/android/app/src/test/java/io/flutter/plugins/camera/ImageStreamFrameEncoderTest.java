@@ -0,0 +1,117 @@
+package io.flutter.plugins.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+public class ImageStreamFrameEncoderTest {
+  private static final int WIDTH = 1920;
+  private static final int HEIGHT = 1080;
+  private static final int YUV_420_888 = 35;
+
+  private static ByteBuffer encode(ImageStreamBufferPool pool, FakeImage image) {
+    return ImageStreamFrameEncoder.writeFrame(
+        pool, image.width, image.height, YUV_420_888, image.timestamp, image);
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  @Test
+  public void encode_writesHeaderAndPlanes() {
+    ImageStreamBufferPool pool =
+        new ImageStreamBufferPool(ImageStreamFrameEncoder.estimateFrameSize(WIDTH, HEIGHT), 2);
+    FakeImage image = new FakeImage(WIDTH, HEIGHT, 42L);
+
+    ByteBuffer frame = encode(pool, image);
+
+    assertNotNull(frame);
+    assertTrue(frame.isDirect());
+    assertEquals(ByteOrder.LITTLE_ENDIAN, frame.order());
+    assertEquals(ImageStreamFrameEncoder.VERSION, frame.getInt(0));
+    assertEquals(WIDTH, frame.getInt(4));
+    assertEquals(HEIGHT, frame.getInt(8));
+    assertEquals(YUV_420_888, frame.getInt(12));
+    assertEquals(42L, frame.getLong(16));
+    assertEquals(3, frame.getInt(24));
+    int offset = ImageStreamFrameEncoder.FRAME_HEADER_SIZE;
+    for (FakeImage.Plane plane : image.planes) {
+      assertEquals(plane.rowStride, frame.getInt(offset));
+      assertEquals(plane.pixelStride, frame.getInt(offset + 4));
+      assertEquals(plane.buffer.capacity(), frame.getInt(offset + 8));
+      offset += ImageStreamFrameEncoder.PLANE_HEADER_SIZE;
+      int last = plane.buffer.capacity() - 1;
+      assertEquals(plane.buffer.get(last), frame.get(offset + last));
+      assertEquals(0, plane.buffer.position());
+      offset += plane.buffer.capacity();
+    }
+    assertEquals(offset, frame.position());
+  }
+
+  @Test
+  public void encode_returnsNullWhenThePoolIsExhausted() {
+    ImageStreamBufferPool pool =
+        new ImageStreamBufferPool(ImageStreamFrameEncoder.estimateFrameSize(WIDTH, HEIGHT), 1);
+    FakeImage image = new FakeImage(WIDTH, HEIGHT, 0L);
+
+    assertNotNull(encode(pool, image));
+    assertNull(encode(pool, image));
+  }
+
+  @Test
+  public void pool_recyclesBuffersAndReportsExhaustion() {
+    ImageStreamBufferPool pool = new ImageStreamBufferPool(16, 2);
+
+    ByteBuffer first = pool.acquire(16);
+    ByteBuffer second = pool.acquire(16);
+
+    assertNotNull(first);
+    assertNotNull(second);
+    assertNull(pool.acquire(16));
+    pool.release(first);
+    assertSame(first, pool.acquire(16));
+    assertEquals(2, pool.getAllocatedBuffers());
+  }
+
+  @Test
+  public void pool_replacesBuffersThatAreTooSmall() {
+    ImageStreamBufferPool pool = new ImageStreamBufferPool(16, 1);
+    pool.release(pool.acquire(16));
+
+    ByteBuffer larger = pool.acquire(32);
+
+    assertNotNull(larger);
+    assertTrue(larger.capacity() >= 32);
+    assertEquals(1, pool.getAllocatedBuffers());
+  }
+
+  @Test
+  public void encode_doesNotAllocatePerFrame() {
+    final int frames = 300;
+    ImageStreamBufferPool pool =
+        new ImageStreamBufferPool(ImageStreamFrameEncoder.estimateFrameSize(WIDTH, HEIGHT), 2);
+    FakeImage image = new FakeImage(WIDTH, HEIGHT, 0L);
+    // Warm up so the pool is filled and the JIT has compiled the copy loop.
+    for (int i = 0; i < frames; i++) {
+      pool.release(encode(pool, image));
+    }
+
+    long before = allocatedBytes();
+    for (int i = 0; i < frames; i++) {
+      pool.release(encode(pool, image));
+    }
+    long bytesPerFrame = (allocatedBytes() - before) / frames;
+
+    // A single 1080p frame is about 3MB, so any per-frame copy would dwarf this bound.
+    assertTrue("Allocated " + bytesPerFrame + " bytes per frame", bytesPerFrame < 64);
+  }
+}
@@ -0,0 +1,138 @@
+package io.flutter.plugins.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+public class ImageStreamTransformTest {
+  private static final int WIDTH = 8;
+  private static final int HEIGHT = 4;
+  private static final int ROW_PADDING = 4;
+
+  // Luma samples hold (row << 4 | column), chroma samples hold (row << 4 | column) + 0x80 for U
+  // and the same value + 0x88 for V, so every copied byte tells where it came from.
+  private final ByteBuffer y = ByteBuffer.allocateDirect((WIDTH + ROW_PADDING) * HEIGHT);
+  private final ByteBuffer u = ByteBuffer.allocateDirect((WIDTH + ROW_PADDING) * HEIGHT / 2);
+  private final ByteBuffer v = ByteBuffer.allocateDirect((WIDTH + ROW_PADDING) * HEIGHT / 2);
+
+  public ImageStreamTransformTest() {
+    for (int row = 0; row < HEIGHT; row++) {
+      for (int column = 0; column < WIDTH; column++) {
+        y.put(row * (WIDTH + ROW_PADDING) + column, (byte) (row << 4 | column));
+      }
+    }
+    // Semi-planar chroma with a pixel stride of 2.
+    for (int row = 0; row < HEIGHT / 2; row++) {
+      for (int column = 0; column < WIDTH / 2; column++) {
+        u.put(row * (WIDTH + ROW_PADDING) + column * 2, (byte) (0x80 + (row << 4 | column)));
+        v.put(row * (WIDTH + ROW_PADDING) + column * 2, (byte) (0x88 + (row << 4 | column)));
+      }
+    }
+  }
+
+  private ByteBuffer write(ImageStreamTransform transform) {
+    transform.configure(WIDTH, HEIGHT);
+    ByteBuffer out = ByteBuffer.allocate(transform.frameSize()).order(ByteOrder.LITTLE_ENDIAN);
+    transform.write(out, 7L, y, WIDTH + ROW_PADDING, 1, u, v, WIDTH + ROW_PADDING, 2);
+    assertEquals(out.capacity(), out.position());
+    out.position(ImageStreamFrameEncoder.FRAME_HEADER_SIZE);
+    return out;
+  }
+
+  @Test
+  public void write_yPlaneOnly_cropsAndDownscales() {
+    ByteBuffer out =
+        write(new ImageStreamTransform(2, 0, 4, 4, 2, 2, ImageStreamTransform.PLANES_Y));
+
+    assertEquals(2, out.getInt(4));
+    assertEquals(2, out.getInt(8));
+    assertEquals(ImageStreamTransform.FORMAT_Y8, out.getInt(12));
+    assertEquals(7L, out.getLong(16));
+    assertEquals(1, out.getInt(24));
+    assertEquals(2, out.getInt());
+    assertEquals(1, out.getInt());
+    assertEquals(4, out.getInt());
+    assertEquals(0x02, out.get());
+    assertEquals(0x04, out.get());
+    assertEquals(0x22, out.get());
+    assertEquals(0x24, out.get());
+  }
+
+  @Test
+  public void write_yPlaneOnly_copiesUnscaledRows() {
+    ByteBuffer out =
+        write(new ImageStreamTransform(4, 2, 0, 0, 0, 0, ImageStreamTransform.PLANES_Y));
+
+    assertEquals(4, out.getInt(4));
+    assertEquals(2, out.getInt(8));
+    out.position(out.position() + ImageStreamFrameEncoder.PLANE_HEADER_SIZE);
+    assertEquals(0x24, out.get());
+    assertEquals(0x25, out.get());
+    assertEquals(0x26, out.get());
+    assertEquals(0x27, out.get());
+    assertEquals(0x34, out.get());
+  }
+
+  @Test
+  public void write_nv21_interleavesVAndU() {
+    ByteBuffer out =
+        write(new ImageStreamTransform(0, 0, 0, 0, 4, 2, ImageStreamTransform.PLANES_NV21));
+
+    assertEquals(ImageStreamTransform.FORMAT_NV21, out.getInt(12));
+    assertEquals(4, out.getInt());
+    assertEquals(1, out.getInt());
+    assertEquals(12, out.getInt());
+    out.position(out.position() + 8);
+    assertEquals((byte) 0x88, out.get());
+    assertEquals((byte) 0x80, out.get());
+    assertEquals((byte) 0x8a, out.get());
+    assertEquals((byte) 0x82, out.get());
+  }
+
+  @Test
+  public void write_allPlanes_repacksChromaWithUnitPixelStride() {
+    ByteBuffer out =
+        write(new ImageStreamTransform(0, 0, 0, 0, 0, 0, ImageStreamTransform.PLANES_ALL));
+
+    assertEquals(ImageStreamTransform.FORMAT_YUV_420_888, out.getInt(12));
+    assertEquals(3, out.getInt(24));
+    out.position(out.position() + ImageStreamFrameEncoder.PLANE_HEADER_SIZE + WIDTH * HEIGHT);
+    assertEquals(WIDTH / 2, out.getInt());
+    assertEquals(1, out.getInt());
+    assertEquals(WIDTH * HEIGHT / 4, out.getInt());
+    assertEquals((byte) 0x80, out.get());
+    assertEquals((byte) 0x81, out.get());
+  }
+
+  @Test
+  public void configure_clampsCropToTheFrame() {
+    ImageStreamTransform transform =
+        new ImageStreamTransform(5, 3, 100, 100, 0, 0, ImageStreamTransform.PLANES_Y);
+
+    transform.configure(WIDTH, HEIGHT);
+
+    assertEquals(4, transform.getOutputWidth());
+    assertEquals(2, transform.getOutputHeight());
+  }
+
+  @Test
+  public void writeFrame_writesIntoThePoolUntilItIsExhausted() {
+    ImageStreamTransform transform =
+        new ImageStreamTransform(0, 0, 0, 0, 16, 8, ImageStreamTransform.PLANES_Y);
+    FakeImage image = new FakeImage(32, 16, 7L);
+    ImageStreamBufferPool pool = new ImageStreamBufferPool(64, 1);
+
+    ByteBuffer frame = transform.writeFrame(pool, image.width, image.height, 7L, image);
+
+    assertNotNull(frame);
+    assertEquals(transform.frameSize(), frame.position());
+    assertEquals(16, frame.getInt(4));
+    assertEquals(8, frame.getInt(8));
+    assertEquals(7L, frame.getLong(16));
+    assertNull(transform.writeFrame(pool, image.width, image.height, 7L, image));
+  }
+}
@@ -0,0 +1,90 @@
+package io.flutter.plugins.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class PictureBurstTest {
+  private long now;
+  private final List<PictureBurst.Shot> completedShots = new ArrayList<>();
+  private List<PictureBurst.Shot> burstShots;
+
+  private final PictureBurst.Clock clock =
+      new PictureBurst.Clock() {
+        @Override
+        public long nanoTime() {
+          return now;
+        }
+      };
+
+  private final PictureBurst.Listener listener =
+      new PictureBurst.Listener() {
+        @Override
+        public void onShotCompleted(PictureBurst.Shot shot) {
+          completedShots.add(shot);
+        }
+
+        @Override
+        public void onBurstCompleted(List<PictureBurst.Shot> shots) {
+          burstShots = shots;
+        }
+      };
+
+  @Test
+  public void completesAfterTheLastShot() {
+    PictureBurst burst =
+        new PictureBurst(Arrays.asList(new File("a.jpg"), new File("b.jpg")), clock, listener);
+    PictureBurst.Shot first = burst.getShots().get(0);
+    PictureBurst.Shot second = burst.getShots().get(1);
+
+    second.onFailed("captureFailure", "An error happened in the framework");
+    assertNull(burstShots);
+    first.onSaved();
+
+    assertEquals(Arrays.asList(second, first), completedShots);
+    assertEquals(Arrays.asList(first, second), burstShots);
+  }
+
+  @Test
+  public void shot_reportsLatencies() {
+    PictureBurst burst = new PictureBurst(Arrays.asList(new File("a.jpg")), clock, listener);
+    PictureBurst.Shot shot = burst.getShots().get(0);
+
+    now = 1000000L;
+    shot.onRequested();
+    now = 31000000L;
+    shot.onImageAvailable();
+    now = 46000000L;
+    shot.onSaved();
+
+    Map<String, Object> map = shot.toMap();
+    assertTrue(shot.isSaved());
+    assertEquals(0, map.get("index"));
+    assertEquals("a.jpg", map.get("path"));
+    assertEquals(30000L, map.get("captureMicros"));
+    assertEquals(15000L, map.get("writeMicros"));
+    assertEquals(45000L, map.get("captureToDiskMicros"));
+  }
+
+  @Test
+  public void shot_reportsErrors() {
+    PictureBurst burst = new PictureBurst(Arrays.asList(new File("a.jpg")), clock, listener);
+    PictureBurst.Shot shot = burst.getShots().get(0);
+
+    shot.onFailed("IOError", "Failed saving image");
+
+    Map<String, Object> map = shot.toMap();
+    assertFalse(shot.isSaved());
+    assertEquals("IOError", map.get("errorCode"));
+    assertEquals("Failed saving image", map.get("errorDescription"));
+    assertFalse(map.containsKey("captureToDiskMicros"));
+  }
+}
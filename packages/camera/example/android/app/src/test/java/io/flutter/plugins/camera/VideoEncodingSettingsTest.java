@@ -0,0 +1,79 @@
+package io.flutter.plugins.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class VideoEncodingSettingsTest {
+  private static VideoEncodingSettings profile1080p(int width, int height) {
+    return VideoEncodingSettings.fromProfile(
+        width, height, 1920, 1080, 17000000, 30, 96000, 48000, 2);
+  }
+
+  @Test
+  public void fromProfile_scalesBitRateWithPixelCount() {
+    VideoEncodingSettings full = profile1080p(1920, 1080);
+    VideoEncodingSettings quarter = profile1080p(960, 540);
+
+    assertEquals(17000000, full.videoBitRate);
+    assertEquals(17000000 / 4, quarter.videoBitRate);
+    assertEquals(30, quarter.frameRate);
+    assertEquals(VideoEncodingSettings.CODEC_H264, quarter.codec);
+    assertEquals(48000, quarter.audioSampleRate);
+  }
+
+  @Test
+  public void withOptions_overridesOnlyGivenValues() {
+    Map<String, Object> options = new HashMap<>();
+    options.put("codec", "hevc");
+    options.put("frameRate", 60);
+    options.put("keyFrameInterval", 2);
+
+    VideoEncodingSettings settings = profile1080p(1920, 1080).withOptions(options);
+
+    assertEquals(VideoEncodingSettings.CODEC_HEVC, settings.codec);
+    assertEquals(VideoEncodingSettings.MIME_HEVC, settings.getVideoMimeType());
+    assertEquals(60, settings.frameRate);
+    assertEquals(2, settings.keyFrameInterval);
+    assertEquals(17000000, settings.videoBitRate);
+  }
+
+  @Test
+  public void withOptions_nullKeepsDefaults() {
+    VideoEncodingSettings defaults = profile1080p(1280, 720);
+
+    assertSame(defaults, defaults.withOptions(null));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void withOptions_rejectsUnknownCodec() {
+    Map<String, Object> options = new HashMap<>();
+    options.put("codec", "vp9");
+
+    profile1080p(1920, 1080).withOptions(options);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void withOptions_rejectsNonPositiveBitRate() {
+    Map<String, Object> options = new HashMap<>();
+    options.put("videoBitRate", 0);
+
+    profile1080p(1920, 1080).withOptions(options);
+  }
+
+  @Test
+  public void clamp_limitsToEncoderRanges() {
+    Map<String, Object> options = new HashMap<>();
+    options.put("videoBitRate", 100000000);
+    options.put("frameRate", 120);
+
+    VideoEncodingSettings settings =
+        profile1080p(1920, 1080).withOptions(options).clamp(64000, 40000000, 60);
+
+    assertEquals(40000000, settings.videoBitRate);
+    assertEquals(60, settings.frameRate);
+  }
+}
@@ -5,6 +5,7 @@
 import 'dart:async';
 import 'dart:typed_data';
 
+import 'package:flutter/foundation.dart';
 import 'package:flutter/services.dart';
 import 'package:flutter/widgets.dart';
 
@@ -12,10 +13,86 @@ part 'camera_image.dart';
 
 final MethodChannel _channel = const MethodChannel('plugins.flutter.io/camera');
 
+const BasicMessageChannel<ByteData> _imageStreamFrameChannel =
+    BasicMessageChannel<ByteData>(
+        'plugins.flutter.io/camera/imageStreamFrames', BinaryCodec());
+
 enum CameraLensDirection { front, back, external }
 
 enum ResolutionPreset { low, medium, high }
 
+/// Which planes of a YUV frame are sent by an image stream.
+enum ImageStreamPlanes {
+  /// Separate Y, U and V planes.
+  all,
+
+  /// The Y (luminance) plane only, for grayscale processing.
+  y,
+
+  /// A single NV21 plane: Y followed by interleaved V and U samples.
+  nv21,
+}
+
+String _serializeImageStreamPlanes(ImageStreamPlanes planes) {
+  switch (planes) {
+    case ImageStreamPlanes.all:
+      return 'all';
+    case ImageStreamPlanes.y:
+      return 'y';
+    case ImageStreamPlanes.nv21:
+      return 'nv21';
+  }
+  throw ArgumentError('Unknown ImageStreamPlanes value');
+}
+
+/// The video codec used by [CameraController.startVideoRecording].
+enum VideoCodec {
+  /// H.264 / AVC, supported by every device.
+  h264,
+
+  /// H.265 / HEVC, smaller files on devices with a hardware encoder.
+  hevc,
+}
+
+String _serializeVideoCodec(VideoCodec codec) {
+  switch (codec) {
+    case VideoCodec.h264:
+      return 'h264';
+    case VideoCodec.hevc:
+      return 'hevc';
+  }
+  throw ArgumentError('Unknown VideoCodec value');
+}
+
+/// The mode of a camera, as reported by [CameraModeSwitch.mode].
+enum CameraMode {
+  /// Only the preview is running.
+  preview,
+
+  /// The preview and the image stream are running.
+  imageStream,
+
+  /// The preview and a video recording are running.
+  recording,
+
+  /// The preview, the image stream and a video recording are running.
+  recordingWithImageStream,
+}
+
+CameraMode _parseCameraMode(String string) {
+  switch (string) {
+    case 'preview':
+      return CameraMode.preview;
+    case 'imageStream':
+      return CameraMode.imageStream;
+    case 'recording':
+      return CameraMode.recording;
+    case 'recordingWithImageStream':
+      return CameraMode.recordingWithImageStream;
+  }
+  throw ArgumentError('Unknown CameraMode value');
+}
+
 typedef onLatestImageAvailable = Function(CameraImage image);
 
 /// Returns the resolution preset as a String.
@@ -113,6 +190,88 @@ class CameraPreview extends StatelessWidget {
   }
 }
 
+/// Frame counters of the image stream, see [CameraController.startImageStream].
+class ImageStreamStatistics {
+  ImageStreamStatistics._fromPlatformData(Map<dynamic, dynamic> data)
+      : maxFramesInFlight = data['maxFramesInFlight'],
+        framesInFlight = data['framesInFlight'],
+        deliveredFrames = data['deliveredFrames'],
+        droppedFrames = data['droppedFrames'];
+
+  /// The in-flight window the stream was started with, 0 when unlimited.
+  final int maxFramesInFlight;
+
+  /// Frames sent to Dart that have not been acknowledged yet.
+  final int framesInFlight;
+
+  /// Frames sent to Dart since the stream was started.
+  final int deliveredFrames;
+
+  /// Frames discarded on the platform side because the window was full.
+  final int droppedFrames;
+
+  @override
+  String toString() {
+    return '$runtimeType('
+        'maxFramesInFlight: $maxFramesInFlight, '
+        'framesInFlight: $framesInFlight, '
+        'deliveredFrames: $deliveredFrames, '
+        'droppedFrames: $droppedFrames)';
+  }
+}
+
+/// The outcome of one shot of [CameraController.takePictureBurst].
+class CapturedPicture {
+  CapturedPicture._fromPlatformData(Map<dynamic, dynamic> data)
+      : index = data['index'],
+        path = data['path'],
+        errorCode = data['errorCode'],
+        errorDescription = data['errorDescription'],
+        captureDuration = _microseconds(data['captureMicros']),
+        writeDuration = _microseconds(data['writeMicros']),
+        captureToDiskDuration = _microseconds(data['captureToDiskMicros']);
+
+  static Duration _microseconds(int microseconds) =>
+      microseconds == null ? null : Duration(microseconds: microseconds);
+
+  /// Position of the shot in the list of paths of the burst.
+  final int index;
+
+  /// Path the picture was saved to.
+  final String path;
+
+  /// Error code if the shot failed, `null` otherwise.
+  final String errorCode;
+
+  final String errorDescription;
+
+  /// Time from the capture request until the JPEG was available.
+  ///
+  /// `null` if the shot failed.
+  final Duration captureDuration;
+
+  /// Time it took to write the JPEG to [path].
+  ///
+  /// `null` if the shot failed.
+  final Duration writeDuration;
+
+  /// Time from the capture request until the file was written.
+  ///
+  /// `null` if the shot failed.
+  final Duration captureToDiskDuration;
+
+  bool get hasError => errorCode != null;
+
+  @override
+  String toString() {
+    return '$runtimeType('
+        'index: $index, '
+        'path: $path, '
+        'errorCode: $errorCode, '
+        'captureToDiskDuration: $captureToDiskDuration)';
+  }
+}
+
 /// The state of a [CameraController].
 class CameraValue {
   const CameraValue({
@@ -187,6 +346,144 @@ class CameraValue {
   }
 }
 
+/// A switch between preview, image streaming and video recording.
+///
+/// Reported by [CameraController.modeSwitches] on Android.
+class CameraModeSwitch {
+  CameraModeSwitch._fromPlatformData(Map<dynamic, dynamic> data)
+      : mode = _parseCameraMode(data['mode']),
+        sessionReused = data['sessionReused'],
+        latency = Duration(microseconds: data['latencyMicros']);
+
+  /// The mode switched to.
+  final CameraMode mode;
+
+  /// Whether the switch kept the existing capture session.
+  ///
+  /// When `false` the session was rebuilt, which briefly interrupts the
+  /// preview.
+  final bool sessionReused;
+
+  /// Time from the switch request until the first frame of the new mode.
+  final Duration latency;
+
+  @override
+  String toString() {
+    return '$runtimeType('
+        'mode: $mode, '
+        'sessionReused: $sessionReused, '
+        'latency: $latency)';
+  }
+}
+
+/// The platform side cost of one image stream frame.
+///
+/// Reported by [CameraController.frameTimings] on Android when the stream was
+/// started with `reportFrameTimings`.
+class ImageStreamFrameTiming {
+  ImageStreamFrameTiming._fromPlatformData(Map<dynamic, dynamic> data)
+      : sensorTimestamp = data['sensorTimestamp'],
+        copyDuration = Duration(microseconds: data['copyMicros']),
+        sendDuration = Duration(microseconds: data['sendMicros']);
+
+  /// Sensor timestamp of the frame in nanoseconds, as in `Image.getTimestamp`.
+  final int sensorTimestamp;
+
+  /// Time spent copying the frame out of the camera buffer.
+  final Duration copyDuration;
+
+  /// Time spent handing the frame to the engine on the platform thread.
+  final Duration sendDuration;
+
+  @override
+  String toString() {
+    return '$runtimeType('
+        'sensorTimestamp: $sensorTimestamp, '
+        'copyDuration: $copyDuration, '
+        'sendDuration: $sendDuration)';
+  }
+}
+
+/// Encoder settings for [CameraController.startVideoRecording].
+///
+/// Values left `null` use defaults derived from the device's recording
+/// profile for the resolution preset. Only supported on Android.
+class VideoEncodingOptions {
+  const VideoEncodingOptions({
+    this.codec,
+    this.videoBitRate,
+    this.frameRate,
+    this.keyFrameInterval,
+    this.audioBitRate,
+  });
+
+  /// The video codec, [VideoCodec.h264] by default.
+  final VideoCodec codec;
+
+  /// Target video bitrate in bits per second.
+  final int videoBitRate;
+
+  /// Target frame rate in frames per second.
+  final int frameRate;
+
+  /// Seconds between key frames.
+  ///
+  /// Only applied by recorders that configure the encoder directly.
+  final int keyFrameInterval;
+
+  /// Target audio bitrate in bits per second.
+  final int audioBitRate;
+
+  Map<String, dynamic> _toPlatformData() {
+    return <String, dynamic>{
+      'codec': codec == null ? null : _serializeVideoCodec(codec),
+      'videoBitRate': videoBitRate,
+      'frameRate': frameRate,
+      'keyFrameInterval': keyFrameInterval,
+      'audioBitRate': audioBitRate,
+    };
+  }
+}
+
+/// The encoder settings a recording was started with.
+class VideoEncoding {
+  VideoEncoding._fromPlatformData(Map<dynamic, dynamic> data)
+      : codec = data['codec'] == 'hevc' ? VideoCodec.hevc : VideoCodec.h264,
+        size = Size(data['width'].toDouble(), data['height'].toDouble()),
+        videoBitRate = data['videoBitRate'],
+        frameRate = data['frameRate'],
+        keyFrameInterval = data['keyFrameInterval'],
+        audioBitRate = data['audioBitRate'],
+        audioSampleRate = data['audioSampleRate'];
+
+  final VideoCodec codec;
+
+  /// Size of the recorded video in pixels.
+  final Size size;
+
+  final int videoBitRate;
+
+  final int frameRate;
+
+  final int keyFrameInterval;
+
+  final int audioBitRate;
+
+  final int audioSampleRate;
+
+  @override
+  String toString() {
+    return '$runtimeType('
+        'codec: $codec, '
+        'size: $size, '
+        'videoBitRate: $videoBitRate, '
+        'frameRate: $frameRate, '
+        'keyFrameInterval: $keyFrameInterval, '
+        'audioBitRate: $audioBitRate, '
+        'audioSampleRate: $audioSampleRate)';
+  }
+}
+
 /// Controls a device camera.
 ///
 /// Use [availableCameras] to get a list of available cameras.
@@ -206,6 +503,24 @@ class CameraController extends ValueNotifier<CameraValue> {
   StreamSubscription<dynamic> _eventSubscription;
   StreamSubscription<dynamic> _imageStreamSubscription;
   Completer<void> _creatingCompleter;
+  ValueChanged<CapturedPicture> _onPictureSaved;
+  final StreamController<CameraModeSwitch> _modeSwitchController =
+      StreamController<CameraModeSwitch>.broadcast();
+
+  /// Reports each switch between preview, image streaming and recording.
+  ///
+  /// Only supported on Android.
+  Stream<CameraModeSwitch> get modeSwitches => _modeSwitchController.stream;
+
+  final StreamController<ImageStreamFrameTiming> _frameTimingController =
+      StreamController<ImageStreamFrameTiming>.broadcast();
+
+  /// Reports per-frame costs of an image stream started with
+  /// `reportFrameTimings`.
+  ///
+  /// Only supported on Android.
+  Stream<ImageStreamFrameTiming> get frameTimings =>
+      _frameTimingController.stream;
 
   /// Initializes the camera on the device.
   ///
@@ -261,6 +576,18 @@ class CameraController extends ValueNotifier<CameraValue> {
       case 'cameraClosing':
         value = value.copyWith(isRecordingVideo: false);
         break;
+      case 'pictureSaved':
+        if (_onPictureSaved != null) {
+          _onPictureSaved(CapturedPicture._fromPlatformData(map));
+        }
+        break;
+      case 'modeSwitched':
+        _modeSwitchController.add(CameraModeSwitch._fromPlatformData(map));
+        break;
+      case 'frameTiming':
+        _frameTimingController
+            .add(ImageStreamFrameTiming._fromPlatformData(map));
+        break;
     }
   }
 
@@ -302,6 +629,60 @@ class CameraController extends ValueNotifier<CameraValue> {
     }
   }
 
+  /// Captures one picture per entry of [paths] in a single burst.
+  ///
+  /// Captures are queued on the platform side and the JPEGs are written in the
+  /// background, so the burst does not pay a platform channel round-trip per
+  /// shot. [onPictureSaved] is called as soon as each shot is written or has
+  /// failed, and the returned list holds every shot in the order of [paths].
+  ///
+  /// If a file already exists at one of the paths, no picture is taken and an
+  /// error is thrown.
+  ///
+  /// Only supported on Android.
+  ///
+  /// Throws a [CameraException] if the burst cannot be started.
+  Future<List<CapturedPicture>> takePictureBurst(List<String> paths,
+      {ValueChanged<CapturedPicture> onPictureSaved}) async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController.',
+        'takePictureBurst was called on uninitialized CameraController',
+      );
+    }
+    if (value.isTakingPicture) {
+      throw CameraException(
+        'Previous capture has not returned yet.',
+        'takePictureBurst was called before the previous capture returned.',
+      );
+    }
+    if (paths.isEmpty) {
+      throw CameraException(
+        'No paths were given.',
+        'takePictureBurst was called with an empty list of paths.',
+      );
+    }
+    try {
+      value = value.copyWith(isTakingPicture: true);
+      _onPictureSaved = onPictureSaved;
+      // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+      // https://github.com/flutter/flutter/issues/26431
+      // ignore: strong_mode_implicit_dynamic_method
+      final List<dynamic> shots = await _channel.invokeMethod(
+        'takePictureBurst',
+        <String, dynamic>{'textureId': _textureId, 'paths': paths},
+      );
+      return shots
+          .map((dynamic shot) => CapturedPicture._fromPlatformData(shot))
+          .toList();
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    } finally {
+      _onPictureSaved = null;
+      value = value.copyWith(isTakingPicture: false);
+    }
+  }
+
   /// Start streaming images from platform camera.
   ///
   /// Settings for capturing images on iOS and Android is set to always use the
@@ -312,10 +693,38 @@ class CameraController extends ValueNotifier<CameraValue> {
   /// have significant frame rate drops for [CameraPreview] on lower end
   /// devices.
   ///
+  /// When [binaryTransport] is true, Android copies each frame into a recycled
+  /// native buffer and sends it with a compact binary header instead of a map
+  /// per plane, which avoids per-frame garbage on the platform side. The
+  /// option is ignored on iOS.
+  ///
+  /// When [maxFramesInFlight] is set, Android sends at most that many frames
+  /// that [onAvailable] has not finished processing yet and drops the others
+  /// before copying them. A frame is finished when [onAvailable] returns, or
+  /// when the [Future] it returns completes, even if it completes with an
+  /// error. Use [getImageStreamStatistics] to see how many frames were
+  /// delivered and dropped. The option is ignored on iOS.
+  ///
+  /// On Android, frames can be cropped to [crop], downscaled to [targetSize]
+  /// and reduced to the [planes] that are needed before they are sent, which
+  /// happens on a background thread and implies [binaryTransport]. [crop] is
+  /// in pixels of [CameraValue.previewSize], frames are never upscaled, and
+  /// [planes] defaults to [ImageStreamPlanes.all]. These options are ignored on
+  /// iOS.
+  ///
+  /// When [reportFrameTimings] is true, Android reports the cost of every
+  /// delivered frame on [frameTimings].
+  ///
   /// Throws a [CameraException] if image streaming or video recording has
   /// already started.
   // TODO(bmparr): Add settings for resolution and fps.
-  Future<void> startImageStream(onLatestImageAvailable onAvailable) async {
+  Future<void> startImageStream(onLatestImageAvailable onAvailable,
+      {bool binaryTransport = false,
+      int maxFramesInFlight,
+      Size targetSize,
+      Rect crop,
+      ImageStreamPlanes planes,
+      bool reportFrameTimings = false}) async {
     if (!value.isInitialized || _isDisposed) {
       throw CameraException(
         'Uninitialized CameraController',
@@ -335,25 +744,111 @@ class CameraController extends ValueNotifier<CameraValue> {
       );
     }
 
+    final bool transform = targetSize != null || crop != null || planes != null;
+    if (transform) {
+      binaryTransport = true;
+    }
+    final Map<String, dynamic> arguments = <String, dynamic>{
+      'binaryTransport': binaryTransport,
+      'maxFramesInFlight': maxFramesInFlight,
+      'reportFrameTimings': reportFrameTimings,
+    };
+    if (transform) {
+      arguments['planes'] =
+          _serializeImageStreamPlanes(planes ?? ImageStreamPlanes.all);
+      arguments['targetWidth'] = targetSize?.width?.round();
+      arguments['targetHeight'] = targetSize?.height?.round();
+      arguments['cropLeft'] = crop?.left?.round();
+      arguments['cropTop'] = crop?.top?.round();
+      arguments['cropWidth'] = crop?.width?.round();
+      arguments['cropHeight'] = crop?.height?.round();
+    }
+
+    // Identifies the acknowledgements of this stream's frames, so that late
+    // ones don't count for the next stream.
+    dynamic generation;
     try {
       // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
       // https://github.com/flutter/flutter/issues/26431
       // ignore: strong_mode_implicit_dynamic_method
-      await _channel.invokeMethod('startImageStream');
+      generation = await _channel.invokeMethod('startImageStream', arguments);
       value = value.copyWith(isStreamingImages: true);
     } on PlatformException catch (e) {
       throw CameraException(e.code, e.message);
     }
+    if (binaryTransport) {
+      _imageStreamFrameChannel.setMessageHandler((ByteData frame) async {
+        // Replying to the message acknowledges the frame.
+        final dynamic pending = onAvailable(CameraImage._fromBinaryData(frame));
+        if (pending is Future) {
+          await pending;
+        }
+        return null;
+      });
+    }
     const EventChannel cameraEventChannel =
         EventChannel('plugins.flutter.io/camera/imageStream');
     _imageStreamSubscription =
         cameraEventChannel.receiveBroadcastStream().listen(
       (dynamic imageData) {
-        onAvailable(CameraImage._fromPlatformData(imageData));
+        final dynamic pending =
+            onAvailable(CameraImage._fromPlatformData(imageData));
+        if (maxFramesInFlight != null &&
+            defaultTargetPlatform == TargetPlatform.android) {
+          _acknowledgeImageStreamFrame(pending, generation);
+        }
       },
     );
   }
 
+  Future<void> _acknowledgeImageStreamFrame(
+      dynamic pending, dynamic generation) async {
+    try {
+      if (pending is Future) {
+        await pending;
+      }
+    } finally {
+      // A frame that failed still has to leave the window, otherwise the
+      // stream stops once maxFramesInFlight frames have failed.
+      try {
+        // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+        // https://github.com/flutter/flutter/issues/26431
+        // ignore: strong_mode_implicit_dynamic_method
+        await _channel.invokeMethod(
+          'acknowledgeImageStreamFrame',
+          <String, dynamic>{'generation': generation},
+        );
+      } catch (_) {
+        // The stream was stopped or the camera disposed before the frame was
+        // processed; there is nothing left to acknowledge.
+      }
+    }
+  }
+
+  /// Returns the frame counters of the current image stream.
+  ///
+  /// Only supported on Android.
+  ///
+  /// Throws a [CameraException] if image streaming was not started.
+  Future<ImageStreamStatistics> getImageStreamStatistics() async {
+    if (!value.isStreamingImages) {
+      throw CameraException(
+        'No camera is streaming images',
+        'getImageStreamStatistics was called when no camera is streaming images.',
+      );
+    }
+    try {
+      // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+      // https://github.com/flutter/flutter/issues/26431
+      // ignore: strong_mode_implicit_dynamic_method
+      final Map<dynamic, dynamic> statistics =
+          await _channel.invokeMethod('getImageStreamStatistics');
+      return ImageStreamStatistics._fromPlatformData(statistics);
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
+
   /// Stop streaming images from platform camera.
   ///
   /// Throws a [CameraException] if image streaming was not started or video
@@ -388,6 +883,7 @@ class CameraController extends ValueNotifier<CameraValue> {
       throw CameraException(e.code, e.message);
     }
 
+    _imageStreamFrameChannel.setMessageHandler(null);
     _imageStreamSubscription.cancel();
     _imageStreamSubscription = null;
   }
@@ -401,8 +897,20 @@ class CameraController extends ValueNotifier<CameraValue> {
   /// If a file already exists at the provided path an error will be thrown.
   /// The file can be read as soon as [stopVideoRecording] returns.
   ///
-  /// Throws a [CameraException] if the capture fails.
-  Future<void> startVideoRecording(String filePath) async {
+  /// On Android, [encoding] overrides the encoder settings, which otherwise
+  /// follow the device's recording profile for the resolution preset. The
+  /// returned [VideoEncoding] describes the settings in use after they were
+  /// clamped to the encoder's capabilities. It is `null` on iOS.
+  ///
+  /// On Android a recording can be started while images are streamed. The
+  /// stream then keeps running during the recording, which is encoded with
+  /// MediaCodec in the same capture session, and [stopImageStream] can only
+  /// be called once the recording is stopped.
+  ///
+  /// Throws a [CameraException] if the capture fails. The code is
+  /// `videoCodecUnsupported` if the device cannot encode the requested codec.
+  Future<VideoEncoding> startVideoRecording(String filePath,
+      {VideoEncodingOptions encoding}) async {
     if (!value.isInitialized || _isDisposed) {
       throw CameraException(
         'Uninitialized CameraController',
@@ -415,7 +923,8 @@ class CameraController extends ValueNotifier<CameraValue> {
         'startVideoRecording was called when a recording is already started.',
       );
     }
-    if (value.isStreamingImages) {
+    if (value.isStreamingImages &&
+        defaultTargetPlatform != TargetPlatform.android) {
       throw CameraException(
         'A camera has started streaming images.',
         'startVideoRecording was called while a camera was streaming images.',
@@ -426,11 +935,16 @@ class CameraController extends ValueNotifier<CameraValue> {
       // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
       // https://github.com/flutter/flutter/issues/26431
       // ignore: strong_mode_implicit_dynamic_method
-      await _channel.invokeMethod(
+      final Map<dynamic, dynamic> reply = await _channel.invokeMethod(
         'startVideoRecording',
-        <String, dynamic>{'textureId': _textureId, 'filePath': filePath},
+        <String, dynamic>{
+          'textureId': _textureId,
+          'filePath': filePath,
+          'encoding': encoding?._toPlatformData(),
+        },
       );
       value = value.copyWith(isRecordingVideo: true);
+      return reply == null ? null : VideoEncoding._fromPlatformData(reply);
     } on PlatformException catch (e) {
       throw CameraException(e.code, e.message);
     }
@@ -472,6 +986,8 @@ class CameraController extends ValueNotifier<CameraValue> {
     }
     _isDisposed = true;
     super.dispose();
+    _modeSwitchController.close();
+    _frameTimingController.close();
     if (_creatingCompleter != null) {
       await _creatingCompleter.future;
       // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
@@ -16,6 +16,10 @@ class Plane {
         height = data['height'],
         width = data['width'];
 
+  Plane._fromBinaryData(this.bytes, this.bytesPerRow, this.bytesPerPixel)
+      : height = null,
+        width = null;
+
   /// Bytes representing this plane.
   final Uint8List bytes;
 
@@ -55,6 +59,18 @@ enum ImageFormatGroup {
   /// On iOS, this is `kCVPixelFormatType_420YpCbCr8BiPlanarVideoRange`. See
   /// https://developer.apple.com/documentation/corevideo/1563591-pixel_format_identifiers/kcvpixelformattype_420ypcbcr8biplanarvideorange?language=objc
   yuv420,
+
+  /// Single plane 8 bit luminance format.
+  ///
+  /// On Android, this is `android.graphics.ImageFormat.Y8`, sent when an image
+  /// stream is restricted to [ImageStreamPlanes.y].
+  y8,
+
+  /// Single plane YUV 420 format with interleaved V and U samples.
+  ///
+  /// On Android, this is `android.graphics.ImageFormat.NV21`, sent when an
+  /// image stream is restricted to [ImageStreamPlanes.nv21].
+  nv21,
 }
 
 /// Describes how pixels are represented in an image.
@@ -77,6 +93,10 @@ class ImageFormat {
 ImageFormatGroup _asImageFormatGroup(dynamic rawFormat) {
   if (rawFormat == 35 || rawFormat == 875704438) {
     return ImageFormatGroup.yuv420;
+  } else if (rawFormat == 0x20203859) {
+    return ImageFormatGroup.y8;
+  } else if (rawFormat == 17) {
+    return ImageFormatGroup.nv21;
   } else {
     return ImageFormatGroup.unknown;
   }
@@ -99,6 +119,35 @@ class CameraImage {
         planes = List<Plane>.unmodifiable(data['planes']
             .map((dynamic planeData) => Plane._fromPlatformData(planeData)));
 
+  CameraImage._(this.format, this.width, this.height, this.planes);
+
+  /// Decodes a frame written by the Android `ImageStreamFrameEncoder`.
+  ///
+  /// The plane bytes are views into [data] and are not copied.
+  factory CameraImage._fromBinaryData(ByteData data) {
+    const int frameHeaderSize = 4 * 4 + 8 + 4;
+    final int width = data.getInt32(4, Endian.little);
+    final int height = data.getInt32(8, Endian.little);
+    final int format = data.getInt32(12, Endian.little);
+    final int planeCount = data.getInt32(24, Endian.little);
+    final List<Plane> planes = <Plane>[];
+    int offset = frameHeaderSize;
+    for (int i = 0; i < planeCount; i++) {
+      final int bytesPerRow = data.getInt32(offset, Endian.little);
+      final int bytesPerPixel = data.getInt32(offset + 4, Endian.little);
+      final int length = data.getInt32(offset + 8, Endian.little);
+      offset += 12;
+      planes.add(Plane._fromBinaryData(
+        data.buffer.asUint8List(data.offsetInBytes + offset, length),
+        bytesPerRow,
+        bytesPerPixel,
+      ));
+      offset += length;
+    }
+    return CameraImage._(ImageFormat._fromPlatformData(format), width, height,
+        List<Plane>.unmodifiable(planes));
+  }
+
   /// Format of the image provided.
   ///
   /// Determines the number of planes needed to represent the image, and
@@ -4,10 +4,13 @@
 
 package io.flutter.plugins.firebase.cloudfirestore;
 
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.SparseArray;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
@@ -30,12 +33,16 @@ import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QuerySnapshot;
 import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Source;
 import com.google.firebase.firestore.Transaction;
 import com.google.firebase.firestore.WriteBatch;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
+import io.flutter.plugin.common.MethodCodec;
 import io.flutter.plugin.common.PluginRegistry;
 import io.flutter.plugin.common.StandardMessageCodec;
 import io.flutter.plugin.common.StandardMethodCodec;
@@ -43,16 +50,46 @@ import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CloudFirestorePlugin implements MethodCallHandler {
 
   public static final String TAG = "CloudFirestorePlugin";
+  private static final String CHANNEL_NAME = "plugins.flutter.io/cloud_firestore";
+  private static final MethodCodec METHOD_CODEC =
+      new StandardMethodCodec(FirestoreMessageCodec.INSTANCE);
+  // Snapshots waiting to be encoded per listener. A listener that falls further behind skips to
+  // its newest snapshots, and incremental listeners resync over the gap.
+  private static final int MAX_WAITING_SNAPSHOTS = 4;
+  private static final int TRANSACTION_THREADS = 4;
+
+  private final BinaryMessenger messenger;
   private final MethodChannel channel;
+  private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+  // Whether snapshots are sent with FirestoreMessageCodec's compact encoding.
+  private volatile boolean compactEncoding;
+  // Converts and encodes snapshots off the platform thread, in order for each listener handle.
+  private final OrderedExecutor serializationExecutor =
+      new OrderedExecutor(
+          "FirestoreSerialization",
+          Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1)),
+          MAX_WAITING_SNAPSHOTS);
+  // Runs the operations of transactions, in order for each transaction id. Every operation must
+  // run, so none is dropped.
+  private final OrderedExecutor transactionExecutor =
+      new OrderedExecutor("FirestoreTransactions", TRANSACTION_THREADS);
+  private final TransactionMetrics transactionMetrics = new TransactionMetrics();
 
   // Handles are ints used as indexes into the sparse array of active observers
   private int nextListenerHandle = 0;
@@ -60,23 +97,97 @@ public class CloudFirestorePlugin implements MethodCallHandler {
   private final SparseArray<EventObserver> observers = new SparseArray<>();
   private final SparseArray<DocumentObserver> documentObservers = new SparseArray<>();
   private final SparseArray<ListenerRegistration> listenerRegistrations = new SparseArray<>();
+  private final SparseArray<DocumentChunkStream> documentChunkStreams = new SparseArray<>();
+  // Snapshot listeners shared by the handles listening to the same query, by canonical query key.
+  private final Map<String, SharedQueryListener> sharedQueryListeners = new HashMap<>();
   private final SparseArray<WriteBatch> batches = new SparseArray<>();
+  private final SparseArray<BulkWrite> bulkWrites = new SparseArray<>();
   private final SparseArray<Transaction> transactions = new SparseArray<>();
-  private final SparseArray<TaskCompletionSource> completionTasks = new SparseArray<>();
 
   public static void registerWith(PluginRegistry.Registrar registrar) {
     final MethodChannel channel =
-        new MethodChannel(
-            registrar.messenger(),
-            "plugins.flutter.io/cloud_firestore",
-            new StandardMethodCodec(FirestoreMessageCodec.INSTANCE));
-    channel.setMethodCallHandler(new CloudFirestorePlugin(channel));
+        new MethodChannel(registrar.messenger(), CHANNEL_NAME, METHOD_CODEC);
+    channel.setMethodCallHandler(new CloudFirestorePlugin(registrar.messenger(), channel));
   }
 
-  private CloudFirestorePlugin(MethodChannel channel) {
+  private CloudFirestorePlugin(BinaryMessenger messenger, MethodChannel channel) {
+    this.messenger = messenger;
     this.channel = channel;
   }
 
+  /** Builds the arguments of a snapshot event. */
+  private interface SnapshotArguments {
+    Map<String, Object> build();
+  }
+
+  /**
+   * Builds and encodes a snapshot event on the serialization executor and sends it from the
+   * platform thread.
+   *
+   * <p>Events of a listener are sent in the order they were submitted. Events that are ready after
+   * the listener was removed are dropped.
+   */
+  private void sendSnapshot(int handle, String method, SnapshotArguments snapshotArguments) {
+    sendSnapshot(handle, Collections.singletonList(handle), method, snapshotArguments);
+  }
+
+  /**
+   * Builds and encodes a snapshot event once for all of {@code handles}, in order with the other
+   * events submitted with the same serialization {@code key}.
+   *
+   * <p>An event for several handles lists them under "handles" instead of "handle". It is sent as
+   * long as one of them is still registered.
+   */
+  private void sendSnapshot(
+      int key,
+      final List<Integer> handles,
+      final String method,
+      final SnapshotArguments snapshotArguments) {
+    serializationExecutor.execute(
+        key,
+        new Runnable() {
+          @Override
+          public void run() {
+            Map<String, Object> arguments = snapshotArguments.build();
+            if (handles.size() == 1) {
+              arguments.put("handle", handles.get(0));
+            } else {
+              arguments.put("handles", handles);
+            }
+            final ByteBuffer message =
+                METHOD_CODEC.encodeMethodCall(new MethodCall(method, encodable(arguments)));
+            mainThreadHandler.post(
+                new Runnable() {
+                  @Override
+                  public void run() {
+                    for (int handle : handles) {
+                      if (listenerRegistrations.get(handle) != null) {
+                        messenger.send(CHANNEL_NAME, message);
+                        return;
+                      }
+                    }
+                  }
+                });
+          }
+        });
+  }
+
+  /** Wraps a snapshot value for the compact encoding if it is enabled. */
+  private Object encodable(Object value) {
+    return compactEncoding ? new FirestoreMessageCodec.CompactValue(value) : value;
+  }
+
+  /** Replies from the platform thread with a value built on the serialization executor. */
+  private void postSuccess(final Result result, final Object value) {
+    mainThreadHandler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            result.success(value);
+          }
+        });
+  }
+
   private FirebaseFirestore getFirestore(Map<String, Object> arguments) {
     String appName = (String) arguments.get("app");
     return FirebaseFirestore.getInstance(FirebaseApp.getInstance(appName));
@@ -92,8 +203,27 @@ public class CloudFirestorePlugin implements MethodCallHandler {
     return getFirestore(arguments).document(path);
   }
 
+  private Source getSource(Map<String, Object> arguments) {
+    String source = (String) arguments.get("source");
+    if (source == null) return Source.DEFAULT;
+    switch (source) {
+      case "server":
+        return Source.SERVER;
+      case "cache":
+        return Source.CACHE;
+      default:
+        return Source.DEFAULT;
+    }
+  }
+
   private Map<String, Object> parseQuerySnapshot(QuerySnapshot querySnapshot) {
     if (querySnapshot == null) return new HashMap<>();
+    Map<String, Object> data = parseQueryDocuments(querySnapshot);
+    data.put("documentChanges", parseDocumentChanges(querySnapshot));
+    return data;
+  }
+
+  private Map<String, Object> parseQueryDocuments(QuerySnapshot querySnapshot) {
     Map<String, Object> data = new HashMap<>();
     List<String> paths = new ArrayList<>();
     List<Map<String, Object>> documents = new ArrayList<>();
@@ -103,7 +233,19 @@ public class CloudFirestorePlugin implements MethodCallHandler {
     }
     data.put("paths", paths);
     data.put("documents", documents);
+    return data;
+  }
+
+  /** Concatenates the document changes of consecutive snapshots, which apply in order. */
+  private List<Map<String, Object>> parseDocumentChanges(List<QuerySnapshot> querySnapshots) {
+    List<Map<String, Object>> documentChanges = new ArrayList<>();
+    for (QuerySnapshot querySnapshot : querySnapshots) {
+      documentChanges.addAll(parseDocumentChanges(querySnapshot));
+    }
+    return documentChanges;
+  }
 
+  private List<Map<String, Object>> parseDocumentChanges(QuerySnapshot querySnapshot) {
     List<Map<String, Object>> documentChanges = new ArrayList<>();
     for (DocumentChange documentChange : querySnapshot.getDocumentChanges()) {
       Map<String, Object> change = new HashMap<>();
@@ -126,11 +268,152 @@ public class CloudFirestorePlugin implements MethodCallHandler {
       change.put("path", documentChange.getDocument().getReference().getPath());
       documentChanges.add(change);
     }
-    data.put("documentChanges", documentChanges);
+    return documentChanges;
+  }
 
+  private Map<String, Object> parseDocumentSnapshot(DocumentSnapshot documentSnapshot) {
+    Map<String, Object> data = new HashMap<>();
+    data.put("path", documentSnapshot.getReference().getPath());
+    if (documentSnapshot.exists()) {
+      data.put("data", documentSnapshot.getData());
+    } else {
+      data.put("data", null);
+    }
     return data;
   }
 
+  /** Reports every document of {@code querySnapshot} as added, like a first snapshot does. */
+  private List<Map<String, Object>> parseAddedChanges(QuerySnapshot querySnapshot) {
+    List<Map<String, Object>> documentChanges = new ArrayList<>();
+    List<DocumentSnapshot> documents = querySnapshot.getDocuments();
+    for (int i = 0; i < documents.size(); i++) {
+      DocumentSnapshot document = documents.get(i);
+      Map<String, Object> change = new HashMap<>();
+      change.put("type", "DocumentChangeType.added");
+      change.put("oldIndex", -1);
+      change.put("newIndex", i);
+      change.put("document", document.getData());
+      change.put("path", document.getReference().getPath());
+      documentChanges.add(change);
+    }
+    return documentChanges;
+  }
+
+  /**
+   * Identifies the query built by {@link #getQuery} from {@code arguments}.
+   *
+   * <p>Maps are written with sorted keys and values are tagged with their type, so equal queries
+   * have equal keys however their arguments were ordered.
+   */
+  private static String getQueryKey(Map<String, Object> arguments) {
+    StringBuilder key = new StringBuilder();
+    key.append(arguments.get("app")).append('/').append(arguments.get("path")).append('?');
+    appendCanonical(key, arguments.get("parameters"));
+    return key.toString();
+  }
+
+  private static void appendCanonical(StringBuilder key, Object value) {
+    if (value instanceof Map) {
+      Map<String, Object> sorted = new TreeMap<>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+      }
+      key.append('{');
+      for (Map.Entry<String, Object> entry : sorted.entrySet()) {
+        key.append(entry.getKey().length()).append(':').append(entry.getKey()).append('=');
+        appendCanonical(key, entry.getValue());
+        key.append(',');
+      }
+      key.append('}');
+    } else if (value instanceof List) {
+      key.append('[');
+      for (Object element : (List<?>) value) {
+        appendCanonical(key, element);
+        key.append(',');
+      }
+      key.append(']');
+    } else if (value instanceof String) {
+      key.append("s").append(((String) value).length()).append(':').append(value);
+    } else if (value instanceof Date) {
+      key.append("date:").append(((Date) value).getTime());
+    } else if (value instanceof DocumentReference) {
+      key.append("ref:").append(((DocumentReference) value).getPath());
+    } else if (value instanceof Blob) {
+      key.append("blob:").append(Arrays.toString(((Blob) value).toBytes()));
+    } else if (value == null) {
+      key.append("null");
+    } else {
+      // Numbers, booleans, timestamps and geo points describe their value in toString.
+      key.append(value.getClass().getSimpleName()).append(':').append(value);
+    }
+  }
+
+  /**
+   * Runs the Dart transaction handler for one attempt of a transaction and returns its result.
+   *
+   * <p>Called by the SDK on its transaction thread, which has to wait for the handler because the
+   * transaction function is synchronous. The operations of the handler run meanwhile on the
+   * transaction executor, in order for the transaction.
+   */
+  private Map<String, Object> doTransaction(
+      final int transactionId,
+      final Transaction transaction,
+      final Map<String, Object> arguments,
+      long timeoutMillis)
+      throws FirebaseFirestoreException {
+    // Each attempt gets its own completion, the SDK calls the function again on retries.
+    final TaskCompletionSource<Map<String, Object>> attempt = new TaskCompletionSource<>();
+    mainThreadHandler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            transactions.put(transactionId, transaction);
+            // Start operations on Dart side.
+            channel.invokeMethod(
+                "DoTransaction",
+                arguments,
+                new Result() {
+                  @SuppressWarnings("unchecked")
+                  @Override
+                  public void success(Object doTransactionResult) {
+                    attempt.trySetResult((Map<String, Object>) doTransactionResult);
+                  }
+
+                  @Override
+                  public void error(String errorCode, String errorMessage, Object errorDetails) {
+                    attempt.trySetException(new Exception("Do transaction failed."));
+                  }
+
+                  @Override
+                  public void notImplemented() {
+                    attempt.trySetException(new Exception("DoTransaction not implemented"));
+                  }
+                });
+          }
+        });
+    try {
+      return Tasks.await(attempt.getTask(), timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      throw new FirebaseFirestoreException(
+          "Transaction timed out", FirebaseFirestoreException.Code.DEADLINE_EXCEEDED);
+    } catch (ExecutionException | InterruptedException e) {
+      throw new FirebaseFirestoreException(
+          e.getMessage() != null ? e.getMessage() : "Do transaction failed.",
+          FirebaseFirestoreException.Code.ABORTED);
+    }
+  }
+
+  /** Replies with an error from the platform thread. */
+  private void postError(final Result result, final String errorCode, final String errorMessage) {
+    mainThreadHandler.post(
+        new Runnable() {
+          @Override
+          public void run() {
+            result.error(errorCode, errorMessage, null);
+          }
+        });
+  }
+
   private Transaction getTransaction(Map<String, Object> arguments) {
     return transactions.get((Integer) arguments.get("transactionId"));
   }
@@ -204,24 +487,155 @@ public class CloudFirestorePlugin implements MethodCallHandler {
         System.out.println(e);
         return;
       }
-      Map<String, Object> arguments = new HashMap<>();
-      arguments.put("handle", handle);
-      if (documentSnapshot.exists()) {
-        arguments.put("data", documentSnapshot.getData());
-        arguments.put("path", documentSnapshot.getReference().getPath());
-      } else {
-        arguments.put("data", null);
-        arguments.put("path", documentSnapshot.getReference().getPath());
+      final DocumentSnapshot snapshot = documentSnapshot;
+      sendSnapshot(
+          handle,
+          "DocumentSnapshot",
+          new SnapshotArguments() {
+            @Override
+            public Map<String, Object> build() {
+              return parseDocumentSnapshot(snapshot);
+            }
+          });
+    }
+  }
+
+  /**
+   * One SDK snapshot listener shared by every handle that listens to the same query.
+   *
+   * <p>Snapshots are fanned out to the {@link EventObserver} of each handle. Handles that take
+   * every snapshot in full are sent one event, built and encoded once, that lists all of them.
+   * Handles with incremental or coalesced snapshots keep their own events. All events of the query
+   * are serialized in order under the handle that created the listener.
+   *
+   * <p>A handle that joins after the first snapshot is sent the last one right away, since the SDK
+   * will not send it again. The SDK listener is removed with the last handle, or after it reported
+   * an error.
+   */
+  private class SharedQueryListener implements EventListener<QuerySnapshot> {
+    private final String key;
+    private final int serializationKey;
+    private final List<EventObserver> eventObservers = new ArrayList<>();
+    private final ListenerRegistration registration;
+    private QuerySnapshot lastSnapshot;
+
+    SharedQueryListener(String key, int serializationKey, Query query) {
+      this.key = key;
+      this.serializationKey = serializationKey;
+      registration = query.addSnapshotListener(this);
+    }
+
+    @Override
+    public void onEvent(final QuerySnapshot querySnapshot, FirebaseFirestoreException e) {
+      if (e != null) {
+        // The SDK ends the listener after an error, so the next handle needs a new one.
+        registration.remove();
+        unregister();
+        for (EventObserver observer : new ArrayList<>(eventObservers)) {
+          observer.onEvent(null, e);
+        }
+        return;
+      }
+
+      lastSnapshot = querySnapshot;
+      List<Integer> fullSnapshotHandles = new ArrayList<>();
+      for (EventObserver observer : new ArrayList<>(eventObservers)) {
+        if (observer.takesFullSnapshots()) {
+          fullSnapshotHandles.add(observer.handle);
+        } else {
+          observer.onEvent(querySnapshot, null);
+        }
+      }
+      if (fullSnapshotHandles.isEmpty()) {
+        return;
+      }
+      sendSnapshot(
+          serializationKey,
+          fullSnapshotHandles,
+          "QuerySnapshot",
+          new SnapshotArguments() {
+            @Override
+            public Map<String, Object> build() {
+              Map<String, Object> arguments = parseQueryDocuments(querySnapshot);
+              arguments.put(
+                  "documentChanges",
+                  parseDocumentChanges(Collections.singletonList(querySnapshot)));
+              return arguments;
+            }
+          });
+    }
+
+    /** Adds {@code observer}, returning the registration that removes it. */
+    ListenerRegistration add(final EventObserver observer) {
+      observer.serializationKey = serializationKey;
+      eventObservers.add(observer);
+      if (lastSnapshot != null) {
+        observer.onInitialSnapshot(lastSnapshot);
+      }
+      return new ListenerRegistration() {
+        @Override
+        public void remove() {
+          eventObservers.remove(observer);
+          if (eventObservers.isEmpty()) {
+            registration.remove();
+            unregister();
+          }
+        }
+      };
+    }
+
+    private void unregister() {
+      if (sharedQueryListeners.get(key) == this) {
+        sharedQueryListeners.remove(key);
       }
-      channel.invokeMethod("DocumentSnapshot", arguments);
     }
   }
 
+  /**
+   * Sends query snapshots to Dart.
+   *
+   * <p>In incremental mode only the first snapshot carries the documents. Later snapshots carry
+   * the document changes only, numbered by a sequence so that Dart can apply them in order and ask
+   * for the full set with {@link #resync()} if it misses one.
+   *
+   * <p>With a coalescing window, a snapshot is sent right away only if none was sent within the
+   * window. Snapshots arriving sooner are held until the window ends and then sent as the latest
+   * snapshot with the document changes of all of them, in order.
+   */
   private class EventObserver implements EventListener<QuerySnapshot> {
-    private int handle;
+    private final int handle;
+    // The key its events are serialized under, shared with the other handles of the query.
+    private int serializationKey;
+    private final boolean incremental;
+    private final long coalescingWindowMillis;
+    private final List<QuerySnapshot> pendingSnapshots = new ArrayList<>();
+    private long lastSentUptimeMillis;
+    private int sequence;
+    private QuerySnapshot lastSnapshot;
+
+    private final Runnable sendPendingSnapshots =
+        new Runnable() {
+          @Override
+          public void run() {
+            if (observers.get(handle) != EventObserver.this) {
+              return;
+            }
+            List<QuerySnapshot> snapshots = new ArrayList<>(pendingSnapshots);
+            pendingSnapshots.clear();
+            send(snapshots);
+          }
+        };
 
-    EventObserver(int handle) {
+    EventObserver(int handle, boolean incremental, long coalescingWindowMillis) {
       this.handle = handle;
+      this.serializationKey = handle;
+      this.incremental = incremental;
+      this.coalescingWindowMillis = coalescingWindowMillis;
+    }
+
+    /** Whether each snapshot is sent as is, so that it can be shared with other handles. */
+    boolean takesFullSnapshots() {
+      return !incremental && coalescingWindowMillis <= 0;
     }
 
     @Override
@@ -232,10 +646,499 @@ public class CloudFirestorePlugin implements MethodCallHandler {
         return;
       }
 
-      Map<String, Object> arguments = parseQuerySnapshot(querySnapshot);
-      arguments.put("handle", handle);
+      if (coalescingWindowMillis <= 0) {
+        send(Collections.singletonList(querySnapshot));
+        return;
+      }
+      if (!pendingSnapshots.isEmpty()) {
+        pendingSnapshots.add(querySnapshot);
+        return;
+      }
+      final long nextSendUptimeMillis = lastSentUptimeMillis + coalescingWindowMillis;
+      if (SystemClock.uptimeMillis() >= nextSendUptimeMillis) {
+        send(Collections.singletonList(querySnapshot));
+        return;
+      }
+      pendingSnapshots.add(querySnapshot);
+      mainThreadHandler.postAtTime(sendPendingSnapshots, nextSendUptimeMillis);
+    }
 
-      channel.invokeMethod("QuerySnapshot", arguments);
+    /** Sends {@code snapshot} as the first snapshot of this handle, with every document added. */
+    void onInitialSnapshot(final QuerySnapshot snapshot) {
+      lastSentUptimeMillis = SystemClock.uptimeMillis();
+      if (incremental) {
+        lastSnapshot = snapshot;
+        sendDocuments();
+        return;
+      }
+      sendSnapshot(
+          serializationKey,
+          Collections.singletonList(handle),
+          "QuerySnapshot",
+          new SnapshotArguments() {
+            @Override
+            public Map<String, Object> build() {
+              Map<String, Object> arguments = parseQueryDocuments(snapshot);
+              arguments.put("documentChanges", parseAddedChanges(snapshot));
+              return arguments;
+            }
+          });
+    }
+
+    /** Drops the snapshots waiting for the coalescing window to end. */
+    void cancel() {
+      mainThreadHandler.removeCallbacks(sendPendingSnapshots);
+      pendingSnapshots.clear();
+    }
+
+    /** Sends the latest of {@code snapshots} with the document changes of all of them. */
+    private void send(final List<QuerySnapshot> snapshots) {
+      lastSentUptimeMillis = SystemClock.uptimeMillis();
+      final QuerySnapshot snapshot = snapshots.get(snapshots.size() - 1);
+      if (!incremental) {
+        sendSnapshot(
+            serializationKey,
+            Collections.singletonList(handle),
+            "QuerySnapshot",
+            new SnapshotArguments() {
+              @Override
+              public Map<String, Object> build() {
+                Map<String, Object> arguments = parseQueryDocuments(snapshot);
+                arguments.put("documentChanges", parseDocumentChanges(snapshots));
+                return arguments;
+              }
+            });
+        return;
+      }
+
+      final boolean first = lastSnapshot == null;
+      lastSnapshot = snapshot;
+      if (first) {
+        sendDocuments();
+        return;
+      }
+      boolean changed = false;
+      for (QuerySnapshot querySnapshot : snapshots) {
+        changed |= !querySnapshot.getDocumentChanges().isEmpty();
+      }
+      if (!changed) {
+        // Metadata only snapshots do not change the documents.
+        return;
+      }
+      final int eventSequence = sequence++;
+      sendSnapshot(
+          serializationKey,
+          Collections.singletonList(handle),
+          "QuerySnapshot",
+          new SnapshotArguments() {
+            @Override
+            public Map<String, Object> build() {
+              Map<String, Object> arguments = new HashMap<>();
+              arguments.put("documentChanges", parseDocumentChanges(snapshots));
+              arguments.put("sequence", eventSequence);
+              return arguments;
+            }
+          });
+    }
+
+    /** Sends the documents of the last snapshot, which Dart replaces its state with. */
+    void resync() {
+      if (lastSnapshot != null) {
+        sendDocuments();
+      }
+    }
+
+    private void sendDocuments() {
+      final QuerySnapshot snapshot = lastSnapshot;
+      final int eventSequence = sequence++;
+      sendSnapshot(
+          serializationKey,
+          Collections.singletonList(handle),
+          "QuerySnapshot",
+          new SnapshotArguments() {
+            @Override
+            public Map<String, Object> build() {
+              Map<String, Object> arguments = parseQueryDocuments(snapshot);
+              arguments.put("sequence", eventSequence);
+              arguments.put("full", true);
+              return arguments;
+            }
+          });
+    }
+  }
+
+  /**
+   * Reads the documents of a query one page at a time and sends each page as an event.
+   *
+   * <p>The first page is read when Dart listens, and each following page when Dart asks for it, so
+   * only one page is held in memory and Dart is never sent more than it has consumed. Each page
+   * starts after the last document of the previous one. The limit of the query, if any, caps the
+   * total number of documents.
+   */
+  private class DocumentChunkStream implements EventChannel.StreamHandler {
+    private final int handle;
+    private final String channelName;
+    private final EventChannel eventChannel;
+    private final Query query;
+    private final int chunkSize;
+    private final Number limit;
+    private EventChannel.EventSink events;
+    private DocumentSnapshot lastDocument;
+    private long sentCount;
+    private boolean reading;
+
+    DocumentChunkStream(int handle, Query query, int chunkSize, @Nullable Number limit) {
+      this.handle = handle;
+      this.query = query;
+      this.chunkSize = chunkSize;
+      this.limit = limit;
+      channelName = CHANNEL_NAME + "/documentChunks/" + handle;
+      eventChannel = new EventChannel(messenger, channelName, METHOD_CODEC);
+      eventChannel.setStreamHandler(this);
+    }
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+      this.events = events;
+      readNextChunk();
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+      finish();
+      eventChannel.setStreamHandler(null);
+    }
+
+    void readNextChunk() {
+      if (events == null || reading) {
+        return;
+      }
+      long size = chunkSize;
+      if (limit != null) {
+        size = Math.min(size, limit.longValue() - sentCount);
+      }
+      if (size <= 0) {
+        events.endOfStream();
+        finish();
+        return;
+      }
+      Query page = query.limit(size);
+      if (lastDocument != null) {
+        page = page.startAfter(lastDocument);
+      }
+      final long pageSize = size;
+      reading = true;
+      page.get()
+          .addOnSuccessListener(
+              serializationExecutor,
+              new OnSuccessListener<QuerySnapshot>() {
+                @Override
+                public void onSuccess(QuerySnapshot querySnapshot) {
+                  final List<DocumentSnapshot> documents = querySnapshot.getDocuments();
+                  final ByteBuffer chunk =
+                      METHOD_CODEC.encodeSuccessEnvelope(
+                          encodable(parseQueryDocuments(querySnapshot)));
+                  mainThreadHandler.post(
+                      new Runnable() {
+                        @Override
+                        public void run() {
+                          onChunkRead(documents, chunk, documents.size() < pageSize);
+                        }
+                      });
+                }
+              })
+          .addOnFailureListener(
+              new OnFailureListener() {
+                @Override
+                public void onFailure(@NonNull Exception e) {
+                  reading = false;
+                  if (events != null) {
+                    events.error("Error performing getDocuments", e.getMessage(), null);
+                    finish();
+                  }
+                }
+              });
+    }
+
+    private void onChunkRead(List<DocumentSnapshot> documents, ByteBuffer chunk, boolean last) {
+      reading = false;
+      if (events == null) {
+        return;
+      }
+      if (!documents.isEmpty()) {
+        sentCount += documents.size();
+        lastDocument = documents.get(documents.size() - 1);
+        messenger.send(channelName, chunk);
+      }
+      if (last || (limit != null && sentCount >= limit.longValue())) {
+        events.endOfStream();
+        finish();
+      }
+    }
+
+    /** Stops reading. The stream handler stays set until Dart cancels its subscription. */
+    private void finish() {
+      events = null;
+      documentChunkStreams.remove(handle);
+    }
+  }
+
+  /**
+   * Reads a query or a document from the cache and from the server at the same time, and sends the
+   * cached snapshot and then the server snapshot as events.
+   *
+   * <p>The cached snapshot is skipped if the read from the cache fails or ends after the server
+   * snapshot was sent. The stream ends after the server snapshot, or with an error if the read from
+   * the server fails. That error waits for the read from the cache, so that an offline read still
+   * sends the cached snapshot first.
+   */
+  private abstract class CacheThenServerRead<T> implements EventChannel.StreamHandler {
+    private final EventChannel eventChannel;
+    private EventChannel.EventSink events;
+    private boolean serverSnapshotSent;
+    private boolean cacheReadDone;
+    private Exception pendingServerError;
+
+    CacheThenServerRead(int handle) {
+      eventChannel =
+          new EventChannel(messenger, CHANNEL_NAME + "/cacheThenServer/" + handle, METHOD_CODEC);
+      eventChannel.setStreamHandler(this);
+    }
+
+    abstract Task<T> read(Source source);
+
+    abstract Map<String, Object> parse(T snapshot);
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+      this.events = events;
+      readCacheAndServer();
+    }
+
+    private void readCacheAndServer() {
+      read(Source.CACHE)
+          .addOnSuccessListener(
+              serializationExecutor,
+              new OnSuccessListener<T>() {
+                @Override
+                public void onSuccess(T snapshot) {
+                  final Object value = encodable(parse(snapshot));
+                  mainThreadHandler.post(
+                      new Runnable() {
+                        @Override
+                        public void run() {
+                          if (!serverSnapshotSent && events != null) {
+                            events.success(value);
+                          }
+                          onCacheReadDone();
+                        }
+                      });
+                }
+              })
+          .addOnFailureListener(
+              new OnFailureListener() {
+                @Override
+                public void onFailure(@NonNull Exception e) {
+                  onCacheReadDone();
+                }
+              });
+      read(Source.SERVER)
+          .addOnSuccessListener(
+              serializationExecutor,
+              new OnSuccessListener<T>() {
+                @Override
+                public void onSuccess(T snapshot) {
+                  final Object value = encodable(parse(snapshot));
+                  mainThreadHandler.post(
+                      new Runnable() {
+                        @Override
+                        public void run() {
+                          serverSnapshotSent = true;
+                          if (events != null) {
+                            events.success(value);
+                            finish();
+                          }
+                        }
+                      });
+                }
+              })
+          .addOnFailureListener(
+              new OnFailureListener() {
+                @Override
+                public void onFailure(@NonNull Exception e) {
+                  if (cacheReadDone) {
+                    sendServerError(e);
+                  } else {
+                    pendingServerError = e;
+                  }
+                }
+              });
+    }
+
+    private void onCacheReadDone() {
+      cacheReadDone = true;
+      if (pendingServerError != null) {
+        sendServerError(pendingServerError);
+        pendingServerError = null;
+      }
+    }
+
+    private void sendServerError(Exception e) {
+      if (events != null) {
+        events.error("Error performing get", e.getMessage(), null);
+        finish();
+      }
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+      events = null;
+      eventChannel.setStreamHandler(null);
+    }
+
+    /** Ends the stream. The stream handler stays set until Dart cancels its subscription. */
+    private void finish() {
+      events.endOfStream();
+      events = null;
+    }
+  }
+
+  /**
+   * Commits a list of write operations as consecutive batches and sends the progress as events.
+   *
+   * <p>At most {@code maxConcurrentBatches} commits are in flight. Batches are independent: a batch
+   * that fails is reported in the progress and the others are still committed. Commits start when
+   * Dart listens. If Dart cancels, the batches that have not started are skipped. The stream ends
+   * after the last commit.
+   */
+  private class BulkWrite implements EventChannel.StreamHandler {
+    private final int handle;
+    private final EventChannel eventChannel;
+    private final FirebaseFirestore firestore;
+    private final List<Map<String, Object>> operations;
+    private final int batchSize;
+    private final int maxConcurrentBatches;
+    private final int batchCount;
+    private EventChannel.EventSink events;
+    private int nextBatch;
+    private int runningBatches;
+    private int committedBatches;
+    private int failedBatches;
+    private int committedOperations;
+    private int failedOperations;
+
+    BulkWrite(
+        int handle,
+        FirebaseFirestore firestore,
+        List<Map<String, Object>> operations,
+        int batchSize,
+        int maxConcurrentBatches) {
+      this.handle = handle;
+      this.firestore = firestore;
+      this.operations = operations;
+      this.batchSize = batchSize;
+      this.maxConcurrentBatches = maxConcurrentBatches;
+      batchCount = (operations.size() + batchSize - 1) / batchSize;
+      eventChannel =
+          new EventChannel(messenger, CHANNEL_NAME + "/bulkWrite/" + handle, METHOD_CODEC);
+      eventChannel.setStreamHandler(this);
+    }
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+      this.events = events;
+      if (batchCount == 0) {
+        events.endOfStream();
+        return;
+      }
+      while (runningBatches < maxConcurrentBatches && nextBatch < batchCount) {
+        commitNextBatch();
+      }
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+      events = null;
+      bulkWrites.remove(handle);
+      eventChannel.setStreamHandler(null);
+    }
+
+    private void commitNextBatch() {
+      final int start = nextBatch++ * batchSize;
+      final int size = Math.min(batchSize, operations.size() - start);
+      runningBatches++;
+      Task<Void> commit;
+      try {
+        WriteBatch batch = firestore.batch();
+        for (int i = start; i < start + size; i++) {
+          addOperation(batch, operations.get(i));
+          // The batch holds the operation now.
+          operations.set(i, null);
+        }
+        commit = batch.commit();
+      } catch (IllegalArgumentException e) {
+        // Invalid data fails the batch it is in.
+        commit = Tasks.forException(e);
+      }
+      commit.addOnCompleteListener(
+          new OnCompleteListener<Void>() {
+            @Override
+            public void onComplete(@NonNull Task<Void> task) {
+              runningBatches--;
+              String error = null;
+              if (task.isSuccessful()) {
+                committedBatches++;
+                committedOperations += size;
+              } else {
+                failedBatches++;
+                failedOperations += size;
+                error = task.getException().getMessage();
+              }
+              onBatchDone(error);
+            }
+          });
+    }
+
+    private void addOperation(WriteBatch batch, Map<String, Object> operation) {
+      DocumentReference reference = firestore.document((String) operation.get("path"));
+      String type = (String) operation.get("type");
+      if ("set".equals(type)) {
+        Boolean merge = (Boolean) operation.get("merge");
+        if (merge != null && merge) {
+          batch.set(reference, operation.get("data"), SetOptions.merge());
+        } else {
+          batch.set(reference, operation.get("data"));
+        }
+      } else if ("update".equals(type)) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> data = (Map<String, Object>) operation.get("data");
+        batch.update(reference, data);
+      } else if ("delete".equals(type)) {
+        batch.delete(reference);
+      } else {
+        throw new IllegalArgumentException("Unknown operation type: " + type);
+      }
+    }
+
+    private void onBatchDone(@Nullable String error) {
+      if (events == null) {
+        return;
+      }
+      Map<String, Object> progress = new HashMap<>();
+      progress.put("committedOperations", committedOperations);
+      progress.put("failedOperations", failedOperations);
+      progress.put("totalOperations", operations.size());
+      progress.put("committedBatches", committedBatches);
+      progress.put("failedBatches", failedBatches);
+      progress.put("totalBatches", batchCount);
+      progress.put("error", error);
+      events.success(progress);
+      if (nextBatch < batchCount) {
+        commitNextBatch();
+      } else if (runningBatches == 0) {
+        events.endOfStream();
+        bulkWrites.remove(handle);
+      }
     }
   }
 
@@ -261,140 +1164,123 @@ public class CloudFirestorePlugin implements MethodCallHandler {
     switch (call.method) {
       case "Firestore#runTransaction":
         {
-          final TaskCompletionSource<Map<String, Object>> transactionTCS =
-              new TaskCompletionSource<>();
-          final Task<Map<String, Object>> transactionTCSTask = transactionTCS.getTask();
-
           final Map<String, Object> arguments = call.arguments();
+          final int transactionId = (Integer) arguments.get("transactionId");
+          final long timeout = ((Number) arguments.get("transactionTimeout")).longValue();
+          final long startNanos = System.nanoTime();
+          final AtomicInteger attempts = new AtomicInteger();
           getFirestore(arguments)
               .runTransaction(
-                  new Transaction.Function<Void>() {
+                  new Transaction.Function<Map<String, Object>>() {
                     @Nullable
                     @Override
-                    public Void apply(@NonNull Transaction transaction)
+                    public Map<String, Object> apply(@NonNull Transaction transaction)
                         throws FirebaseFirestoreException {
-                      // Store transaction.
-                      int transactionId = (Integer) arguments.get("transactionId");
-                      transactions.append(transactionId, transaction);
-                      completionTasks.append(transactionId, transactionTCS);
-
-                      // Start operations on Dart side.
-                      channel.invokeMethod(
-                          "DoTransaction",
-                          arguments,
-                          new Result() {
-                            @SuppressWarnings("unchecked")
-                            @Override
-                            public void success(Object doTransactionResult) {
-                              transactionTCS.setResult((Map<String, Object>) doTransactionResult);
-                            }
-
-                            @Override
-                            public void error(
-                                String errorCode, String errorMessage, Object errorDetails) {
-                              // result.error(errorCode, errorMessage, errorDetails);
-                              transactionTCS.setException(new Exception("Do transaction failed."));
-                            }
-
-                            @Override
-                            public void notImplemented() {
-                              // result.error("DoTransaction not implemented", null, null);
-                              transactionTCS.setException(
-                                  new Exception("DoTransaction not implemented"));
-                            }
-                          });
-
-                      // Wait till transaction is complete.
-                      try {
-                        String timeoutKey = "transactionTimeout";
-                        long timeout = ((Number) arguments.get(timeoutKey)).longValue();
-                        Map<String, Object> transactionResult =
-                            Tasks.await(transactionTCSTask, timeout, TimeUnit.MILLISECONDS);
-
-                        // Once transaction completes return the result to the Dart side.
-                        result.success(transactionResult);
-                      } catch (Exception e) {
-                        result.error("Error performing transaction", e.getMessage(), null);
+                      attempts.incrementAndGet();
+                      return doTransaction(transactionId, transaction, arguments, timeout);
+                    }
+                  })
+              .addOnCompleteListener(
+                  new OnCompleteListener<Map<String, Object>>() {
+                    @Override
+                    public void onComplete(@NonNull Task<Map<String, Object>> task) {
+                      transactions.remove(transactionId);
+                      transactionMetrics.record(
+                          System.nanoTime() - startNanos, attempts.get(), task.isSuccessful());
+                      if (task.isSuccessful()) {
+                        result.success(task.getResult());
+                      } else {
+                        result.error(
+                            "Error performing transaction", task.getException().getMessage(), null);
                       }
-                      return null;
                     }
                   });
           break;
         }
+      case "Firestore#transactionMetrics":
+        {
+          result.success(transactionMetrics.toMap());
+          break;
+        }
       case "Transaction#get":
         {
           final Map<String, Object> arguments = call.arguments();
           final Transaction transaction = getTransaction(arguments);
-          new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... voids) {
-              try {
-                DocumentSnapshot documentSnapshot =
-                    transaction.get(getDocumentReference(arguments));
-                Map<String, Object> snapshotMap = new HashMap<>();
-                snapshotMap.put("path", documentSnapshot.getReference().getPath());
-                if (documentSnapshot.exists()) {
-                  snapshotMap.put("data", documentSnapshot.getData());
-                } else {
-                  snapshotMap.put("data", null);
+          transactionExecutor.execute(
+              (Integer) arguments.get("transactionId"),
+              new Runnable() {
+                @Override
+                public void run() {
+                  try {
+                    DocumentSnapshot documentSnapshot =
+                        transaction.get(getDocumentReference(arguments));
+                    postSuccess(result, parseDocumentSnapshot(documentSnapshot));
+                  } catch (FirebaseFirestoreException | RuntimeException e) {
+                    postError(result, "Error performing Transaction#get", e.getMessage());
+                  }
                 }
-                result.success(snapshotMap);
-              } catch (FirebaseFirestoreException e) {
-                result.error("Error performing Transaction#get", e.getMessage(), null);
-              }
-              return null;
-            }
-          }.execute();
+              });
           break;
         }
       case "Transaction#update":
         {
           final Map<String, Object> arguments = call.arguments();
           final Transaction transaction = getTransaction(arguments);
-          new AsyncTask<Void, Void, Void>() {
-            @SuppressWarnings("unchecked")
-            @Override
-            protected Void doInBackground(Void... voids) {
-              Map<String, Object> data = (Map<String, Object>) arguments.get("data");
-              try {
-                transaction.update(getDocumentReference(arguments), data);
-                result.success(null);
-              } catch (IllegalStateException e) {
-                result.error("Error performing Transaction#update", e.getMessage(), null);
-              }
-              return null;
-            }
-          }.execute();
+          transactionExecutor.execute(
+              (Integer) arguments.get("transactionId"),
+              new Runnable() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public void run() {
+                  Map<String, Object> data = (Map<String, Object>) arguments.get("data");
+                  try {
+                    transaction.update(getDocumentReference(arguments), data);
+                    postSuccess(result, null);
+                  } catch (RuntimeException e) {
+                    postError(result, "Error performing Transaction#update", e.getMessage());
+                  }
+                }
+              });
           break;
         }
       case "Transaction#set":
         {
           final Map<String, Object> arguments = call.arguments();
           final Transaction transaction = getTransaction(arguments);
-          new AsyncTask<Void, Void, Void>() {
-            @SuppressWarnings("unchecked")
-            @Override
-            protected Void doInBackground(Void... voids) {
-              Map<String, Object> data = (Map<String, Object>) arguments.get("data");
-              transaction.set(getDocumentReference(arguments), data);
-              result.success(null);
-              return null;
-            }
-          }.execute();
+          transactionExecutor.execute(
+              (Integer) arguments.get("transactionId"),
+              new Runnable() {
+                @SuppressWarnings("unchecked")
+                @Override
+                public void run() {
+                  Map<String, Object> data = (Map<String, Object>) arguments.get("data");
+                  try {
+                    transaction.set(getDocumentReference(arguments), data);
+                    postSuccess(result, null);
+                  } catch (RuntimeException e) {
+                    postError(result, "Error performing Transaction#set", e.getMessage());
+                  }
+                }
+              });
           break;
         }
       case "Transaction#delete":
         {
           final Map<String, Object> arguments = call.arguments();
           final Transaction transaction = getTransaction(arguments);
-          new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... voids) {
-              transaction.delete(getDocumentReference(arguments));
-              result.success(null);
-              return null;
-            }
-          }.execute();
+          transactionExecutor.execute(
+              (Integer) arguments.get("transactionId"),
+              new Runnable() {
+                @Override
+                public void run() {
+                  try {
+                    transaction.delete(getDocumentReference(arguments));
+                    postSuccess(result, null);
+                  } catch (RuntimeException e) {
+                    postError(result, "Error performing Transaction#delete", e.getMessage());
+                  }
+                }
+              });
           break;
         }
       case "WriteBatch#create":
@@ -454,16 +1340,56 @@ public class CloudFirestorePlugin implements MethodCallHandler {
           addDefaultListeners("commit", task, result);
           break;
         }
+      case "Firestore#bulkWrite":
+        {
+          Map<String, Object> arguments = call.arguments();
+          @SuppressWarnings("unchecked")
+          List<Map<String, Object>> operations =
+              new ArrayList<>((List<Map<String, Object>>) arguments.get("operations"));
+          int handle = nextBatchHandle++;
+          bulkWrites.put(
+              handle,
+              new BulkWrite(
+                  handle,
+                  getFirestore(arguments),
+                  operations,
+                  (Integer) arguments.get("batchSize"),
+                  (Integer) arguments.get("maxConcurrentBatches")));
+          result.success(handle);
+          break;
+        }
       case "Query#addSnapshotListener":
         {
           Map<String, Object> arguments = call.arguments();
           int handle = nextListenerHandle++;
-          EventObserver observer = new EventObserver(handle);
+          Boolean incremental = (Boolean) arguments.get("incremental");
+          Number coalescingWindow = (Number) arguments.get("coalescingWindowMillis");
+          EventObserver observer =
+              new EventObserver(
+                  handle,
+                  incremental != null && incremental,
+                  coalescingWindow == null ? 0 : coalescingWindow.longValue());
           observers.put(handle, observer);
-          listenerRegistrations.put(handle, getQuery(arguments).addSnapshotListener(observer));
+          String key = getQueryKey(arguments);
+          SharedQueryListener sharedListener = sharedQueryListeners.get(key);
+          if (sharedListener == null) {
+            sharedListener = new SharedQueryListener(key, handle, getQuery(arguments));
+            sharedQueryListeners.put(key, sharedListener);
+          }
+          listenerRegistrations.put(handle, sharedListener.add(observer));
           result.success(handle);
           break;
         }
+      case "Query#resyncSnapshotListener":
+        {
+          Map<String, Object> arguments = call.arguments();
+          EventObserver observer = observers.get((Integer) arguments.get("handle"));
+          if (observer != null) {
+            observer.resync();
+          }
+          result.success(null);
+          break;
+        }
       case "Query#addDocumentListener":
         {
           Map<String, Object> arguments = call.arguments();
@@ -481,6 +1407,10 @@ public class CloudFirestorePlugin implements MethodCallHandler {
           int handle = (Integer) arguments.get("handle");
           listenerRegistrations.get(handle).remove();
           listenerRegistrations.remove(handle);
+          EventObserver observer = observers.get(handle);
+          if (observer != null) {
+            observer.cancel();
+          }
           observers.remove(handle);
           result.success(null);
           break;
@@ -489,12 +1419,13 @@ public class CloudFirestorePlugin implements MethodCallHandler {
         {
           Map<String, Object> arguments = call.arguments();
           Query query = getQuery(arguments);
-          Task<QuerySnapshot> task = query.get();
+          Task<QuerySnapshot> task = query.get(getSource(arguments));
           task.addOnSuccessListener(
+                  serializationExecutor,
                   new OnSuccessListener<QuerySnapshot>() {
                     @Override
                     public void onSuccess(QuerySnapshot querySnapshot) {
-                      result.success(parseQuerySnapshot(querySnapshot));
+                      postSuccess(result, encodable(parseQuerySnapshot(querySnapshot)));
                     }
                   })
               .addOnFailureListener(
@@ -506,6 +1437,51 @@ public class CloudFirestorePlugin implements MethodCallHandler {
                   });
           break;
         }
+      case "Query#getDocumentsCacheThenServer":
+        {
+          Map<String, Object> arguments = call.arguments();
+          final Query query = getQuery(arguments);
+          int handle = nextListenerHandle++;
+          new CacheThenServerRead<QuerySnapshot>(handle) {
+            @Override
+            Task<QuerySnapshot> read(Source source) {
+              return query.get(source);
+            }
+
+            @Override
+            Map<String, Object> parse(QuerySnapshot snapshot) {
+              return parseQuerySnapshot(snapshot);
+            }
+          };
+          result.success(handle);
+          break;
+        }
+      case "Query#getDocumentsInChunks":
+        {
+          Map<String, Object> arguments = call.arguments();
+          @SuppressWarnings("unchecked")
+          Map<String, Object> parameters = (Map<String, Object>) arguments.get("parameters");
+          int handle = nextListenerHandle++;
+          documentChunkStreams.put(
+              handle,
+              new DocumentChunkStream(
+                  handle,
+                  getQuery(arguments),
+                  (Integer) arguments.get("chunkSize"),
+                  parameters == null ? null : (Number) parameters.get("limit")));
+          result.success(handle);
+          break;
+        }
+      case "Query#requestDocumentChunk":
+        {
+          Map<String, Object> arguments = call.arguments();
+          DocumentChunkStream stream = documentChunkStreams.get((Integer) arguments.get("handle"));
+          if (stream != null) {
+            stream.readNextChunk();
+          }
+          result.success(null);
+          break;
+        }
       case "DocumentReference#setData":
         {
           Map<String, Object> arguments = call.arguments();
@@ -537,19 +1513,13 @@ public class CloudFirestorePlugin implements MethodCallHandler {
         {
           Map<String, Object> arguments = call.arguments();
           DocumentReference documentReference = getDocumentReference(arguments);
-          Task<DocumentSnapshot> task = documentReference.get();
+          Task<DocumentSnapshot> task = documentReference.get(getSource(arguments));
           task.addOnSuccessListener(
+                  serializationExecutor,
                   new OnSuccessListener<DocumentSnapshot>() {
                     @Override
                     public void onSuccess(DocumentSnapshot documentSnapshot) {
-                      Map<String, Object> snapshotMap = new HashMap<>();
-                      snapshotMap.put("path", documentSnapshot.getReference().getPath());
-                      if (documentSnapshot.exists()) {
-                        snapshotMap.put("data", documentSnapshot.getData());
-                      } else {
-                        snapshotMap.put("data", null);
-                      }
-                      result.success(snapshotMap);
+                      postSuccess(result, encodable(parseDocumentSnapshot(documentSnapshot)));
                     }
                   })
               .addOnFailureListener(
@@ -561,6 +1531,25 @@ public class CloudFirestorePlugin implements MethodCallHandler {
                   });
           break;
         }
+      case "DocumentReference#getCacheThenServer":
+        {
+          Map<String, Object> arguments = call.arguments();
+          final DocumentReference documentReference = getDocumentReference(arguments);
+          int handle = nextListenerHandle++;
+          new CacheThenServerRead<DocumentSnapshot>(handle) {
+            @Override
+            Task<DocumentSnapshot> read(Source source) {
+              return documentReference.get(source);
+            }
+
+            @Override
+            Map<String, Object> parse(DocumentSnapshot snapshot) {
+              return parseDocumentSnapshot(snapshot);
+            }
+          };
+          result.success(handle);
+          break;
+        }
       case "DocumentReference#delete":
         {
           Map<String, Object> arguments = call.arguments();
@@ -569,6 +1558,39 @@ public class CloudFirestorePlugin implements MethodCallHandler {
           addDefaultListeners("delete", task, result);
           break;
         }
+      case "Firestore#getDocumentsByPaths":
+        {
+          Map<String, Object> arguments = call.arguments();
+          FirebaseFirestore firestore = getFirestore(arguments);
+          Source source = getSource(arguments);
+          @SuppressWarnings("unchecked")
+          List<String> paths = (List<String>) arguments.get("paths");
+          final List<Task<DocumentSnapshot>> tasks = new ArrayList<>(paths.size());
+          for (String path : paths) {
+            tasks.add(firestore.document(path).get(source));
+          }
+          Tasks.whenAllComplete(tasks)
+              .addOnCompleteListener(
+                  serializationExecutor,
+                  new OnCompleteListener<List<Task<?>>>() {
+                    @Override
+                    public void onComplete(@NonNull Task<List<Task<?>>> ignored) {
+                      List<Map<String, Object>> documents = new ArrayList<>(tasks.size());
+                      for (Task<DocumentSnapshot> task : tasks) {
+                        if (!task.isSuccessful()) {
+                          postError(
+                              result,
+                              "Error performing getDocumentsByPaths",
+                              task.getException().getMessage());
+                          return;
+                        }
+                        documents.add(parseDocumentSnapshot(task.getResult()));
+                      }
+                      postSuccess(result, encodable(documents));
+                    }
+                  });
+          break;
+        }
       case "Firestore#enablePersistence":
         {
           Map<String, Object> arguments = call.arguments();
@@ -607,6 +1629,18 @@ public class CloudFirestorePlugin implements MethodCallHandler {
           result.success(null);
           break;
         }
+      case "Firestore#setCompactEncoding":
+        {
+          Map<String, Object> arguments = call.arguments();
+          compactEncoding = (Boolean) arguments.get("enabled");
+          result.success(null);
+          break;
+        }
+      case "Firestore#serializationMetrics":
+        {
+          result.success(serializationExecutor.getMetrics());
+          break;
+        }
       default:
         {
           result.notImplemented();
@@ -628,10 +1662,46 @@ final class FirestoreMessageCodec extends StandardMessageCodec {
   private static final byte DELETE = (byte) 134;
   private static final byte SERVER_TIMESTAMP = (byte) 135;
   private static final byte TIMESTAMP = (byte) 136;
+  private static final byte COMPACT = (byte) 137;
+  private static final byte STRING_REFERENCE = (byte) 138;
+  private static final byte COMPACT_DOCUMENT_REFERENCE = (byte) 139;
+  private static final byte PACKED_LIST = (byte) 140;
+  private static final int MIN_PACKED_LIST_SIZE = 8;
+
+  /**
+   * A value to write with the compact encoding.
+   *
+   * <p>Each distinct string of the value, including map keys and the app names and paths of
+   * document references, is written once in a table and referred to by index. Lists of at least
+   * {@link #MIN_PACKED_LIST_SIZE} integers or doubles are written as packed arrays. Dart decodes
+   * the value back to the same maps and lists. Only written, never read.
+   */
+  static final class CompactValue {
+    final Object value;
+
+    CompactValue(Object value) {
+      this.value = value;
+    }
+  }
+
+  // Indices of the strings in the table of the compact value written on this thread.
+  private final ThreadLocal<Map<String, Integer>> stringTable = new ThreadLocal<>();
 
   @Override
   protected void writeValue(ByteArrayOutputStream stream, Object value) {
-    if (value instanceof Date) {
+    final Map<String, Integer> strings = stringTable.get();
+    if (value instanceof CompactValue) {
+      writeCompact(stream, ((CompactValue) value).value);
+    } else if (strings != null && value instanceof String) {
+      stream.write(STRING_REFERENCE);
+      writeSize(stream, strings.get(value));
+    } else if (strings != null && value instanceof DocumentReference) {
+      stream.write(COMPACT_DOCUMENT_REFERENCE);
+      writeSize(stream, strings.get(getAppName((DocumentReference) value)));
+      writeSize(stream, strings.get(((DocumentReference) value).getPath()));
+    } else if (strings != null && value instanceof List && writePackedList(stream, (List) value)) {
+      // Written as a packed array.
+    } else if (value instanceof Date) {
       stream.write(DATE_TIME);
       writeLong(stream, ((Date) value).getTime());
     } else if (value instanceof Timestamp) {
@@ -645,8 +1715,7 @@ final class FirestoreMessageCodec extends StandardMessageCodec {
       writeDouble(stream, ((GeoPoint) value).getLongitude());
     } else if (value instanceof DocumentReference) {
       stream.write(DOCUMENT_REFERENCE);
-      writeBytes(
-          stream, ((DocumentReference) value).getFirestore().getApp().getName().getBytes(UTF8));
+      writeBytes(stream, getAppName((DocumentReference) value).getBytes(UTF8));
       writeBytes(stream, ((DocumentReference) value).getPath().getBytes(UTF8));
     } else if (value instanceof Blob) {
       stream.write(BLOB);
@@ -690,6 +1759,87 @@ final class FirestoreMessageCodec extends StandardMessageCodec {
     }
   }
 
+  private static String getAppName(DocumentReference reference) {
+    return reference.getFirestore().getApp().getName();
+  }
+
+  private void writeCompact(ByteArrayOutputStream stream, Object value) {
+    final Map<String, Integer> strings = new LinkedHashMap<>();
+    collectStrings(value, strings);
+    stream.write(COMPACT);
+    writeSize(stream, strings.size());
+    for (String string : strings.keySet()) {
+      writeBytes(stream, string.getBytes(UTF8));
+    }
+    stringTable.set(strings);
+    try {
+      writeValue(stream, value);
+    } finally {
+      stringTable.remove();
+    }
+  }
+
+  /** Adds the strings that {@link #writeValue} refers to when writing {@code value}. */
+  private static void collectStrings(Object value, Map<String, Integer> strings) {
+    if (value instanceof String) {
+      addString((String) value, strings);
+    } else if (value instanceof DocumentReference) {
+      addString(getAppName((DocumentReference) value), strings);
+      addString(((DocumentReference) value).getPath(), strings);
+    } else if (value instanceof Map) {
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        collectStrings(entry.getKey(), strings);
+        collectStrings(entry.getValue(), strings);
+      }
+    } else if (value instanceof List) {
+      for (Object element : (List<?>) value) {
+        collectStrings(element, strings);
+      }
+    }
+  }
+
+  private static void addString(String string, Map<String, Integer> strings) {
+    if (!strings.containsKey(string)) {
+      strings.put(string, strings.size());
+    }
+  }
+
+  /** Writes {@code list} as a packed array if it is long and only holds integers or doubles. */
+  private boolean writePackedList(ByteArrayOutputStream stream, List<?> list) {
+    final int size = list.size();
+    if (size < MIN_PACKED_LIST_SIZE) {
+      return false;
+    }
+    final Object first = list.get(0);
+    if (first instanceof Long || first instanceof Integer) {
+      final long[] values = new long[size];
+      for (int i = 0; i < size; i++) {
+        final Object element = list.get(i);
+        if (!(element instanceof Long || element instanceof Integer)) {
+          return false;
+        }
+        values[i] = ((Number) element).longValue();
+      }
+      stream.write(PACKED_LIST);
+      super.writeValue(stream, values);
+      return true;
+    }
+    if (first instanceof Double) {
+      final double[] values = new double[size];
+      for (int i = 0; i < size; i++) {
+        final Object element = list.get(i);
+        if (!(element instanceof Double)) {
+          return false;
+        }
+        values[i] = (Double) element;
+      }
+      stream.write(PACKED_LIST);
+      super.writeValue(stream, values);
+      return true;
+    }
+    return false;
+  }
+
   private Object[] toArray(Object source) {
     if (source instanceof List) {
       return ((List) source).toArray();
@@ -0,0 +1,161 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.firebase.cloudfirestore;
+
+import android.util.Log;
+import android.util.SparseArray;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks on a bounded pool of background threads, in submission order for each key.
+ *
+ * <p>Only the oldest waiting task of a key is handed to the pool, and the thread running it goes on
+ * with the next task of the same key. Tasks of one key therefore never run concurrently, and the
+ * pool's queue holds at most one task per key. Tasks never run on the submitting thread.
+ *
+ * <p>An executor created with a per-key capacity keeps at most that many waiting tasks for each
+ * key. When a key falls behind, its oldest waiting task is dropped for the new one, so a slow key
+ * skips to its newest tasks without holding back the submitting thread or the other keys.
+ */
+class OrderedExecutor implements Executor {
+  private static final long KEEP_ALIVE_SECONDS = 30;
+
+  private final ThreadPoolExecutor pool;
+  private final int maxWaitingTasksPerKey;
+  private final SparseArray<ArrayDeque<Runnable>> waitingTasks = new SparseArray<>();
+  private int queueDepth;
+  private int maxQueueDepth;
+  private long completedTaskCount;
+  private long droppedTaskCount;
+
+  /** Creates an executor that keeps at most {@code maxWaitingTasksPerKey} waiting tasks per key. */
+  OrderedExecutor(final String name, int threads, int maxWaitingTasksPerKey) {
+    if (maxWaitingTasksPerKey < 1) {
+      throw new IllegalArgumentException("maxWaitingTasksPerKey must be positive");
+    }
+    this.maxWaitingTasksPerKey = maxWaitingTasksPerKey;
+    pool =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+              private int count;
+
+              @Override
+              public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, name + "-" + count++);
+              }
+            });
+    pool.allowCoreThreadTimeOut(true);
+  }
+
+  /** Creates an executor that never drops tasks, for tasks that must all run. */
+  OrderedExecutor(String name, int threads) {
+    this(name, threads, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Runs {@code task} after the tasks previously submitted with the same {@code key}, dropping the
+   * oldest of them that still waits if the key is at capacity.
+   */
+  void execute(int key, Runnable task) {
+    synchronized (this) {
+      onQueued();
+      ArrayDeque<Runnable> waiting = waitingTasks.get(key);
+      if (waiting != null) {
+        if (waiting.size() == maxWaitingTasksPerKey) {
+          waiting.poll();
+          queueDepth--;
+          droppedTaskCount++;
+        }
+        waiting.add(task);
+        return;
+      }
+      waitingTasks.put(key, new ArrayDeque<Runnable>());
+    }
+    pool.execute(new KeyedTask(key, task));
+  }
+
+  /** Runs {@code task} without ordering it against other tasks. */
+  @Override
+  public void execute(final Runnable task) {
+    synchronized (this) {
+      onQueued();
+    }
+    pool.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            runTask(task);
+          }
+        });
+  }
+
+  /** Counters describing the backlog of the executor, sent to Dart as a map. */
+  synchronized Map<String, Object> getMetrics() {
+    Map<String, Object> metrics = new HashMap<>();
+    metrics.put("queueDepth", queueDepth);
+    metrics.put("maxQueueDepth", maxQueueDepth);
+    metrics.put("activeThreadCount", pool.getActiveCount());
+    metrics.put("completedTaskCount", completedTaskCount);
+    metrics.put("droppedTaskCount", droppedTaskCount);
+    return metrics;
+  }
+
+  private void onQueued() {
+    queueDepth++;
+    maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+  }
+
+  private void runTask(Runnable task) {
+    synchronized (this) {
+      queueDepth--;
+    }
+    try {
+      task.run();
+    } catch (RuntimeException e) {
+      // Keep running the later tasks of the key.
+      Log.e(CloudFirestorePlugin.TAG, "Background task failed", e);
+    } finally {
+      synchronized (this) {
+        completedTaskCount++;
+      }
+    }
+  }
+
+  private class KeyedTask implements Runnable {
+    private final int key;
+    private Runnable task;
+
+    KeyedTask(int key, Runnable task) {
+      this.key = key;
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      while (task != null) {
+        runTask(task);
+        synchronized (OrderedExecutor.this) {
+          ArrayDeque<Runnable> waiting = waitingTasks.get(key);
+          task = waiting.poll();
+          if (task == null) {
+            waitingTasks.remove(key);
+          }
+        }
+      }
+    }
+  }
+}
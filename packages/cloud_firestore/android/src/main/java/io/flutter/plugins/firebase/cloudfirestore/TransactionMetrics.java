@@ -0,0 +1,45 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.firebase.cloudfirestore;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** Latency and retry counters of the transactions run since the plugin was registered. */
+class TransactionMetrics {
+  private long transactionCount;
+  private long failedTransactionCount;
+  private long retryCount;
+  private long totalLatencyMicros;
+  private long maxLatencyMicros;
+
+  /**
+   * Records a finished transaction.
+   *
+   * @param latencyNanos the time from the start of the transaction to its commit or failure.
+   * @param attempts the number of times the SDK ran the transaction function.
+   */
+  synchronized void record(long latencyNanos, int attempts, boolean succeeded) {
+    final long latencyMicros = latencyNanos / 1000;
+    transactionCount++;
+    if (!succeeded) {
+      failedTransactionCount++;
+    }
+    retryCount += Math.max(0, attempts - 1);
+    totalLatencyMicros += latencyMicros;
+    maxLatencyMicros = Math.max(maxLatencyMicros, latencyMicros);
+  }
+
+  /** The counters, sent to Dart as a map. */
+  synchronized Map<String, Object> toMap() {
+    Map<String, Object> metrics = new HashMap<>();
+    metrics.put("transactionCount", transactionCount);
+    metrics.put("failedTransactionCount", failedTransactionCount);
+    metrics.put("retryCount", retryCount);
+    metrics.put("totalLatencyMicros", totalLatencyMicros);
+    metrics.put("maxLatencyMicros", maxLatencyMicros);
+    return metrics;
+  }
+}
@@ -18,6 +18,7 @@ import 'package:meta/meta.dart';
 import 'src/utils/push_id_generator.dart';
 
 part 'src/blob.dart';
+part 'src/bulk_write.dart';
 part 'src/collection_reference.dart';
 part 'src/document_change.dart';
 part 'src/document_reference.dart';
@@ -28,7 +29,10 @@ part 'src/firestore_message_codec.dart';
 part 'src/geo_point.dart';
 part 'src/query.dart';
 part 'src/query_snapshot.dart';
+part 'src/serialization_metrics.dart';
 part 'src/snapshot_metadata.dart';
+part 'src/source.dart';
 part 'src/timestamp.dart';
 part 'src/transaction.dart';
+part 'src/transaction_metrics.dart';
 part 'src/write_batch.dart';
@@ -0,0 +1,72 @@
+// Copyright 2019, the Chromium project authors.  Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+part of cloud_firestore;
+
+/// A write operation of [Firestore.bulkWrite].
+class BulkWriteOperation {
+  /// Writes [data] to [document], replacing it unless [merge] is true.
+  BulkWriteOperation.set(DocumentReference document, Map<String, dynamic> data,
+      {bool merge = false})
+      : _data = <String, dynamic>{
+          'type': 'set',
+          'path': document.path,
+          'data': data,
+          'merge': merge,
+        };
+
+  /// Updates the fields of [document] with [data].
+  BulkWriteOperation.update(
+      DocumentReference document, Map<String, dynamic> data)
+      : _data = <String, dynamic>{
+          'type': 'update',
+          'path': document.path,
+          'data': data,
+        };
+
+  /// Deletes [document].
+  BulkWriteOperation.delete(DocumentReference document)
+      : _data = <String, dynamic>{
+          'type': 'delete',
+          'path': document.path,
+        };
+
+  final Map<String, dynamic> _data;
+}
+
+/// The progress of [Firestore.bulkWrite], sent after each batch.
+class BulkWriteProgress {
+  BulkWriteProgress._(Map<dynamic, dynamic> data)
+      : committedOperations = data['committedOperations'],
+        failedOperations = data['failedOperations'],
+        totalOperations = data['totalOperations'],
+        committedBatches = data['committedBatches'],
+        failedBatches = data['failedBatches'],
+        totalBatches = data['totalBatches'],
+        error = data['error'];
+
+  /// The number of operations in the batches committed so far.
+  final int committedOperations;
+
+  /// The number of operations in the batches that failed so far.
+  final int failedOperations;
+
+  /// The number of operations to write.
+  final int totalOperations;
+
+  /// The number of batches committed so far.
+  final int committedBatches;
+
+  /// The number of batches that failed so far.
+  final int failedBatches;
+
+  /// The number of batches the operations were split into.
+  final int totalBatches;
+
+  /// The error of the batch that just failed, or null if it was committed.
+  final String error;
+
+  /// Whether every batch was committed or failed.
+  bool get isDone => committedBatches + failedBatches == totalBatches;
+}
@@ -35,6 +35,9 @@ class DocumentChange {
           return type.toString() == data['type'];
         });
 
+  DocumentChange._fromDocument(this.type, this.oldIndex, this.newIndex,
+      this.document, this._firestore);
+
   final Firestore _firestore;
 
   /// The type of change that occurred (added, modified, or removed).
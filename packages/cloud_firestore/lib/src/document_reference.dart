@@ -77,21 +77,49 @@ class DocumentReference {
   /// Reads the document referenced by this [DocumentReference].
   ///
   /// If no document exists, the read will return null.
-  Future<DocumentSnapshot> get() async {
+  Future<DocumentSnapshot> get({Source source = Source.serverAndCache}) async {
+    assert(source != null);
     // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
     // https://github.com/flutter/flutter/issues/26431
     // ignore: strong_mode_implicit_dynamic_method
     final Map<dynamic, dynamic> data = await Firestore.channel.invokeMethod(
       'DocumentReference#get',
-      <String, dynamic>{'app': firestore.app.name, 'path': path},
+      <String, dynamic>{
+        'app': firestore.app.name,
+        'path': path,
+        'source': _getSourceString(source),
+      },
     );
     return DocumentSnapshot._(
       data['path'],
       _asStringKeyedMap(data['data']),
-      Firestore.instance,
+      firestore,
     );
   }
 
+  /// Reads the document referenced by this [DocumentReference] from the local
+  /// cache and from the server at the same time.
+  ///
+  /// The returned stream sends the cached snapshot as soon as it is read, and
+  /// then the server snapshot before it closes. The cached snapshot is skipped
+  /// if the document isn't cached or the server snapshot is read first. The
+  /// stream closes with an error if the server can't be reached, after the
+  /// cached snapshot.
+  ///
+  /// Only available on Android.
+  Stream<DocumentSnapshot> getFromCacheThenServer() {
+    return Firestore._readCacheThenServer(
+      'DocumentReference#getCacheThenServer',
+      <String, dynamic>{'app': firestore.app.name, 'path': path},
+    ).map<DocumentSnapshot>((dynamic data) {
+      return DocumentSnapshot._(
+        data['path'],
+        _asStringKeyedMap(data['data']),
+        firestore,
+      );
+    });
+  }
+
   /// Deletes the document referred to by this [DocumentReference].
   Future<void> delete() {
     // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
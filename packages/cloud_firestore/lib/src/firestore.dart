@@ -12,8 +12,27 @@ class Firestore {
     if (_initialized) return;
     channel.setMethodCallHandler((MethodCall call) async {
       if (call.method == 'QuerySnapshot') {
-        final QuerySnapshot snapshot = QuerySnapshot._(call.arguments, this);
-        _queryObservers[call.arguments['handle']].add(snapshot);
+        final List<dynamic> handles = call.arguments['handles'];
+        if (handles != null) {
+          // One snapshot shared by every listener of the same query.
+          final QuerySnapshot snapshot = QuerySnapshot._(call.arguments, this);
+          for (int handle in handles) {
+            _queryObservers[handle]?.add(snapshot);
+          }
+          return;
+        }
+        final int handle = call.arguments['handle'];
+        QuerySnapshot snapshot;
+        if (call.arguments['sequence'] != null) {
+          snapshot = _incrementalQueries
+              .putIfAbsent(
+                  handle, () => _IncrementalQuerySnapshots(handle, this))
+              .apply(call.arguments);
+          if (snapshot == null) return;
+        } else {
+          snapshot = QuerySnapshot._(call.arguments, this);
+        }
+        _queryObservers[handle].add(snapshot);
       } else if (call.method == 'DocumentSnapshot') {
         final DocumentSnapshot snapshot = DocumentSnapshot._(
           call.arguments['path'],
@@ -50,6 +69,9 @@ class Firestore {
   static final Map<int, StreamController<QuerySnapshot>> _queryObservers =
       <int, StreamController<QuerySnapshot>>{};
 
+  static final Map<int, _IncrementalQuerySnapshots> _incrementalQueries =
+      <int, _IncrementalQuerySnapshots>{};
+
   static final Map<int, StreamController<DocumentSnapshot>> _documentObservers =
       <int, StreamController<DocumentSnapshot>>{};
 
@@ -57,6 +79,19 @@ class Firestore {
       <int, TransactionHandler>{};
   static int _transactionHandlerId = 0;
 
+  /// Invokes [method], which starts a read from the cache and the server, and
+  /// returns the events of its snapshots.
+  static Stream<dynamic> _readCacheThenServer(
+      String method, Map<String, dynamic> arguments) async* {
+    // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+    // https://github.com/flutter/flutter/issues/26431
+    // ignore: strong_mode_implicit_dynamic_method
+    final int handle = await channel.invokeMethod(method, arguments);
+    final EventChannel snapshots =
+        EventChannel('${channel.name}/cacheThenServer/$handle', channel.codec);
+    yield* snapshots.receiveBroadcastStream();
+  }
+
   @override
   bool operator ==(dynamic o) => o is Firestore && o.app == app;
 
@@ -82,6 +117,72 @@ class Firestore {
   /// preferable when you don’t need to condition your writes on read data.
   WriteBatch batch() => WriteBatch._(this);
 
+  /// Writes [operations] as consecutive batches of at most [batchSize]
+  /// operations, committing at most [maxConcurrentBatches] batches at a time.
+  ///
+  /// The operations are sent to the platform at once, unlike the operations of
+  /// a [WriteBatch]. Each batch is atomic, but the batches are not: a batch
+  /// that fails to commit is reported in the progress and the others are still
+  /// committed. The writes start when the returned stream is listened to, and
+  /// the stream sends the progress after each batch. Cancelling the
+  /// subscription skips the batches that have not started.
+  ///
+  /// Only available on Android.
+  Stream<BulkWriteProgress> bulkWrite(List<BulkWriteOperation> operations,
+      {int batchSize = 500, int maxConcurrentBatches = 2}) async* {
+    assert(operations != null);
+    assert(batchSize > 0 && batchSize <= 500);
+    assert(maxConcurrentBatches > 0);
+    // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+    // https://github.com/flutter/flutter/issues/26431
+    // ignore: strong_mode_implicit_dynamic_method
+    final int handle = await channel.invokeMethod(
+      'Firestore#bulkWrite',
+      <String, dynamic>{
+        'app': app.name,
+        'operations': operations
+            .map((BulkWriteOperation operation) => operation._data)
+            .toList(),
+        'batchSize': batchSize,
+        'maxConcurrentBatches': maxConcurrentBatches,
+      },
+    );
+    final EventChannel progress =
+        EventChannel('${channel.name}/bulkWrite/$handle', channel.codec);
+    yield* progress.receiveBroadcastStream().map<BulkWriteProgress>(
+        (dynamic event) => BulkWriteProgress._(event));
+  }
+
+  /// Reads the documents at [paths] with a single platform call.
+  ///
+  /// The documents are read concurrently from [source] and returned in the
+  /// order of [paths]. A document that doesn't exist is returned as a
+  /// snapshot without data. The call fails if any read fails.
+  ///
+  /// Only available on Android.
+  Future<List<DocumentSnapshot>> getDocumentsByPaths(List<String> paths,
+      {Source source = Source.serverAndCache}) async {
+    assert(paths != null);
+    // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+    // https://github.com/flutter/flutter/issues/26431
+    // ignore: strong_mode_implicit_dynamic_method
+    final List<dynamic> documents = await channel.invokeMethod(
+      'Firestore#getDocumentsByPaths',
+      <String, dynamic>{
+        'app': app.name,
+        'paths': paths,
+        'source': _getSourceString(source),
+      },
+    );
+    return documents.map<DocumentSnapshot>((dynamic document) {
+      return DocumentSnapshot._(
+        document['path'],
+        _asStringKeyedMap(document['data']),
+        this,
+      );
+    }).toList();
+  }
+
   /// Executes the given TransactionHandler and then attempts to commit the
   /// changes applied within an atomic transaction.
   ///
@@ -122,6 +223,18 @@ class Firestore {
     return result?.cast<String, dynamic>() ?? <String, dynamic>{};
   }
 
+  /// Gets the latency and retry counters of the transactions run so far.
+  ///
+  /// Only available on Android.
+  Future<TransactionMetrics> transactionMetrics() async {
+    // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+    // https://github.com/flutter/flutter/issues/26431
+    // ignore: strong_mode_implicit_dynamic_method
+    final Map<dynamic, dynamic> data =
+        await channel.invokeMethod('Firestore#transactionMetrics');
+    return TransactionMetrics._(data);
+  }
+
   @deprecated
   Future<void> enablePersistence(bool enable) async {
     assert(enable != null);
@@ -150,4 +263,37 @@ class Firestore {
       'timestampsInSnapshotsEnabled': timestampsInSnapshotsEnabled,
     });
   }
+
+  /// Sets whether the platform sends snapshots with a compact encoding.
+  ///
+  /// The compact encoding writes each distinct string of a snapshot, such as
+  /// field names and document paths, once and refers to it by index. It also
+  /// packs long lists of integers or doubles into typed arrays. The decoded
+  /// snapshots are the same as without it. This applies to every [Firestore]
+  /// instance.
+  ///
+  /// Only available on Android.
+  static Future<void> setCompactEncodingEnabled(bool enabled) async {
+    assert(enabled != null);
+    // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+    // https://github.com/flutter/flutter/issues/26431
+    // ignore: strong_mode_implicit_dynamic_method
+    await channel.invokeMethod(
+      'Firestore#setCompactEncoding',
+      <String, dynamic>{'enabled': enabled},
+    );
+  }
+
+  /// Gets the counters of the executor that serializes snapshots off the
+  /// platform thread.
+  ///
+  /// Only available on Android.
+  Future<SerializationMetrics> serializationMetrics() async {
+    // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+    // https://github.com/flutter/flutter/issues/26431
+    // ignore: strong_mode_implicit_dynamic_method
+    final Map<dynamic, dynamic> data =
+        await channel.invokeMethod('Firestore#serializationMetrics');
+    return SerializationMetrics._(data);
+  }
 }
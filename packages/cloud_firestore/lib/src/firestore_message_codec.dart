@@ -17,6 +17,16 @@ class FirestoreMessageCodec extends StandardMessageCodec {
   static const int _kDelete = 134;
   static const int _kServerTimestamp = 135;
   static const int _kTimestamp = 136;
+  static const int _kCompact = 137;
+  static const int _kStringReference = 138;
+  static const int _kCompactDocumentReference = 139;
+  static const int _kPackedList = 140;
+
+  // The string tables of the compact values being read, innermost last.
+  //
+  // Compact values are only written by the platform, see
+  // [Firestore.setCompactEncodingEnabled].
+  static final List<List<String>> _stringTables = <List<String>>[];
 
   static const Map<FieldValueType, int> _kFieldValueCodes =
       <FieldValueType, int>{
@@ -94,8 +104,32 @@ class FirestoreMessageCodec extends StandardMessageCodec {
         return FieldValue.delete();
       case _kServerTimestamp:
         return FieldValue.serverTimestamp();
+      case _kCompact:
+        final List<String> strings =
+            List<String>.generate(readSize(buffer), (int index) {
+          return utf8.decoder.convert(buffer.getUint8List(readSize(buffer)));
+        });
+        return _readWithStringTable(buffer, strings);
+      case _kStringReference:
+        return _stringTables.last[readSize(buffer)];
+      case _kCompactDocumentReference:
+        final List<String> strings = _stringTables.last;
+        final FirebaseApp app = FirebaseApp(name: strings[readSize(buffer)]);
+        return Firestore(app: app).document(strings[readSize(buffer)]);
+      case _kPackedList:
+        final List<dynamic> values = readValue(buffer);
+        return List<dynamic>.from(values);
       default:
         return super.readValueOfType(type, buffer);
     }
   }
+
+  dynamic _readWithStringTable(ReadBuffer buffer, List<String> strings) {
+    _stringTables.add(strings);
+    try {
+      return readValue(buffer);
+    } finally {
+      _stringTables.removeLast();
+    }
+  }
 }
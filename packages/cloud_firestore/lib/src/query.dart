@@ -45,25 +45,44 @@ class Query {
   }
 
   /// Notifies of query results at this location
+  ///
+  /// If [incremental] is true, the platform sends the documents only with the
+  /// first snapshot and the document changes after that, which is much less to
+  /// encode for large result sets that change a few documents at a time. The
+  /// snapshots are rebuilt from the changes, so they are the same as without
+  /// [incremental].
+  ///
+  /// If [coalescingWindow] is set, at most one snapshot is delivered per
+  /// window. Snapshots that arrive sooner are merged: the latest documents are
+  /// delivered with the document changes of all of them, in order. A window of
+  /// 16 milliseconds delivers at most one snapshot per frame. Only supported
+  /// on Android.
   // TODO(jackson): Reduce code duplication with [DocumentReference]
-  Stream<QuerySnapshot> snapshots() {
+  Stream<QuerySnapshot> snapshots(
+      {bool incremental = false, Duration coalescingWindow}) {
     Future<int> _handle;
     // It's fine to let the StreamController be garbage collected once all the
     // subscribers have cancelled; this analyzer warning is safe to ignore.
     StreamController<QuerySnapshot> controller; // ignore: close_sinks
     controller = StreamController<QuerySnapshot>.broadcast(
       onListen: () {
+        final Map<String, dynamic> arguments = <String, dynamic>{
+          'app': firestore.app.name,
+          'path': _path,
+          'parameters': _parameters,
+        };
+        if (incremental) {
+          arguments['incremental'] = true;
+        }
+        if (coalescingWindow != null) {
+          arguments['coalescingWindowMillis'] = coalescingWindow.inMilliseconds;
+        }
         // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
         // https://github.com/flutter/flutter/issues/26431
         // ignore: strong_mode_implicit_dynamic_method
-        _handle = Firestore.channel.invokeMethod(
-          'Query#addSnapshotListener',
-          <String, dynamic>{
-            'app': firestore.app.name,
-            'path': _path,
-            'parameters': _parameters,
-          },
-        ).then<int>((dynamic result) => result);
+        _handle = Firestore.channel
+            .invokeMethod('Query#addSnapshotListener', arguments)
+            .then<int>((dynamic result) => result);
         _handle.then((int handle) {
           Firestore._queryObservers[handle] = controller;
         });
@@ -78,6 +97,7 @@ class Query {
             <String, dynamic>{'handle': handle},
           );
           Firestore._queryObservers.remove(handle);
+          Firestore._incrementalQueries.remove(handle);
         });
       },
     );
@@ -85,7 +105,9 @@ class Query {
   }
 
   /// Fetch the documents for this query
-  Future<QuerySnapshot> getDocuments() async {
+  Future<QuerySnapshot> getDocuments(
+      {Source source = Source.serverAndCache}) async {
+    assert(source != null);
     // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
     // https://github.com/flutter/flutter/issues/26431
     // ignore: strong_mode_implicit_dynamic_method
@@ -95,11 +117,117 @@ class Query {
         'app': firestore.app.name,
         'path': _path,
         'parameters': _parameters,
+        'source': _getSourceString(source),
       },
     );
     return QuerySnapshot._(data, firestore);
   }
 
+  /// Fetches the documents for this query from the local cache and from the
+  /// server at the same time.
+  ///
+  /// The returned stream sends the cached snapshot as soon as it is read, and
+  /// then the server snapshot before it closes. The cached snapshot is skipped
+  /// if it can't be read or the server snapshot is read first. The stream
+  /// closes with an error if the server can't be reached, after the cached
+  /// snapshot.
+  ///
+  /// Only available on Android.
+  Stream<QuerySnapshot> getDocumentsFromCacheThenServer() {
+    return Firestore._readCacheThenServer(
+      'Query#getDocumentsCacheThenServer',
+      <String, dynamic>{
+        'app': firestore.app.name,
+        'path': _path,
+        'parameters': _parameters,
+      },
+    ).map<QuerySnapshot>((dynamic data) => QuerySnapshot._(data, firestore));
+  }
+
+  /// Fetches the documents for this query in chunks of at most [chunkSize]
+  /// documents.
+  ///
+  /// The platform reads the next chunk only once the previous one was
+  /// delivered and the subscription is not paused, so large results are never
+  /// held in memory at once. The limit of this query, if any, caps the total
+  /// number of documents.
+  ///
+  /// Only available on Android.
+  Stream<List<DocumentSnapshot>> getDocumentsInChunks({int chunkSize = 100}) {
+    assert(chunkSize > 0);
+    Future<int> _handle;
+    StreamSubscription<dynamic> chunks;
+    bool chunkWanted = false;
+    void requestChunk(int handle) {
+      // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+      // https://github.com/flutter/flutter/issues/26431
+      // ignore: strong_mode_implicit_dynamic_method
+      Firestore.channel.invokeMethod(
+        'Query#requestDocumentChunk',
+        <String, dynamic>{'handle': handle},
+      );
+    }
+
+    StreamController<List<DocumentSnapshot>> controller; // ignore: close_sinks
+    // Chunks are delivered synchronously so that a listener that pauses while
+    // handling a chunk holds back the request for the next one.
+    controller = StreamController<List<DocumentSnapshot>>(
+      sync: true,
+      onListen: () {
+        // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+        // https://github.com/flutter/flutter/issues/26431
+        // ignore: strong_mode_implicit_dynamic_method
+        _handle = Firestore.channel.invokeMethod(
+          'Query#getDocumentsInChunks',
+          <String, dynamic>{
+            'app': firestore.app.name,
+            'path': _path,
+            'parameters': _parameters,
+            'chunkSize': chunkSize,
+          },
+        ).then<int>((dynamic result) => result);
+        _handle.then((int handle) {
+          final EventChannel channel = EventChannel(
+            '${Firestore.channel.name}/documentChunks/$handle',
+            Firestore.channel.codec,
+          );
+          chunks = channel.receiveBroadcastStream().listen(
+            (dynamic data) {
+              controller.add(List<DocumentSnapshot>.generate(
+                  data['documents'].length, (int index) {
+                return DocumentSnapshot._(
+                  data['paths'][index],
+                  _asStringKeyedMap(data['documents'][index]),
+                  firestore,
+                );
+              }));
+              if (controller.isPaused) {
+                chunkWanted = true;
+              } else {
+                requestChunk(handle);
+              }
+            },
+            onError: (dynamic error) {
+              controller.addError(error);
+              controller.close();
+            },
+            onDone: controller.close,
+          );
+        });
+      },
+      onResume: () {
+        if (chunkWanted) {
+          chunkWanted = false;
+          _handle.then(requestChunk);
+        }
+      },
+      onCancel: () {
+        return _handle.then((_) => chunks?.cancel());
+      },
+    );
+    return controller.stream;
+  }
+
   /// Obtains a CollectionReference corresponding to this query's location.
   CollectionReference reference() =>
       CollectionReference._(firestore, _pathComponents);
@@ -23,6 +23,9 @@ class QuerySnapshot {
           );
         });
 
+  QuerySnapshot._fromDocuments(
+      this.documents, this.documentChanges, this._firestore);
+
   /// Gets a list of all the documents included in this snapshot
   final List<DocumentSnapshot> documents;
 
@@ -32,3 +35,77 @@ class QuerySnapshot {
 
   final Firestore _firestore;
 }
+
+/// Rebuilds the snapshots of an incremental query listener.
+///
+/// The platform sends the documents once, and then only the document changes
+/// of each snapshot, numbered by `sequence`. Changes are applied in order to
+/// the previous documents. If an event is missed, the platform is asked once
+/// to resend the documents and the changes are dropped until they arrive.
+class _IncrementalQuerySnapshots {
+  _IncrementalQuerySnapshots(this._handle, this._firestore);
+
+  final int _handle;
+  final Firestore _firestore;
+  List<DocumentSnapshot> _documents;
+  int _nextSequence = 0;
+  bool _resyncRequested = false;
+
+  /// Returns the snapshot described by [data], or null if it cannot be applied
+  /// to the previous documents.
+  QuerySnapshot apply(Map<dynamic, dynamic> data) {
+    final int sequence = data['sequence'];
+    if (data['full'] == true) {
+      final bool first = _documents == null;
+      _documents = List<DocumentSnapshot>.unmodifiable(
+          List<DocumentSnapshot>.generate(data['documents'].length,
+              (int index) {
+        return DocumentSnapshot._(
+          data['paths'][index],
+          _asStringKeyedMap(data['documents'][index]),
+          _firestore,
+        );
+      }));
+      _nextSequence = sequence + 1;
+      _resyncRequested = false;
+      // After a resync the changes since the last applied event are unknown.
+      final List<DocumentChange> changes = first
+          ? List<DocumentChange>.generate(_documents.length, (int index) {
+              return DocumentChange._fromDocument(DocumentChangeType.added,
+                  -1, index, _documents[index], _firestore);
+            })
+          : <DocumentChange>[];
+      return QuerySnapshot._fromDocuments(_documents, changes, _firestore);
+    }
+    if (_documents == null || sequence != _nextSequence) {
+      if (!_resyncRequested) {
+        _resyncRequested = true;
+        // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+        // https://github.com/flutter/flutter/issues/26431
+        // ignore: strong_mode_implicit_dynamic_method
+        Firestore.channel.invokeMethod(
+          'Query#resyncSnapshotListener',
+          <String, dynamic>{'handle': _handle},
+        );
+      }
+      return null;
+    }
+    _nextSequence++;
+    final List<DocumentSnapshot> documents =
+        List<DocumentSnapshot>.from(_documents);
+    final List<DocumentChange> changes = List<DocumentChange>.generate(
+        data['documentChanges'].length, (int index) {
+      return DocumentChange._(data['documentChanges'][index], _firestore);
+    });
+    for (DocumentChange change in changes) {
+      if (change.oldIndex != -1) {
+        documents.removeAt(change.oldIndex);
+      }
+      if (change.newIndex != -1) {
+        documents.insert(change.newIndex, change.document);
+      }
+    }
+    _documents = List<DocumentSnapshot>.unmodifiable(documents);
+    return QuerySnapshot._fromDocuments(_documents, changes, _firestore);
+  }
+}
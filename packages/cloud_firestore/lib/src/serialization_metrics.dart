@@ -0,0 +1,35 @@
+// Copyright 2019, the Chromium project authors.  Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+part of cloud_firestore;
+
+/// Counters of the background executor that converts and encodes snapshots on
+/// the platform side.
+class SerializationMetrics {
+  SerializationMetrics._(Map<dynamic, dynamic> data)
+      : queueDepth = data['queueDepth'],
+        maxQueueDepth = data['maxQueueDepth'],
+        activeThreadCount = data['activeThreadCount'],
+        completedTaskCount = data['completedTaskCount'],
+        droppedTaskCount = data['droppedTaskCount'];
+
+  /// The number of snapshots waiting to be serialized.
+  final int queueDepth;
+
+  /// The largest [queueDepth] since the app started.
+  final int maxQueueDepth;
+
+  /// The number of threads serializing snapshots right now.
+  final int activeThreadCount;
+
+  /// The number of snapshots serialized since the app started.
+  final int completedTaskCount;
+
+  /// The number of snapshots skipped because their listener already had as
+  /// many snapshots waiting as the executor keeps per listener.
+  ///
+  /// Incremental listeners request the documents again after a skipped
+  /// snapshot.
+  final int droppedTaskCount;
+}
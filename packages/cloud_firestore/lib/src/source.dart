@@ -0,0 +1,32 @@
+// Copyright 2019, the Chromium project authors.  Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+part of cloud_firestore;
+
+/// Where a read gets its data from.
+enum Source {
+  /// Reads from the server when it can be reached and falls back to the local
+  /// cache otherwise.
+  serverAndCache,
+
+  /// Reads only from the server, failing when it can't be reached.
+  server,
+
+  /// Reads only from the local cache, failing when the data isn't cached.
+  cache,
+}
+
+/// Converts [Source] to [String].
+String _getSourceString(Source source) {
+  assert(source != null);
+  switch (source) {
+    case Source.server:
+      return 'server';
+    case Source.cache:
+      return 'cache';
+    case Source.serverAndCache:
+    default:
+      return 'default';
+  }
+}
@@ -0,0 +1,37 @@
+// Copyright 2019, the Chromium project authors.  Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+part of cloud_firestore;
+
+/// Latency and retry counters of the transactions run since the app started.
+class TransactionMetrics {
+  TransactionMetrics._(Map<dynamic, dynamic> data)
+      : transactionCount = data['transactionCount'],
+        failedTransactionCount = data['failedTransactionCount'],
+        retryCount = data['retryCount'],
+        totalLatency = Duration(microseconds: data['totalLatencyMicros']),
+        maxLatency = Duration(microseconds: data['maxLatencyMicros']);
+
+  /// The number of transactions that committed or failed.
+  final int transactionCount;
+
+  /// The number of transactions that failed.
+  final int failedTransactionCount;
+
+  /// The number of times transactions were run again because of contention.
+  final int retryCount;
+
+  /// The time spent in all transactions, from their start to their commit or
+  /// failure.
+  final Duration totalLatency;
+
+  /// The time spent in the longest transaction.
+  final Duration maxLatency;
+
+  /// The average time spent in a transaction.
+  Duration get averageLatency => transactionCount == 0
+      ? Duration.zero
+      : Duration(
+          microseconds: totalLatency.inMicroseconds ~/ transactionCount);
+}
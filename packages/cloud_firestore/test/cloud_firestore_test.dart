@@ -3,6 +3,7 @@
 // found in the LICENSE file.
 
 import 'dart:async';
+import 'dart:convert';
 import 'dart:typed_data';
 
 import 'package:cloud_firestore/cloud_firestore.dart';
@@ -43,6 +44,10 @@ void main() {
         switch (methodCall.method) {
           case 'Query#addSnapshotListener':
             final int handle = mockHandleId++;
+            if (methodCall.arguments['incremental'] == true) {
+              // Incremental tests send their own events.
+              return handle;
+            }
             // Wait before sending a message back.
             // Otherwise the first request didn't have the time to finish.
             Future<void>.delayed(Duration.zero).then<void>((_) {
@@ -131,6 +136,31 @@ void main() {
             return null;
           case 'WriteBatch#create':
             return 1;
+          case 'Firestore#transactionMetrics':
+            return <String, dynamic>{
+              'transactionCount': 4,
+              'failedTransactionCount': 1,
+              'retryCount': 3,
+              'totalLatencyMicros': 2000,
+              'maxLatencyMicros': 900,
+            };
+          case 'Firestore#getDocumentsByPaths':
+            return methodCall.arguments['paths']
+                .map((dynamic path) => <String, dynamic>{
+                      'path': path,
+                      'data': path == 'foo/notExists'
+                          ? null
+                          : <String, dynamic>{'path': path},
+                    })
+                .toList();
+          case 'Firestore#serializationMetrics':
+            return <String, dynamic>{
+              'queueDepth': 3,
+              'maxQueueDepth': 12,
+              'activeThreadCount': 2,
+              'completedTaskCount': 140,
+              'droppedTaskCount': 1,
+            };
           default:
             return null;
         }
@@ -144,6 +174,42 @@ void main() {
       expect(firestore, equals(Firestore(app: app)));
     });
 
+    test('serializationMetrics', () async {
+      final SerializationMetrics metrics =
+          await firestore.serializationMetrics();
+      expect(log, <Matcher>[
+        isMethodCall('Firestore#serializationMetrics', arguments: null),
+      ]);
+      expect(metrics.queueDepth, 3);
+      expect(metrics.maxQueueDepth, 12);
+      expect(metrics.activeThreadCount, 2);
+      expect(metrics.completedTaskCount, 140);
+      expect(metrics.droppedTaskCount, 1);
+    });
+
+    test('getDocumentsByPaths', () async {
+      final List<DocumentSnapshot> snapshots = await firestore
+          .getDocumentsByPaths(<String>['foo/bar', 'foo/notExists', 'foo/baz'],
+              source: Source.cache);
+      expect(log, <Matcher>[
+        isMethodCall(
+          'Firestore#getDocumentsByPaths',
+          arguments: <String, dynamic>{
+            'app': app.name,
+            'paths': <String>['foo/bar', 'foo/notExists', 'foo/baz'],
+            'source': 'cache',
+          },
+        ),
+      ]);
+      expect(
+        snapshots.map((DocumentSnapshot snapshot) => snapshot.documentID),
+        <String>['bar', 'notExists', 'baz'],
+      );
+      expect(snapshots[0].data, <String, dynamic>{'path': 'foo/bar'});
+      expect(snapshots[1].exists, isFalse);
+      expect(snapshots[2].reference.path, 'foo/baz');
+    });
+
     group('Transaction', () {
       test('runTransaction', () async {
         final Map<String, dynamic> result = await firestore.runTransaction(
@@ -160,6 +226,18 @@ void main() {
         expect(result, equals(<String, dynamic>{'1': 3}));
       });
 
+      test('transactionMetrics', () async {
+        final TransactionMetrics metrics = await firestore.transactionMetrics();
+        expect(log, <Matcher>[
+          isMethodCall('Firestore#transactionMetrics', arguments: null),
+        ]);
+        expect(metrics.transactionCount, 4);
+        expect(metrics.failedTransactionCount, 1);
+        expect(metrics.retryCount, 3);
+        expect(metrics.maxLatency, const Duration(microseconds: 900));
+        expect(metrics.averageLatency, const Duration(microseconds: 500));
+      });
+
       test('get', () async {
         final DocumentReference documentReference =
             firestore.document('foo/bar');
@@ -210,6 +288,7 @@ void main() {
           isMethodCall('DocumentReference#get', arguments: <String, dynamic>{
             'app': app.name,
             'path': 'foo/bar',
+            'source': 'default',
           }),
           isMethodCall('Transaction#set', arguments: <String, dynamic>{
             'app': app.name,
@@ -231,6 +310,7 @@ void main() {
           isMethodCall('DocumentReference#get', arguments: <String, dynamic>{
             'app': app.name,
             'path': 'foo/bar',
+            'source': 'default',
           }),
           isMethodCall('Transaction#set', arguments: <String, dynamic>{
             'app': app.name,
@@ -298,6 +378,32 @@ void main() {
           ),
         ]);
       });
+      test('listen with coalescingWindow', () async {
+        final QuerySnapshot snapshot = await collectionReference
+            .snapshots(coalescingWindow: const Duration(milliseconds: 16))
+            .first;
+        expect(snapshot.documents.single.documentID, equals('0'));
+        // Flush the async removeListener call
+        await Future<void>.delayed(Duration.zero);
+        expect(log, <Matcher>[
+          isMethodCall(
+            'Query#addSnapshotListener',
+            arguments: <String, dynamic>{
+              'app': app.name,
+              'path': 'foo',
+              'parameters': <String, dynamic>{
+                'where': <List<dynamic>>[],
+                'orderBy': <List<dynamic>>[],
+              },
+              'coalescingWindowMillis': 16,
+            },
+          ),
+          isMethodCall(
+            'Query#removeListener',
+            arguments: <String, dynamic>{'handle': 0},
+          ),
+        ]);
+      });
       test('where', () async {
         final StreamSubscription<QuerySnapshot> subscription =
             collectionReference
@@ -501,6 +607,7 @@ void main() {
               arguments: <String, dynamic>{
                 'app': app.name,
                 'path': 'foo/bar',
+                'source': 'default',
               },
             ),
           ]),
@@ -521,6 +628,56 @@ void main() {
           expect(e.code, equals('UNKNOWN_PATH'));
         }
       });
+      test('getFromCacheThenServer', () async {
+        const String snapshotChannelName =
+            'plugins.flutter.io/cloud_firestore/cacheThenServer/3';
+        void sendSnapshot(String value) {
+          BinaryMessages.handlePlatformMessage(
+            snapshotChannelName,
+            Firestore.channel.codec.encodeSuccessEnvelope(<String, dynamic>{
+              'path': 'foo/bar',
+              'data': <String, dynamic>{'key1': value},
+            }),
+            (_) {},
+          );
+        }
+
+        Firestore.channel.setMockMethodCallHandler((MethodCall call) async {
+          log.add(call);
+          return 3;
+        });
+        MethodChannel(snapshotChannelName, Firestore.channel.codec)
+            .setMockMethodCallHandler((MethodCall call) async {
+          log.add(call);
+          if (call.method == 'listen') {
+            Future<void>.delayed(Duration.zero).then<void>((_) {
+              sendSnapshot('cached');
+              sendSnapshot('fresh');
+              BinaryMessages.handlePlatformMessage(
+                  snapshotChannelName, null, (_) {});
+            });
+          }
+          return null;
+        });
+
+        final List<DocumentSnapshot> snapshots = await collectionReference
+            .document('bar')
+            .getFromCacheThenServer()
+            .toList();
+        expect(
+          snapshots.map((DocumentSnapshot snapshot) => snapshot['key1']),
+          <String>['cached', 'fresh'],
+        );
+        expect(snapshots.last.reference.path, 'foo/bar');
+        expect(
+          log.first,
+          isMethodCall(
+            'DocumentReference#getCacheThenServer',
+            arguments: <String, dynamic>{'app': app.name, 'path': 'foo/bar'},
+          ),
+        );
+        expect(log[1], isMethodCall('listen', arguments: null));
+      });
       test('collection', () async {
         final CollectionReference colRef =
             collectionReference.document('bar').collection('baz');
@@ -545,6 +702,7 @@ void main() {
                     'where': <List<dynamic>>[],
                     'orderBy': <List<dynamic>>[],
                   },
+                  'source': 'default',
                 },
               ),
             ],
@@ -554,6 +712,333 @@ void main() {
         expect(document.reference.path, equals('foo/0'));
         expect(document.data, equals(kMockDocumentSnapshotData));
       });
+
+      test('getDocuments from cache', () async {
+        await collectionReference.getDocuments(source: Source.cache);
+        await collectionReference.getDocuments(source: Source.server);
+        expect(
+          log.map((MethodCall call) => call.arguments['source']),
+          <String>['cache', 'server'],
+        );
+      });
+
+      group('getDocumentsInChunks', () {
+        const String chunkChannelName =
+            'plugins.flutter.io/cloud_firestore/documentChunks/0';
+        final List<List<String>> pages = <List<String>>[
+          <String>['foo/0', 'foo/1'],
+          <String>['foo/2'],
+        ];
+        int sentPages;
+
+        void sendPage() {
+          final ByteData message = sentPages < pages.length
+              ? Firestore.channel.codec.encodeSuccessEnvelope(<String, dynamic>{
+                  'paths': pages[sentPages],
+                  'documents': pages[sentPages]
+                      .map((String path) => kMockDocumentSnapshotData)
+                      .toList(),
+                })
+              : null;
+          sentPages++;
+          BinaryMessages.handlePlatformMessage(
+              chunkChannelName, message, (_) {});
+        }
+
+        setUp(() {
+          sentPages = 0;
+          Firestore.channel.setMockMethodCallHandler((MethodCall call) async {
+            log.add(call);
+            if (call.method == 'Query#getDocumentsInChunks') {
+              return 0;
+            } else if (call.method == 'Query#requestDocumentChunk') {
+              Future<void>.delayed(Duration.zero).then<void>((_) => sendPage());
+            }
+            return null;
+          });
+          MethodChannel(chunkChannelName, Firestore.channel.codec)
+              .setMockMethodCallHandler((MethodCall call) async {
+            log.add(call);
+            if (call.method == 'listen') {
+              // The first chunk is read as soon as the stream is listened to.
+              Future<void>.delayed(Duration.zero).then<void>((_) => sendPage());
+            }
+          });
+        });
+
+        test('delivers every chunk', () async {
+          final List<List<DocumentSnapshot>> chunks = await collectionReference
+              .getDocumentsInChunks(chunkSize: 2)
+              .toList();
+
+          expect(chunks, hasLength(2));
+          expect(
+            chunks[0].map((DocumentSnapshot document) => document.documentID),
+            <String>['0', '1'],
+          );
+          expect(chunks[1].single.reference.path, 'foo/2');
+          expect(chunks[1].single.data, kMockDocumentSnapshotData);
+          expect(
+            log.first,
+            isMethodCall(
+              'Query#getDocumentsInChunks',
+              arguments: <String, dynamic>{
+                'app': app.name,
+                'path': 'foo',
+                'parameters': <String, dynamic>{
+                  'where': <List<dynamic>>[],
+                  'orderBy': <List<dynamic>>[],
+                },
+                'chunkSize': 2,
+              },
+            ),
+          );
+          expect(
+            log.where((MethodCall call) =>
+                call.method == 'Query#requestDocumentChunk'),
+            hasLength(2),
+          );
+        });
+
+        test('does not request chunks while paused', () async {
+          final List<List<DocumentSnapshot>> chunks =
+              <List<DocumentSnapshot>>[];
+          final Completer<void> done = Completer<void>();
+          StreamSubscription<List<DocumentSnapshot>> subscription;
+          subscription = collectionReference
+              .getDocumentsInChunks(chunkSize: 2)
+              .listen((List<DocumentSnapshot> chunk) {
+            chunks.add(chunk);
+            if (chunks.length == 1) {
+              subscription.pause();
+            }
+          }, onDone: done.complete);
+          for (int i = 0; i < 5; i++) {
+            await Future<void>.delayed(Duration.zero);
+          }
+
+          expect(chunks, hasLength(1));
+          expect(
+            log.where((MethodCall call) =>
+                call.method == 'Query#requestDocumentChunk'),
+            isEmpty,
+          );
+
+          subscription.resume();
+          await done.future;
+          expect(chunks, hasLength(2));
+        });
+      });
+    });
+
+    group('incremental snapshots', () {
+      const int documentCount = 1000;
+      final List<String> paths = List<String>.generate(
+          documentCount, (int index) => 'foo/$index');
+      final List<Map<String, dynamic>> documents =
+          List<Map<String, dynamic>>.generate(documentCount, (int index) {
+        return <String, dynamic>{'index': index, 'title': 'Document $index'};
+      });
+      final List<Map<String, dynamic>> documentChanges = <Map<String, dynamic>>[
+        <String, dynamic>{
+          'type': 'DocumentChangeType.removed',
+          'oldIndex': 0,
+          'newIndex': -1,
+          'path': paths[0],
+          'document': documents[0],
+        },
+        <String, dynamic>{
+          'type': 'DocumentChangeType.modified',
+          'oldIndex': 4,
+          'newIndex': 4,
+          'path': paths[5],
+          'document': <String, dynamic>{'index': 5, 'title': 'Modified'},
+        },
+        <String, dynamic>{
+          'type': 'DocumentChangeType.added',
+          'oldIndex': -1,
+          'newIndex': documentCount - 1,
+          'path': 'foo/new',
+          'document': <String, dynamic>{'index': -1, 'title': 'New'},
+        },
+      ];
+
+      ByteData encodeQuerySnapshot(Map<String, dynamic> arguments) {
+        return Firestore.channel.codec
+            .encodeMethodCall(MethodCall('QuerySnapshot', arguments));
+      }
+
+      Future<void> sendQuerySnapshot(Map<String, dynamic> arguments) {
+        return BinaryMessages.handlePlatformMessage(
+          Firestore.channel.name,
+          encodeQuerySnapshot(arguments),
+          (_) {},
+        );
+      }
+
+      test('rebuild snapshots from document changes', () async {
+        final List<QuerySnapshot> snapshots = <QuerySnapshot>[];
+        final StreamSubscription<QuerySnapshot> subscription =
+            collectionReference
+                .snapshots(incremental: true)
+                .listen(snapshots.add);
+        await Future<void>.delayed(Duration.zero);
+        await sendQuerySnapshot(<String, dynamic>{
+          'handle': 0,
+          'sequence': 0,
+          'full': true,
+          'paths': paths,
+          'documents': documents,
+        });
+        await sendQuerySnapshot(<String, dynamic>{
+          'handle': 0,
+          'sequence': 1,
+          'documentChanges': documentChanges,
+        });
+        await subscription.cancel();
+        await Future<void>.delayed(Duration.zero);
+
+        expect(log.first.arguments['incremental'], isTrue);
+        expect(snapshots, hasLength(2));
+        expect(snapshots[0].documents, hasLength(documentCount));
+        expect(snapshots[0].documentChanges, hasLength(documentCount));
+        expect(snapshots[0].documentChanges[7].type, DocumentChangeType.added);
+        expect(snapshots[0].documentChanges[7].newIndex, 7);
+        final List<DocumentSnapshot> rebuilt = snapshots[1].documents;
+        expect(rebuilt, hasLength(documentCount));
+        expect(rebuilt.first.documentID, '1');
+        expect(rebuilt[4].data['title'], 'Modified');
+        expect(rebuilt.last.documentID, 'new');
+        expect(snapshots[1].documentChanges, hasLength(3));
+      });
+
+      test('request documents after a missed event', () async {
+        final List<QuerySnapshot> snapshots = <QuerySnapshot>[];
+        final StreamSubscription<QuerySnapshot> subscription =
+            collectionReference
+                .snapshots(incremental: true)
+                .listen(snapshots.add);
+        await Future<void>.delayed(Duration.zero);
+        await sendQuerySnapshot(<String, dynamic>{
+          'handle': 0,
+          'sequence': 0,
+          'full': true,
+          'paths': paths,
+          'documents': documents,
+        });
+        for (int sequence = 2; sequence < 4; sequence++) {
+          await sendQuerySnapshot(<String, dynamic>{
+            'handle': 0,
+            'sequence': sequence,
+            'documentChanges': documentChanges,
+          });
+        }
+        await sendQuerySnapshot(<String, dynamic>{
+          'handle': 0,
+          'sequence': 4,
+          'full': true,
+          'paths': paths,
+          'documents': documents,
+        });
+        await subscription.cancel();
+        await Future<void>.delayed(Duration.zero);
+
+        expect(snapshots, hasLength(2));
+        expect(snapshots[1].documents, hasLength(documentCount));
+        expect(snapshots[1].documentChanges, isEmpty);
+        expect(
+          log.where((MethodCall call) =>
+              call.method == 'Query#resyncSnapshotListener'),
+          <Matcher>[
+            isMethodCall(
+              'Query#resyncSnapshotListener',
+              arguments: <String, dynamic>{'handle': 0},
+            ),
+          ],
+        );
+      });
+
+      test('encode fewer bytes per event than equivalent full snapshots',
+          () async {
+        final List<String> changedPaths = List<String>.from(paths)
+          ..removeAt(0)
+          ..add('foo/new');
+        final List<Map<String, dynamic>> changedDocuments =
+            List<Map<String, dynamic>>.from(documents)
+              ..removeAt(0)
+              ..[4] = documentChanges[1]['document']
+              ..add(documentChanges[2]['document']);
+        final Map<String, dynamic> incremental = <String, dynamic>{
+          'handle': 0,
+          'sequence': 1,
+          'documentChanges': documentChanges,
+        };
+        final Map<String, dynamic> full = <String, dynamic>{
+          'handle': 0,
+          'sequence': 2,
+          'full': true,
+          'paths': changedPaths,
+          'documents': changedDocuments,
+        };
+        final List<QuerySnapshot> snapshots = <QuerySnapshot>[];
+        final StreamSubscription<QuerySnapshot> subscription =
+            collectionReference
+                .snapshots(incremental: true)
+                .listen(snapshots.add);
+        await Future<void>.delayed(Duration.zero);
+        await sendQuerySnapshot(<String, dynamic>{
+          'handle': 0,
+          'sequence': 0,
+          'full': true,
+          'paths': paths,
+          'documents': documents,
+        });
+        await sendQuerySnapshot(incremental);
+        await sendQuerySnapshot(full);
+        await subscription.cancel();
+        await Future<void>.delayed(Duration.zero);
+
+        // Both payloads describe the same documents.
+        expect(snapshots, hasLength(3));
+        final List<DocumentSnapshot> fromChanges = snapshots[1].documents;
+        final List<DocumentSnapshot> fromDocuments = snapshots[2].documents;
+        expect(fromChanges, hasLength(fromDocuments.length));
+        for (int i = 0; i < fromDocuments.length; i++) {
+          expect(fromChanges[i].reference.path,
+              fromDocuments[i].reference.path);
+          expect(fromChanges[i].data, fromDocuments[i].data);
+        }
+        expect(encodeQuerySnapshot(incremental).lengthInBytes,
+            lessThan(encodeQuerySnapshot(full).lengthInBytes ~/ 50));
+      });
+
+      test('deliver one shared snapshot to every listed handle', () async {
+        final List<QuerySnapshot> first = <QuerySnapshot>[];
+        final List<QuerySnapshot> second = <QuerySnapshot>[];
+        final StreamSubscription<QuerySnapshot> firstSubscription =
+            collectionReference.snapshots().listen(first.add);
+        final StreamSubscription<QuerySnapshot> secondSubscription =
+            collectionReference.snapshots().listen(second.add);
+        // Let each listener receive its own first snapshot.
+        for (int i = 0; i < 5; i++) {
+          await Future<void>.delayed(Duration.zero);
+        }
+        await sendQuerySnapshot(<String, dynamic>{
+          'handles': <int>[0, 1, 7],
+          'paths': paths,
+          'documents': documents,
+          'documentChanges': documentChanges,
+        });
+        await firstSubscription.cancel();
+        await secondSubscription.cancel();
+        await Future<void>.delayed(Duration.zero);
+
+        expect(first, hasLength(2));
+        expect(second, hasLength(2));
+        expect(first.last, same(second.last));
+        expect(first.last.documents, hasLength(documentCount));
+        expect(first.last.documentChanges, hasLength(3));
+      });
     });
 
     group('FirestoreMessageCodec', () {
@@ -588,6 +1073,60 @@ void main() {
         _checkEncodeDecode<dynamic>(codec, FieldValue.delete());
         _checkEncodeDecode<dynamic>(codec, FieldValue.serverTimestamp());
       });
+
+      test('decode compact values', () {
+        const FirestoreMessageCodec firestoreCodec = FirestoreMessageCodec();
+        final WriteBuffer buffer = WriteBuffer();
+        void writeStringReference(int index) {
+          buffer.putUint8(138);
+          firestoreCodec.writeSize(buffer, index);
+        }
+
+        const List<String> strings = <String>[
+          'documents',
+          'title',
+          'a',
+          'scores',
+          'ref',
+          'testApp',
+          'foo/bar',
+        ];
+        buffer.putUint8(137);
+        firestoreCodec.writeSize(buffer, strings.length);
+        for (String string in strings) {
+          final List<int> bytes = utf8.encode(string);
+          firestoreCodec.writeSize(buffer, bytes.length);
+          buffer.putUint8List(bytes);
+        }
+        // {'documents': [{'title': 'a', 'scores': [0..7]}, {'ref': foo/bar}]}
+        buffer.putUint8(13);
+        firestoreCodec.writeSize(buffer, 1);
+        writeStringReference(0);
+        buffer.putUint8(12);
+        firestoreCodec.writeSize(buffer, 2);
+        buffer.putUint8(13);
+        firestoreCodec.writeSize(buffer, 2);
+        writeStringReference(1);
+        writeStringReference(2);
+        writeStringReference(3);
+        buffer.putUint8(140);
+        firestoreCodec.writeValue(
+            buffer, Int64List.fromList(List<int>.generate(8, (int i) => i)));
+        buffer.putUint8(13);
+        firestoreCodec.writeSize(buffer, 1);
+        writeStringReference(4);
+        buffer.putUint8(139);
+        firestoreCodec.writeSize(buffer, 5);
+        firestoreCodec.writeSize(buffer, 6);
+
+        final Map<dynamic, dynamic> decoded =
+            codec.decodeMessage(buffer.done());
+        final List<dynamic> documents = decoded['documents'];
+        expect(documents[0]['title'], 'a');
+        expect(documents[0]['scores'], <int>[0, 1, 2, 3, 4, 5, 6, 7]);
+        expect(documents[0]['scores'], isNot(isInstanceOf<Int64List>()));
+        expect(documents[1]['ref'], firestore.document('foo/bar'));
+      });
     });
 
     group('Timestamp', () {
@@ -790,6 +1329,98 @@ void main() {
         );
       });
     });
+
+    group('bulkWrite', () {
+      const String progressChannelName =
+          'plugins.flutter.io/cloud_firestore/bulkWrite/7';
+
+      void sendProgress(int committedBatches) {
+        BinaryMessages.handlePlatformMessage(
+          progressChannelName,
+          Firestore.channel.codec.encodeSuccessEnvelope(<String, dynamic>{
+            'committedOperations': committedBatches * 500,
+            'failedOperations': 0,
+            'totalOperations': 1200,
+            'committedBatches': committedBatches,
+            'failedBatches': 0,
+            'totalBatches': 3,
+            'error': null,
+          }),
+          (_) {},
+        );
+      }
+
+      setUp(() {
+        Firestore.channel.setMockMethodCallHandler((MethodCall call) async {
+          log.add(call);
+          return 7;
+        });
+        MethodChannel(progressChannelName, Firestore.channel.codec)
+            .setMockMethodCallHandler((MethodCall call) async {
+          log.add(call);
+          if (call.method == 'listen') {
+            Future<void>.delayed(Duration.zero).then<void>((_) {
+              for (int batch = 1; batch <= 3; batch++) {
+                sendProgress(batch);
+              }
+              BinaryMessages.handlePlatformMessage(
+                  progressChannelName, null, (_) {});
+            });
+          }
+        });
+      });
+
+      test('sends operations and streams progress', () async {
+        final List<BulkWriteProgress> progress = await firestore
+            .bulkWrite(<BulkWriteOperation>[
+              BulkWriteOperation.set(
+                collectionReference.document('a'),
+                <String, dynamic>{'value': 1},
+                merge: true,
+              ),
+              BulkWriteOperation.update(
+                collectionReference.document('b'),
+                <String, dynamic>{'value': 2},
+              ),
+              BulkWriteOperation.delete(collectionReference.document('c')),
+            ], maxConcurrentBatches: 3)
+            .toList();
+
+        expect(
+          log.first,
+          isMethodCall(
+            'Firestore#bulkWrite',
+            arguments: <String, dynamic>{
+              'app': app.name,
+              'operations': <Map<String, dynamic>>[
+                <String, dynamic>{
+                  'type': 'set',
+                  'path': 'foo/a',
+                  'data': <String, dynamic>{'value': 1},
+                  'merge': true,
+                },
+                <String, dynamic>{
+                  'type': 'update',
+                  'path': 'foo/b',
+                  'data': <String, dynamic>{'value': 2},
+                },
+                <String, dynamic>{
+                  'type': 'delete',
+                  'path': 'foo/c',
+                },
+              ],
+              'batchSize': 500,
+              'maxConcurrentBatches': 3,
+            },
+          ),
+        );
+        expect(progress, hasLength(3));
+        expect(progress[1].committedOperations, 1000);
+        expect(progress[1].isDone, isFalse);
+        expect(progress.last.committedBatches, 3);
+        expect(progress.last.isDone, isTrue);
+      });
+    });
   });
 }
 
@@ -0,0 +1,149 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.firebase.database;
+
+import com.google.firebase.database.DataSnapshot;
+import io.flutter.plugin.common.MethodCodec;
+import io.flutter.plugin.common.StandardMessageCodec;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes snapshot values straight from a {@link DataSnapshot} into the message, without building
+ * the nested maps and lists of {@link DataSnapshot#getValue()} first.
+ *
+ * <p>The written value decodes to what {@code getValue()} would have produced, including its
+ * conversion of children with integer keys to a list. Only standard types are written, so Dart
+ * reads it with the standard codec.
+ */
+final class DatabaseMessageCodec extends StandardMessageCodec {
+  public static final DatabaseMessageCodec INSTANCE = new DatabaseMessageCodec();
+  // Type bytes of the standard codec.
+  private static final byte LIST = 12;
+  private static final byte MAP = 13;
+
+  /**
+   * The value of a snapshot, optionally projected.
+   *
+   * <p>Children deeper than {@code maxDepth} levels are written as {@code true}, like shallow REST
+   * reads do. When {@code fields} is set, only those children of the snapshot are written.
+   */
+  static final class SnapshotValue {
+    final DataSnapshot snapshot;
+    final int maxDepth;
+    final Set<String> fields;
+
+    SnapshotValue(DataSnapshot snapshot) {
+      this(snapshot, -1, null);
+    }
+
+    SnapshotValue(DataSnapshot snapshot, int maxDepth, Set<String> fields) {
+      this.snapshot = snapshot;
+      this.maxDepth = maxDepth;
+      this.fields = fields;
+    }
+  }
+
+  /**
+   * The result of a method call, encoded ahead of time so that the platform thread only copies it.
+   *
+   * <p>The bytes keep the alignment of their values only where the result of a success envelope
+   * starts, so an encoded reply must be the whole result passed to {@code Result#success}.
+   */
+  static final class EncodedReply {
+    final byte[] bytes;
+
+    EncodedReply(MethodCodec codec, Object result) {
+      ByteBuffer envelope = codec.encodeSuccessEnvelope(result);
+      envelope.flip();
+      // Skip the success byte, which the envelope of the actual reply writes again.
+      envelope.get();
+      bytes = new byte[envelope.remaining()];
+      envelope.get(bytes);
+    }
+  }
+
+  @Override
+  protected void writeValue(ByteArrayOutputStream stream, Object value) {
+    if (value instanceof EncodedReply) {
+      byte[] bytes = ((EncodedReply) value).bytes;
+      stream.write(bytes, 0, bytes.length);
+    } else if (value instanceof SnapshotValue) {
+      SnapshotValue snapshotValue = (SnapshotValue) value;
+      writeSnapshot(
+          stream, snapshotValue.snapshot, 0, snapshotValue.maxDepth, snapshotValue.fields);
+    } else {
+      super.writeValue(stream, value);
+    }
+  }
+
+  private void writeSnapshot(
+      ByteArrayOutputStream stream,
+      DataSnapshot snapshot,
+      int depth,
+      int maxDepth,
+      Set<String> fields) {
+    if (!snapshot.hasChildren()) {
+      super.writeValue(stream, snapshot.getValue());
+      return;
+    }
+    if (maxDepth >= 0 && depth >= maxDepth) {
+      super.writeValue(stream, true);
+      return;
+    }
+    List<DataSnapshot> children = new ArrayList<>();
+    boolean allIndexKeys = true;
+    int maxIndex = -1;
+    for (DataSnapshot child : snapshot.getChildren()) {
+      if (fields != null && !fields.contains(child.getKey())) {
+        continue;
+      }
+      children.add(child);
+      if (allIndexKeys) {
+        int index = parseIndex(child.getKey());
+        if (index < 0) {
+          allIndexKeys = false;
+        } else {
+          maxIndex = Math.max(maxIndex, index);
+        }
+      }
+    }
+    if (allIndexKeys && !children.isEmpty() && maxIndex < 2 * children.size()) {
+      DataSnapshot[] elements = new DataSnapshot[maxIndex + 1];
+      for (DataSnapshot child : children) {
+        elements[parseIndex(child.getKey())] = child;
+      }
+      stream.write(LIST);
+      writeSize(stream, elements.length);
+      for (DataSnapshot element : elements) {
+        if (element == null) {
+          super.writeValue(stream, null);
+        } else {
+          writeSnapshot(stream, element, depth + 1, maxDepth, null);
+        }
+      }
+    } else {
+      stream.write(MAP);
+      writeSize(stream, children.size());
+      for (DataSnapshot child : children) {
+        super.writeValue(stream, child.getKey());
+        writeSnapshot(stream, child, depth + 1, maxDepth, null);
+      }
+    }
+  }
+
+  /** Returns the index a key stands for in a list value, or -1 if it is not a list index. */
+  private static int parseIndex(String key) {
+    try {
+      int index = Integer.parseInt(key);
+      return index >= 0 && String.valueOf(index).equals(key) ? index : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
@@ -4,8 +4,11 @@
 
 package io.flutter.plugins.firebase.database;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.util.SparseArray;
+import android.view.Choreographer;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.TaskCompletionSource;
 import com.google.android.gms.tasks.Tasks;
@@ -20,14 +23,24 @@ import com.google.firebase.database.MutableData;
 import com.google.firebase.database.Query;
 import com.google.firebase.database.Transaction;
 import com.google.firebase.database.ValueEventListener;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
 import io.flutter.plugin.common.PluginRegistry;
+import io.flutter.plugin.common.StandardMethodCodec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -35,8 +48,16 @@ import java.util.concurrent.TimeoutException;
 public class FirebaseDatabasePlugin implements MethodCallHandler {
 
   private static final String TAG = "FirebaseDatabasePlugin";
+  private static final String CHANNEL_NAME = "plugins.flutter.io/firebase_database";
+  private static final StandardMethodCodec METHOD_CODEC =
+      new StandardMethodCodec(DatabaseMessageCodec.INSTANCE);
 
+  private final BinaryMessenger messenger;
   private final MethodChannel channel;
+  private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+  // Encodes the events of observers in the order they fire, and the replies of transactions.
+  private final ExecutorService encodingExecutor = Executors.newSingleThreadExecutor();
+  private final TransactionMetrics transactionMetrics = new TransactionMetrics();
   private static final String EVENT_TYPE_CHILD_ADDED = "_EventType.childAdded";
   private static final String EVENT_TYPE_CHILD_REMOVED = "_EventType.childRemoved";
   private static final String EVENT_TYPE_CHILD_CHANGED = "_EventType.childChanged";
@@ -49,11 +70,12 @@ public class FirebaseDatabasePlugin implements MethodCallHandler {
 
   public static void registerWith(PluginRegistry.Registrar registrar) {
     final MethodChannel channel =
-        new MethodChannel(registrar.messenger(), "plugins.flutter.io/firebase_database");
-    channel.setMethodCallHandler(new FirebaseDatabasePlugin(channel));
+        new MethodChannel(registrar.messenger(), CHANNEL_NAME, METHOD_CODEC);
+    channel.setMethodCallHandler(new FirebaseDatabasePlugin(registrar.messenger(), channel));
   }
 
-  private FirebaseDatabasePlugin(MethodChannel channel) {
+  private FirebaseDatabasePlugin(BinaryMessenger messenger, MethodChannel channel) {
+    this.messenger = messenger;
     this.channel = channel;
   }
 
@@ -151,6 +173,65 @@ public class FirebaseDatabasePlugin implements MethodCallHandler {
     return query;
   }
 
+  /**
+   * Writes values at many paths below a reference with as few {@code updateChildren} calls as
+   * possible, folded by {@link MultiPathUpdates}, and replies once all of them completed.
+   *
+   * <p>An update is atomic, so when one fails, all of its paths are reported with its error.
+   */
+  private class BulkSet {
+    private final List<Map<String, Object>> updates;
+    private final Map<String, Object> failures = new HashMap<>();
+    private final Result result;
+    private int pendingUpdates;
+
+    BulkSet(List<String> paths, List<Object> values, Result result) {
+      this.result = result;
+      updates = MultiPathUpdates.fold(paths, values);
+    }
+
+    void run(DatabaseReference reference) {
+      pendingUpdates = updates.size();
+      if (pendingUpdates == 0) {
+        reply();
+        return;
+      }
+      for (final Map<String, Object> update : updates) {
+        try {
+          reference.updateChildren(
+              update,
+              new DatabaseReference.CompletionListener() {
+                @Override
+                public void onComplete(DatabaseError error, DatabaseReference ref) {
+                  onUpdateComplete(update, error);
+                }
+              });
+        } catch (DatabaseException e) {
+          // Invalid paths and values are rejected before anything is written.
+          onUpdateComplete(update, DatabaseError.fromException(e));
+        }
+      }
+    }
+
+    private void onUpdateComplete(Map<String, Object> update, DatabaseError error) {
+      if (error != null) {
+        for (String path : update.keySet()) {
+          failures.put(path, asMap(error));
+        }
+      }
+      if (--pendingUpdates == 0) {
+        reply();
+      }
+    }
+
+    private void reply() {
+      Map<String, Object> summary = new HashMap<>();
+      summary.put("updateCount", updates.size());
+      summary.put("failures", failures);
+      result.success(summary);
+    }
+  }
+
   private class DefaultCompletionListener implements DatabaseReference.CompletionListener {
     private final Result result;
 
@@ -168,34 +249,312 @@ public class FirebaseDatabasePlugin implements MethodCallHandler {
     }
   }
 
-  private class EventObserver implements ChildEventListener, ValueEventListener {
-    private String requestedEventType;
-    private int handle;
+  /**
+   * Runs a transaction whose update is computed natively, without waiting for Dart.
+   *
+   * <p>The operation is one of "increment" (adds {@code delta} to a number, or to 0 if there is no
+   * value), "append" (adds {@code value} at the end of a list, or starts one) and "compareAndSet"
+   * (sets {@code field}, or the value itself if there is no field, to {@code value} if it equals
+   * {@code expected}). When the current value doesn't allow the operation, the attempt returns it
+   * unchanged rather than aborting, since the SDK may be running it on a stale or empty cache. The
+   * server then rejects the attempt if the value was stale, and the SDK retries with the actual
+   * value. Dart is told whether the last attempt applied the operation, as "applied".
+   */
+  private class NativeTransactionHandler implements Transaction.Handler {
+    private final Map<String, Object> operation;
+    private final Result result;
+    private final long startNanos = System.nanoTime();
+    // Only updated on the SDK's run loop thread, but read by onComplete on the main thread.
+    private volatile int attempts;
+    private volatile long attemptNanos;
+    private volatile long maxAttemptNanos;
+    private volatile boolean applied;
+
+    NativeTransactionHandler(Map<String, Object> operation, Result result) {
+      this.operation = operation;
+      this.result = result;
+    }
+
+    @Override
+    public Transaction.Result doTransaction(MutableData mutableData) {
+      long attemptStartNanos = System.nanoTime();
+      applied = apply(mutableData);
+      long nanos = System.nanoTime() - attemptStartNanos;
+      attempts++;
+      attemptNanos += nanos;
+      maxAttemptNanos = Math.max(maxAttemptNanos, nanos);
+      return Transaction.success(mutableData);
+    }
+
+    private boolean apply(MutableData mutableData) {
+      switch ((String) operation.get("type")) {
+        case "increment":
+          return increment(mutableData, (Number) operation.get("delta"));
+        case "append":
+          return append(mutableData, operation.get("value"));
+        case "compareAndSet":
+          return compareAndSet(
+              mutableData,
+              (String) operation.get("field"),
+              operation.get("expected"),
+              operation.get("value"));
+        default:
+          throw new IllegalArgumentException("Unknown transaction operation");
+      }
+    }
+
+    private boolean increment(MutableData mutableData, Number delta) {
+      Object current = mutableData.getValue();
+      if (current == null) {
+        current = 0L;
+      } else if (!(current instanceof Number)) {
+        return false;
+      }
+      Number value = (Number) current;
+      if (isIntegral(value) && isIntegral(delta)) {
+        mutableData.setValue(value.longValue() + delta.longValue());
+      } else {
+        mutableData.setValue(value.doubleValue() + delta.doubleValue());
+      }
+      return true;
+    }
+
+    /** Writes the new element as the next index, without rewriting the existing elements. */
+    private boolean append(MutableData mutableData, Object value) {
+      if (!mutableData.hasChildren()) {
+        if (mutableData.getValue() != null) {
+          return false;
+        }
+        mutableData.child("0").setValue(value);
+        return true;
+      }
+      long count = mutableData.getChildrenCount();
+      for (MutableData child : mutableData.getChildren()) {
+        try {
+          long index = Long.parseLong(child.getKey());
+          if (index < 0 || index >= count) {
+            return false;
+          }
+        } catch (NumberFormatException e) {
+          return false;
+        }
+      }
+      mutableData.child(String.valueOf(count)).setValue(value);
+      return true;
+    }
+
+    private boolean compareAndSet(
+        MutableData mutableData, String field, Object expected, Object value) {
+      MutableData target = field == null ? mutableData : mutableData.child(field);
+      if (!valuesEqual(target.getValue(), expected)) {
+        return false;
+      }
+      target.setValue(value);
+      return true;
+    }
+
+    @Override
+    public void onComplete(
+        DatabaseError databaseError, boolean committed, DataSnapshot dataSnapshot) {
+      transactionMetrics.record(
+          attempts,
+          attemptNanos,
+          maxAttemptNanos,
+          System.nanoTime() - startNanos,
+          committed && applied);
+      Map<String, Object> completionMap = new HashMap<>();
+      if (databaseError != null) {
+        completionMap.put("error", asMap(databaseError));
+      }
+      completionMap.put("committed", committed);
+      completionMap.put("applied", applied);
+      if (dataSnapshot != null) {
+        Map<String, Object> snapshotMap = new HashMap<>();
+        snapshotMap.put("key", dataSnapshot.getKey());
+        snapshotMap.put("value", new DatabaseMessageCodec.SnapshotValue(dataSnapshot));
+        completionMap.put("snapshot", snapshotMap);
+      }
+      replyInBackground(result, completionMap);
+    }
+  }
+
+  private static boolean isIntegral(Number number) {
+    return number instanceof Integer || number instanceof Long;
+  }
+
+  /**
+   * Compares a database value with a value from Dart, which may use other number types, including
+   * the numbers nested in maps and lists.
+   */
+  private static boolean valuesEqual(Object current, Object expected) {
+    if (current instanceof Number && expected instanceof Number) {
+      Number a = (Number) current;
+      Number b = (Number) expected;
+      return isIntegral(a) && isIntegral(b)
+          ? a.longValue() == b.longValue()
+          : a.doubleValue() == b.doubleValue();
+    }
+    if (current instanceof Map && expected instanceof Map) {
+      Map<?, ?> a = (Map<?, ?>) current;
+      Map<?, ?> b = (Map<?, ?>) expected;
+      if (a.size() != b.size()) {
+        return false;
+      }
+      for (Map.Entry<?, ?> entry : a.entrySet()) {
+        if (!b.containsKey(entry.getKey())
+            || !valuesEqual(entry.getValue(), b.get(entry.getKey()))) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (current instanceof List && expected instanceof List) {
+      List<?> a = (List<?>) current;
+      List<?> b = (List<?>) expected;
+      if (a.size() != b.size()) {
+        return false;
+      }
+      for (int i = 0; i < a.size(); i++) {
+        if (!valuesEqual(a.get(i), b.get(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return current == null ? expected == null : current.equals(expected);
+  }
 
-    EventObserver(String requestedEventType, int handle) {
-      this.requestedEventType = requestedEventType;
+  /**
+   * Sends the events of one observed query to Dart.
+   *
+   * <p>An observer registered for several child event types is a single SDK listener that routes
+   * all of them, and tags each event with its type.
+   *
+   * <p>Snapshot values are encoded on a background thread, straight from the snapshots, and
+   * projected to {@code maxDepth} levels and the given top-level {@code fields} when these are set.
+   *
+   * <p>When {@code maxBatchSize} is positive, child events are buffered and sent together in one
+   * "Events" call, in the order they fired, on the next frame or once {@code maxBatchSize} events
+   * are buffered, whichever comes first.
+   */
+  private class EventObserver
+      implements ChildEventListener, ValueEventListener, Choreographer.FrameCallback {
+    private final Set<String> requestedEventTypes;
+    private final boolean reportsEventType;
+    private int handle;
+    private final int maxBatchSize;
+    private final int maxDepth;
+    private final Set<String> fields;
+    private final List<Map<String, Object>> pendingEvents = new ArrayList<>();
+
+    EventObserver(
+        Set<String> requestedEventTypes,
+        boolean reportsEventType,
+        int handle,
+        int maxBatchSize,
+        int maxDepth,
+        Set<String> fields) {
+      this.requestedEventTypes = requestedEventTypes;
+      this.reportsEventType = reportsEventType;
       this.handle = handle;
+      this.maxBatchSize = maxBatchSize;
+      this.maxDepth = maxDepth;
+      this.fields = fields;
+    }
+
+    boolean observesValue() {
+      return requestedEventTypes.contains(EVENT_TYPE_VALUE);
     }
 
     private void sendEvent(String eventType, DataSnapshot snapshot, String previousChildName) {
-      if (eventType.equals(requestedEventType)) {
+      if (requestedEventTypes.contains(eventType)) {
         Map<String, Object> arguments = new HashMap<>();
         Map<String, Object> snapshotMap = new HashMap<>();
         snapshotMap.put("key", snapshot.getKey());
-        snapshotMap.put("value", snapshot.getValue());
-        arguments.put("handle", handle);
+        snapshotMap.put(
+            "value", new DatabaseMessageCodec.SnapshotValue(snapshot, maxDepth, fields));
         arguments.put("snapshot", snapshotMap);
         arguments.put("previousSiblingKey", previousChildName);
-        channel.invokeMethod("Event", arguments);
+        if (reportsEventType) {
+          arguments.put("eventType", eventType);
+        }
+        if (maxBatchSize > 0 && !eventType.equals(EVENT_TYPE_VALUE)) {
+          bufferEvent(arguments);
+          return;
+        }
+        arguments.put("handle", handle);
+        invokeMethod("Event", arguments);
+      }
+    }
+
+    /**
+     * Encodes the call on the encoding executor and sends it from the platform thread, unless the
+     * observer was removed in the meantime.
+     */
+    private void invokeMethod(final String method, final Map<String, Object> arguments) {
+      encodingExecutor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              final ByteBuffer message =
+                  METHOD_CODEC.encodeMethodCall(new MethodCall(method, arguments));
+              mainThreadHandler.post(
+                  new Runnable() {
+                    @Override
+                    public void run() {
+                      if (observers.get(handle) == EventObserver.this) {
+                        messenger.send(CHANNEL_NAME, message);
+                      }
+                    }
+                  });
+            }
+          });
+    }
+
+    private void bufferEvent(Map<String, Object> event) {
+      if (pendingEvents.isEmpty()) {
+        Choreographer.getInstance().postFrameCallback(this);
+      }
+      pendingEvents.add(event);
+      if (pendingEvents.size() >= maxBatchSize) {
+        Choreographer.getInstance().removeFrameCallback(this);
+        flush();
+      }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+      flush();
+    }
+
+    private void flush() {
+      if (pendingEvents.isEmpty()) {
+        return;
+      }
+      Map<String, Object> arguments = new HashMap<>();
+      arguments.put("handle", handle);
+      arguments.put("events", new ArrayList<>(pendingEvents));
+      pendingEvents.clear();
+      invokeMethod("Events", arguments);
+    }
+
+    /** Drops the buffered events of an observer that is being removed. */
+    void cancel() {
+      if (!pendingEvents.isEmpty()) {
+        Choreographer.getInstance().removeFrameCallback(this);
+        pendingEvents.clear();
       }
     }
 
     @Override
     public void onCancelled(DatabaseError error) {
+      // Keep the buffered events ahead of the error.
+      Choreographer.getInstance().removeFrameCallback(this);
+      flush();
       Map<String, Object> arguments = new HashMap<>();
       arguments.put("handle", handle);
       arguments.put("error", asMap(error));
-      channel.invokeMethod("Error", arguments);
+      invokeMethod("Error", arguments);
     }
 
     @Override
@@ -309,6 +668,16 @@ public class FirebaseDatabasePlugin implements MethodCallHandler {
           break;
         }
 
+      case "DatabaseReference#bulkSet":
+        {
+          @SuppressWarnings("unchecked")
+          List<String> paths = (List<String>) arguments.get("paths");
+          @SuppressWarnings("unchecked")
+          List<Object> values = (List<Object>) arguments.get("values");
+          new BulkSet(paths, values, result).run(getReference(database, arguments));
+          break;
+        }
+
       case "DatabaseReference#setPriority":
         {
           Object priority = arguments.get("priority");
@@ -403,17 +772,33 @@ public class FirebaseDatabasePlugin implements MethodCallHandler {
                   if (dataSnapshot != null) {
                     Map<String, Object> snapshotMap = new HashMap<>();
                     snapshotMap.put("key", dataSnapshot.getKey());
-                    snapshotMap.put("value", dataSnapshot.getValue());
+                    snapshotMap.put(
+                        "value", new DatabaseMessageCodec.SnapshotValue(dataSnapshot));
                     completionMap.put("snapshot", snapshotMap);
                   }
 
                   // Invoke transaction completion on the Dart side.
-                  result.success(completionMap);
+                  replyInBackground(result, completionMap);
                 }
               });
           break;
         }
 
+      case "DatabaseReference#runNativeTransaction":
+        {
+          @SuppressWarnings("unchecked")
+          Map<String, Object> operation = (Map<String, Object>) arguments.get("operation");
+          getReference(database, arguments)
+              .runTransaction(new NativeTransactionHandler(operation, result));
+          break;
+        }
+
+      case "FirebaseDatabase#transactionMetrics":
+        {
+          result.success(transactionMetrics.toMap());
+          break;
+        }
+
       case "OnDisconnect#set":
         {
           Object value = arguments.get("value");
@@ -466,10 +851,25 @@ public class FirebaseDatabasePlugin implements MethodCallHandler {
       case "Query#observe":
         {
           String eventType = (String) arguments.get("eventType");
+          @SuppressWarnings("unchecked")
+          List<String> eventTypes = (List<String>) arguments.get("eventTypes");
+          Integer maxBatchSize = (Integer) arguments.get("maxBatchSize");
+          Integer maxDepth = (Integer) arguments.get("maxDepth");
+          @SuppressWarnings("unchecked")
+          List<String> fields = (List<String>) arguments.get("fields");
           int handle = nextHandle++;
-          EventObserver observer = new EventObserver(eventType, handle);
+          EventObserver observer =
+              new EventObserver(
+                  eventTypes != null
+                      ? new HashSet<>(eventTypes)
+                      : Collections.singleton(eventType),
+                  eventTypes != null,
+                  handle,
+                  maxBatchSize == null ? 0 : maxBatchSize,
+                  maxDepth == null ? -1 : maxDepth,
+                  fields == null ? null : new HashSet<>(fields));
           observers.put(handle, observer);
-          if (eventType.equals(EVENT_TYPE_VALUE)) {
+          if (observer.observesValue()) {
             getQuery(database, arguments).addValueEventListener(observer);
           } else {
             getQuery(database, arguments).addChildEventListener(observer);
@@ -484,7 +884,8 @@ public class FirebaseDatabasePlugin implements MethodCallHandler {
           int handle = (Integer) arguments.get("handle");
           EventObserver observer = observers.get(handle);
           if (observer != null) {
-            if (observer.requestedEventType.equals(EVENT_TYPE_VALUE)) {
+            observer.cancel();
+            if (observer.observesValue()) {
               query.removeEventListener((ValueEventListener) observer);
             } else {
               query.removeEventListener((ChildEventListener) observer);
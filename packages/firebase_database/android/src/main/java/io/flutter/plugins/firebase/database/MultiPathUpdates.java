@@ -0,0 +1,82 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.firebase.database;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Folds writes at many paths into as few multi-path updates as possible.
+ *
+ * <p>A path joins the first update after the last one with the same path, an ancestor or a
+ * descendant, so that later values still overwrite earlier ones. Usually that makes a single
+ * update. Leading and trailing slashes of the paths are removed.
+ */
+final class MultiPathUpdates {
+  private static class Update {
+    final Map<String, Object> values = new LinkedHashMap<>();
+    // The paths and all their ancestors.
+    final Set<String> coveredPaths = new HashSet<>();
+
+    boolean conflictsWith(String path) {
+      if (coveredPaths.contains(path)) {
+        return true;
+      }
+      for (int i = path.lastIndexOf('/'); i > 0; i = path.lastIndexOf('/', i - 1)) {
+        if (values.containsKey(path.substring(0, i))) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void add(String path, Object value) {
+      values.put(path, value);
+      coveredPaths.add(path);
+      for (int i = path.lastIndexOf('/'); i > 0; i = path.lastIndexOf('/', i - 1)) {
+        coveredPaths.add(path.substring(0, i));
+      }
+    }
+  }
+
+  private MultiPathUpdates() {}
+
+  /** Returns the values of each update, in the order the updates must be applied. */
+  static List<Map<String, Object>> fold(List<String> paths, List<Object> values) {
+    List<Update> updates = new ArrayList<>();
+    for (int i = 0; i < paths.size(); i++) {
+      String path = trimSlashes(paths.get(i));
+      int index = updates.size();
+      while (index > 0 && !updates.get(index - 1).conflictsWith(path)) {
+        index--;
+      }
+      if (index == updates.size()) {
+        updates.add(new Update());
+      }
+      updates.get(index).add(path, values.get(i));
+    }
+    List<Map<String, Object>> folded = new ArrayList<>(updates.size());
+    for (Update update : updates) {
+      folded.add(update.values);
+    }
+    return folded;
+  }
+
+  private static String trimSlashes(String path) {
+    int start = 0;
+    int end = path.length();
+    while (start < end && path.charAt(start) == '/') {
+      start++;
+    }
+    while (end > start && path.charAt(end - 1) == '/') {
+      end--;
+    }
+    return path.substring(start, end);
+  }
+}
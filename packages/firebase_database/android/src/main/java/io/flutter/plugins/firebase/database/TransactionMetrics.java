@@ -0,0 +1,50 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugins.firebase.database;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** Attempt and latency counters of the native transactions run since the plugin was registered. */
+class TransactionMetrics {
+  private long transactionCount;
+  private long uncommittedTransactionCount;
+  private long attemptCount;
+  private long totalAttemptMicros;
+  private long maxAttemptMicros;
+  private long totalLatencyMicros;
+
+  /**
+   * Records a finished transaction.
+   *
+   * @param attempts the number of times the SDK ran the transaction function.
+   * @param attemptNanos the total time spent in the transaction function.
+   * @param maxAttemptNanos the longest single run of the transaction function.
+   * @param latencyNanos the time from the start of the transaction to its completion.
+   */
+  synchronized void record(
+      int attempts, long attemptNanos, long maxAttemptNanos, long latencyNanos, boolean committed) {
+    transactionCount++;
+    if (!committed) {
+      uncommittedTransactionCount++;
+    }
+    attemptCount += attempts;
+    totalAttemptMicros += attemptNanos / 1000;
+    maxAttemptMicros = Math.max(maxAttemptMicros, maxAttemptNanos / 1000);
+    totalLatencyMicros += latencyNanos / 1000;
+  }
+
+  /** The counters, sent to Dart as a map. */
+  synchronized Map<String, Object> toMap() {
+    Map<String, Object> metrics = new HashMap<>();
+    metrics.put("transactionCount", transactionCount);
+    metrics.put("uncommittedTransactionCount", uncommittedTransactionCount);
+    metrics.put("attemptCount", attemptCount);
+    metrics.put("totalAttemptMicros", totalAttemptMicros);
+    metrics.put("maxAttemptMicros", maxAttemptMicros);
+    metrics.put("totalLatencyMicros", totalLatencyMicros);
+    return metrics;
+  }
+}
@@ -0,0 +1,88 @@
+package io.flutter.plugins.firebase.database;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class MultiPathUpdatesTest {
+  private static List<Map<String, Object>> fold(Object... pathsAndValues) {
+    List<String> paths = new ArrayList<>();
+    List<Object> values = new ArrayList<>();
+    for (int i = 0; i < pathsAndValues.length; i += 2) {
+      paths.add((String) pathsAndValues[i]);
+      values.add(pathsAndValues[i + 1]);
+    }
+    return MultiPathUpdates.fold(paths, values);
+  }
+
+  private static Map<String, Object> update(Object... pathsAndValues) {
+    Map<String, Object> update = new LinkedHashMap<>();
+    for (int i = 0; i < pathsAndValues.length; i += 2) {
+      update.put((String) pathsAndValues[i], pathsAndValues[i + 1]);
+    }
+    return update;
+  }
+
+  @Test
+  public void fold_unrelatedPaths_makeOneUpdate() {
+    List<Map<String, Object>> updates = fold("a/x", 1, "b", 2, "a/y", 3);
+
+    assertEquals(Collections.singletonList(update("a/x", 1, "b", 2, "a/y", 3)), updates);
+  }
+
+  @Test
+  public void fold_trimsSlashes() {
+    List<Map<String, Object>> updates = fold("/a/", 1, "b//", 2);
+
+    assertEquals(Collections.singletonList(update("a", 1, "b", 2)), updates);
+  }
+
+  @Test
+  public void fold_samePath_startsANewUpdate() {
+    List<Map<String, Object>> updates = fold("a", 1, "b", 2, "a", 3);
+
+    assertEquals(Arrays.asList(update("a", 1, "b", 2), update("a", 3)), updates);
+  }
+
+  @Test
+  public void fold_descendantOfAnEarlierPath_startsANewUpdate() {
+    List<Map<String, Object>> updates = fold("a", 1, "a/b/c", 2);
+
+    assertEquals(Arrays.asList(update("a", 1), update("a/b/c", 2)), updates);
+  }
+
+  @Test
+  public void fold_ancestorOfAnEarlierPath_startsANewUpdate() {
+    List<Map<String, Object>> updates = fold("a/b/c", 1, "a/b", 2);
+
+    assertEquals(Arrays.asList(update("a/b/c", 1), update("a/b", 2)), updates);
+  }
+
+  @Test
+  public void fold_siblingsWithACommonPrefix_doNotConflict() {
+    List<Map<String, Object>> updates = fold("a/b", 1, "a/bc", 2, "a/c", 3);
+
+    assertEquals(Collections.singletonList(update("a/b", 1, "a/bc", 2, "a/c", 3)), updates);
+  }
+
+  @Test
+  public void fold_joinsTheFirstUpdateAfterTheLastConflict() {
+    // "a" conflicts with the first update only, so it joins the second one, and "b" then
+    // conflicts with nothing and joins the first.
+    List<Map<String, Object>> updates = fold("a/x", 1, "c", 2, "c", 3, "a", 4, "b", 5);
+
+    assertEquals(
+        Arrays.asList(update("a/x", 1, "c", 2, "b", 5), update("c", 3, "a", 4)), updates);
+  }
+
+  @Test
+  public void fold_noPaths_makesNoUpdate() {
+    assertEquals(0, fold().size());
+  }
+}
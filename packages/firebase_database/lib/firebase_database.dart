@@ -17,3 +17,5 @@ part 'src/event.dart';
 part 'src/firebase_database.dart';
 part 'src/query.dart';
 part 'src/on_disconnect.dart';
+part 'src/transaction_metrics.dart';
+part 'src/transaction_operation.dart';
@@ -101,6 +101,35 @@ class DatabaseReference extends Query {
     );
   }
 
+  /// Writes each value of [values] at its key, a path relative to this
+  /// location, with a single platform call.
+  ///
+  /// The writes are folded into as few atomic multi-path updates as possible.
+  /// When the same path, or an ancestor and a descendant, appear more than
+  /// once, the later value is written after the earlier one. The returned
+  /// [Future] completes once every update completed, with the paths whose
+  /// update failed.
+  ///
+  /// Only available on Android.
+  Future<BulkSetResult> bulkSet(Map<String, dynamic> values) async {
+    assert(values != null);
+    assert(values.keys.every((String path) => path.isNotEmpty));
+    // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+    // https://github.com/flutter/flutter/issues/26431
+    // ignore: strong_mode_implicit_dynamic_method
+    final Map<dynamic, dynamic> result = await _database._channel.invokeMethod(
+      'DatabaseReference#bulkSet',
+      <String, dynamic>{
+        'app': _database.app?.name,
+        'databaseURL': _database.databaseURL,
+        'path': path,
+        'paths': values.keys.toList(),
+        'values': values.values.toList(),
+      },
+    );
+    return BulkSetResult._(result);
+  }
+
   /// Sets a priority for the data at this Firebase Database location.
   ///
   /// Priorities can be used to provide a custom ordering for the children at a
@@ -196,6 +225,41 @@ class DatabaseReference extends Query {
     return completer.future;
   }
 
+  /// Performs a transactional update of the data at this Firebase Database
+  /// location, computing the new value on the platform.
+  ///
+  /// Unlike [runTransaction], the platform doesn't wait for Dart to compute
+  /// the update, so retries caused by contention don't go through the
+  /// platform channel.
+  ///
+  /// The result is committed only if the operation was applied to the latest
+  /// value at the location. An attempt on a value that doesn't allow the
+  /// operation writes it back unchanged, so that the server can reject it if
+  /// the local value was stale.
+  ///
+  /// Only available on Android.
+  Future<TransactionResult> runNativeTransaction(
+      TransactionOperation operation) async {
+    assert(operation != null);
+    // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+    // https://github.com/flutter/flutter/issues/26431
+    // ignore: strong_mode_implicit_dynamic_method
+    final Map<dynamic, dynamic> result = await _database._channel.invokeMethod(
+      'DatabaseReference#runNativeTransaction',
+      <String, dynamic>{
+        'app': _database.app?.name,
+        'databaseURL': _database.databaseURL,
+        'path': path,
+        'operation': operation._data,
+      },
+    );
+    return TransactionResult._(
+      result['error'] != null ? DatabaseError._(result['error']) : null,
+      result['committed'] == true && result['applied'] == true,
+      result['snapshot'] != null ? DataSnapshot._(result['snapshot']) : null,
+    );
+  }
+
   OnDisconnect onDisconnect() {
     return OnDisconnect._(_database, this);
   }
@@ -209,6 +273,27 @@ class ServerValue {
 
 typedef Future<MutableData> TransactionHandler(MutableData mutableData);
 
+/// The outcome of [DatabaseReference.bulkSet].
+class BulkSetResult {
+  BulkSetResult._(Map<dynamic, dynamic> data)
+      : updateCount = data['updateCount'],
+        failures = Map<String, DatabaseError>.unmodifiable(
+          data['failures'].map<String, DatabaseError>(
+            (dynamic path, dynamic error) => MapEntry<String, DatabaseError>(
+                path, DatabaseError._(error)),
+          ),
+        );
+
+  /// The number of multi-path updates the writes were folded into.
+  final int updateCount;
+
+  /// The error of each path that wasn't written.
+  final Map<String, DatabaseError> failures;
+
+  /// Whether every path was written.
+  bool get succeeded => failures.isEmpty;
+}
+
 class TransactionResult {
   const TransactionResult._(this.error, this.committed, this.dataSnapshot);
   final DatabaseError error;
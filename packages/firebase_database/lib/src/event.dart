@@ -12,6 +12,23 @@ enum _EventType {
   value,
 }
 
+/// The kinds of child events that can be observed together with
+/// [Query.onChildEvents].
+enum ChildEventType {
+  added,
+  removed,
+  changed,
+  moved,
+}
+
+const Map<ChildEventType, String> _childEventTypeNames =
+    <ChildEventType, String>{
+  ChildEventType.added: '_EventType.childAdded',
+  ChildEventType.removed: '_EventType.childRemoved',
+  ChildEventType.changed: '_EventType.childChanged',
+  ChildEventType.moved: '_EventType.childMoved',
+};
+
 /// `Event` encapsulates a DataSnapshot and possibly also the key of its
 /// previous sibling, which can be used to order the snapshots.
 class Event {
@@ -21,6 +38,14 @@ class Event {
   Map<dynamic, dynamic> _data;
 
   String get previousSiblingKey => _data['previousSiblingKey'];
+
+  /// The kind of child event, for events of [Query.onChildEvents], or null.
+  ChildEventType get type {
+    final String name = _data['eventType'];
+    if (name == null) return null;
+    return _childEventTypeNames.keys.firstWhere(
+        (ChildEventType type) => _childEventTypeNames[type] == name);
+  }
 }
 
 /// A DataSnapshot contains data from a Firebase Database location.
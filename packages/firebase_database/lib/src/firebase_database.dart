@@ -19,6 +19,13 @@ class FirebaseDatabase {
           final Event event = Event._(call.arguments);
           _observers[call.arguments['handle']].add(event);
           return null;
+        case 'Events':
+          final StreamController<Event> observer =
+              _observers[call.arguments['handle']];
+          for (dynamic event in call.arguments['events']) {
+            observer.add(Event._(event));
+          }
+          return null;
         case 'Error':
           final DatabaseError error = DatabaseError._(call.arguments['error']);
           _observers[call.arguments['handle']].addError(error);
@@ -134,6 +141,24 @@ class FirebaseDatabase {
     return result;
   }
 
+  /// Gets the attempt and latency counters of the transactions run with
+  /// [DatabaseReference.runNativeTransaction] so far.
+  ///
+  /// Only available on Android.
+  Future<TransactionMetrics> transactionMetrics() async {
+    // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
+    // https://github.com/flutter/flutter/issues/26431
+    // ignore: strong_mode_implicit_dynamic_method
+    final Map<dynamic, dynamic> data = await _channel.invokeMethod(
+      'FirebaseDatabase#transactionMetrics',
+      <String, dynamic>{
+        'app': app?.name,
+        'databaseURL': databaseURL,
+      },
+    );
+    return TransactionMetrics._(data);
+  }
+
   /// Resumes our connection to the Firebase Database backend after a previous
   /// [goOffline] call.
   Future<void> goOnline() {
@@ -9,17 +9,23 @@ class Query {
   Query._(
       {@required FirebaseDatabase database,
       @required List<String> pathComponents,
-      Map<String, dynamic> parameters})
+      Map<String, dynamic> parameters,
+      Map<String, dynamic> observeOptions})
       : _database = database,
         _pathComponents = pathComponents,
         _parameters = parameters ??
             Map<String, dynamic>.unmodifiable(<String, dynamic>{}),
+        _observeOptions = observeOptions ??
+            Map<String, dynamic>.unmodifiable(<String, dynamic>{}),
         assert(database != null);
 
   final FirebaseDatabase _database;
   final List<String> _pathComponents;
   final Map<String, dynamic> _parameters;
 
+  /// Options of the platform observers that don't change the query itself.
+  final Map<String, dynamic> _observeOptions;
+
   /// Slash-delimited path representing the database location of this query.
   String get path => _pathComponents.join('/');
 
@@ -30,6 +36,18 @@ class Query {
       parameters: Map<String, dynamic>.unmodifiable(
         Map<String, dynamic>.from(_parameters)..addAll(parameters),
       ),
+      observeOptions: _observeOptions,
+    );
+  }
+
+  Query _copyWithObserveOptions(Map<String, dynamic> observeOptions) {
+    return Query._(
+      database: _database,
+      pathComponents: _pathComponents,
+      parameters: _parameters,
+      observeOptions: Map<String, dynamic>.unmodifiable(
+        Map<String, dynamic>.from(_observeOptions)..addAll(observeOptions),
+      ),
     );
   }
 
@@ -41,6 +59,22 @@ class Query {
   }
 
   Stream<Event> _observe(_EventType eventType) {
+    return _observeEvents(
+      <String, dynamic>{'eventType': eventType.toString()},
+    );
+  }
+
+  /// Registers one platform observer for the events described by
+  /// [eventArguments].
+  Stream<Event> _observeEvents(Map<String, dynamic> eventArguments) {
+    final Map<String, dynamic> arguments = <String, dynamic>{
+      'app': _database.app?.name,
+      'databaseURL': _database.databaseURL,
+      'path': path,
+      'parameters': _parameters,
+    }
+      ..addAll(eventArguments)
+      ..addAll(_observeOptions);
     Future<int> _handle;
     // It's fine to let the StreamController be garbage collected once all the
     // subscribers have cancelled; this analyzer warning is safe to ignore.
@@ -50,16 +84,9 @@ class Query {
         // TODO(amirh): remove this on when the invokeMethod update makes it to stable Flutter.
         // https://github.com/flutter/flutter/issues/26431
         // ignore: strong_mode_implicit_dynamic_method
-        _handle = _database._channel.invokeMethod(
-          'Query#observe',
-          <String, dynamic>{
-            'app': _database.app?.name,
-            'databaseURL': _database.databaseURL,
-            'path': path,
-            'parameters': _parameters,
-            'eventType': eventType.toString(),
-          },
-        ).then<int>((dynamic result) => result);
+        _handle = _database._channel
+            .invokeMethod('Query#observe', arguments)
+            .then<int>((dynamic result) => result);
         _handle.then((int handle) {
           FirebaseDatabase._observers[handle] = controller;
         });
@@ -104,6 +131,93 @@ class Query {
   /// Fires when the data at this location is updated. `previousChildKey` is null.
   Stream<Event> get onValue => _observe(_EventType.value);
 
+  /// Fires for the child events of the given [eventTypes], in the order they
+  /// happen. [Event.type] tells which kind of event each one is.
+  ///
+  /// Unlike listening to [onChildAdded], [onChildChanged] and the others
+  /// separately, this registers a single child event listener on the
+  /// platform. Only available on Android; on other platforms one listener is
+  /// registered per event type and their events are merged.
+  Stream<Event> onChildEvents(Set<ChildEventType> eventTypes) {
+    assert(eventTypes != null && eventTypes.isNotEmpty);
+    if (defaultTargetPlatform != TargetPlatform.android) {
+      return _mergeChildEvents(eventTypes);
+    }
+    return _observeEvents(<String, dynamic>{
+      'eventTypes': eventTypes
+          .map((ChildEventType type) => _childEventTypeNames[type])
+          .toList(),
+    });
+  }
+
+  /// Merges the single-type streams of [eventTypes], tagging each event with
+  /// its type.
+  Stream<Event> _mergeChildEvents(Set<ChildEventType> eventTypes) {
+    final List<StreamSubscription<Event>> subscriptions =
+        <StreamSubscription<Event>>[];
+    // It's fine to let the StreamController be garbage collected once all the
+    // subscribers have cancelled; this analyzer warning is safe to ignore.
+    StreamController<Event> controller; // ignore: close_sinks
+    controller = StreamController<Event>.broadcast(
+      onListen: () {
+        for (ChildEventType type in eventTypes) {
+          final String name = _childEventTypeNames[type];
+          final _EventType eventType = _EventType.values
+              .firstWhere((_EventType value) => value.toString() == name);
+          subscriptions.add(_observe(eventType).listen(
+            (Event event) {
+              final Map<dynamic, dynamic> data =
+                  Map<dynamic, dynamic>.from(event._data);
+              data['eventType'] = name;
+              controller.add(Event._(data));
+            },
+            onError: controller.addError,
+          ));
+        }
+      },
+      onCancel: () {
+        for (StreamSubscription<Event> subscription in subscriptions) {
+          subscription.cancel();
+        }
+        subscriptions.clear();
+      },
+    );
+    return controller.stream;
+  }
+
+  /// Create a query whose child events are sent by the platform in batches.
+  ///
+  /// The child events of [onChildAdded], [onChildRemoved], [onChildChanged]
+  /// and [onChildMoved] are buffered natively and sent together on the next
+  /// frame, or as soon as [maxBatchSize] events are buffered. They are still
+  /// delivered one by one and in order, with their `previousSiblingKey`. This
+  /// saves a platform message per child when many children are loaded at
+  /// once. Value events are not batched.
+  ///
+  /// Only available on Android.
+  Query batchChildEvents({int maxBatchSize = 500}) {
+    assert(maxBatchSize > 0);
+    return _copyWithObserveOptions(
+      <String, dynamic>{'maxBatchSize': maxBatchSize},
+    );
+  }
+
+  /// Create a query whose events only carry part of their snapshot values.
+  ///
+  /// Children deeper than [maxDepth] levels below a snapshot are replaced by
+  /// `true`, and when [fields] is given, only those children of a snapshot are
+  /// kept. For a child event, these are the fields of the child. The platform
+  /// skips the rest while encoding the snapshot, so it is never copied.
+  ///
+  /// Only available on Android.
+  Query project({int maxDepth, List<String> fields}) {
+    assert(maxDepth == null || maxDepth > 0);
+    final Map<String, dynamic> options = <String, dynamic>{};
+    if (maxDepth != null) options['maxDepth'] = maxDepth;
+    if (fields != null) options['fields'] = fields;
+    return _copyWithObserveOptions(options);
+  }
+
   /// Create a query constrained to only return child nodes with a value greater
   /// than or equal to the given value, using the given orderBy directive or
   /// priority as default, and optionally only child nodes with a key greater
@@ -0,0 +1,45 @@
+// Copyright 2019, the Flutter project authors.  Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+part of firebase_database;
+
+/// Attempt and latency counters of the transactions run with
+/// [DatabaseReference.runNativeTransaction] since the app started.
+class TransactionMetrics {
+  TransactionMetrics._(Map<dynamic, dynamic> data)
+      : transactionCount = data['transactionCount'],
+        uncommittedTransactionCount = data['uncommittedTransactionCount'],
+        attemptCount = data['attemptCount'],
+        totalAttemptTime = Duration(microseconds: data['totalAttemptMicros']),
+        maxAttemptTime = Duration(microseconds: data['maxAttemptMicros']),
+        totalLatency = Duration(microseconds: data['totalLatencyMicros']);
+
+  /// The number of transactions that completed.
+  final int transactionCount;
+
+  /// The number of transactions that completed without committing.
+  final int uncommittedTransactionCount;
+
+  /// The number of times the transactions computed their update, including
+  /// the retries caused by contention.
+  final int attemptCount;
+
+  /// The time spent computing updates in all attempts.
+  final Duration totalAttemptTime;
+
+  /// The time spent in the longest attempt.
+  final Duration maxAttemptTime;
+
+  /// The time spent in all transactions, from their start to their
+  /// completion.
+  final Duration totalLatency;
+
+  /// The number of attempts beyond the first one of each transaction.
+  int get retryCount => attemptCount - transactionCount;
+
+  /// The average time spent computing an update.
+  Duration get averageAttemptTime => attemptCount == 0
+      ? Duration.zero
+      : Duration(microseconds: totalAttemptTime.inMicroseconds ~/ attemptCount);
+}
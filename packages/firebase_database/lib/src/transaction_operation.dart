@@ -0,0 +1,43 @@
+// Copyright 2019, the Flutter project authors.  Please see the AUTHORS file
+// for details. All rights reserved. Use of this source code is governed by a
+// BSD-style license that can be found in the LICENSE file.
+
+part of firebase_database;
+
+/// An update of [DatabaseReference.runNativeTransaction], computed on the
+/// platform without calling back into Dart.
+class TransactionOperation {
+  /// Adds [delta] to the number at the location, or to 0 if there is no value.
+  ///
+  /// The transaction is not committed if the value isn't a number.
+  TransactionOperation.increment(num delta)
+      : assert(delta != null),
+        _data = <String, dynamic>{'type': 'increment', 'delta': delta};
+
+  /// Adds [value] at the end of the list at the location, or starts a list if
+  /// there is no value.
+  ///
+  /// Only the new element is written. The transaction is not committed if the
+  /// value isn't a list.
+  TransactionOperation.append(dynamic value)
+      : _data = <String, dynamic>{'type': 'append', 'value': value};
+
+  /// Sets [field] of the value at the location to [value] if it equals
+  /// [expected], and otherwise leaves it unchanged and doesn't commit.
+  ///
+  /// The comparison is made against the latest value on the server, even when
+  /// the local cache is empty or stale.
+  ///
+  /// If [field] is null, the value at the location itself is compared and set.
+  /// [field] can be a slash-separated path.
+  TransactionOperation.compareAndSet(dynamic expected, dynamic value,
+      {String field})
+      : _data = <String, dynamic>{
+          'type': 'compareAndSet',
+          'field': field,
+          'expected': expected,
+          'value': value,
+        };
+
+  final Map<String, dynamic> _data;
+}
@@ -6,6 +6,7 @@ import 'dart:async';
 
 import 'package:firebase_core/firebase_core.dart';
 import 'package:firebase_database/firebase_database.dart';
+import 'package:flutter/foundation.dart';
 import 'package:flutter/services.dart';
 import 'package:flutter_test/flutter_test.dart';
 
@@ -75,6 +76,43 @@ void main() {
                 'value': updatedValue,
               }
             };
+          case 'DatabaseReference#runNativeTransaction':
+            if (methodCall.arguments['path'] == 'empty') {
+              // An attempt on an empty cache that the server accepted, because
+              // the location really is empty, without applying the operation.
+              return <String, dynamic>{
+                'error': null,
+                'committed': true,
+                'applied': false,
+                'snapshot': <String, dynamic>{'key': 'empty', 'value': null},
+              };
+            }
+            return <String, dynamic>{
+              'error': null,
+              'committed': true,
+              'applied': true,
+              'snapshot': <String, dynamic>{'key': 'foo', 'value': 8},
+            };
+          case 'DatabaseReference#bulkSet':
+            return <String, dynamic>{
+              'updateCount': 2,
+              'failures': <String, dynamic>{
+                'private/a': <String, dynamic>{
+                  'code': -3,
+                  'message': 'Permission denied',
+                  'details': null,
+                },
+              },
+            };
+          case 'FirebaseDatabase#transactionMetrics':
+            return <String, dynamic>{
+              'transactionCount': 4,
+              'uncommittedTransactionCount': 1,
+              'attemptCount': 7,
+              'totalAttemptMicros': 700,
+              'maxAttemptMicros': 250,
+              'totalLatencyMicros': 90000,
+            };
           default:
             return null;
         }
@@ -82,6 +120,10 @@ void main() {
       log.clear();
     });
 
+    tearDown(() {
+      debugDefaultTargetPlatformOverride = null;
+    });
+
     test('setPersistenceEnabled', () async {
       expect(await database.setPersistenceEnabled(false), true);
       expect(await database.setPersistenceEnabled(true), true);
@@ -173,6 +215,28 @@ void main() {
       );
     });
 
+    test('transactionMetrics', () async {
+      final TransactionMetrics metrics = await database.transactionMetrics();
+      expect(
+        log,
+        <Matcher>[
+          isMethodCall(
+            'FirebaseDatabase#transactionMetrics',
+            arguments: <String, dynamic>{
+              'app': app.name,
+              'databaseURL': databaseURL,
+            },
+          ),
+        ],
+      );
+      expect(metrics.transactionCount, 4);
+      expect(metrics.uncommittedTransactionCount, 1);
+      expect(metrics.retryCount, 3);
+      expect(metrics.maxAttemptTime, const Duration(microseconds: 250));
+      expect(metrics.averageAttemptTime, const Duration(microseconds: 100));
+      expect(metrics.totalLatency, const Duration(milliseconds: 90));
+    });
+
     group('$DatabaseReference', () {
       test('set', () async {
         final dynamic value = <String, dynamic>{'hello': 'world'};
@@ -280,6 +344,86 @@ void main() {
           throwsA(isInstanceOf<AssertionError>()),
         );
       });
+
+      test('bulkSet', () async {
+        final Map<String, dynamic> values = <String, dynamic>{
+          'users/a/name': 'A',
+          'users/b': <String, dynamic>{'name': 'B'},
+          'private/a': true,
+        };
+        final BulkSetResult result =
+            await database.reference().child('foo').bulkSet(values);
+        expect(
+          log,
+          <Matcher>[
+            isMethodCall(
+              'DatabaseReference#bulkSet',
+              arguments: <String, dynamic>{
+                'app': app.name,
+                'databaseURL': databaseURL,
+                'path': 'foo',
+                'paths': <String>['users/a/name', 'users/b', 'private/a'],
+                'values': <dynamic>[
+                  'A',
+                  <String, dynamic>{'name': 'B'},
+                  true,
+                ],
+              },
+            ),
+          ],
+        );
+        expect(result.succeeded, isFalse);
+        expect(result.updateCount, 2);
+        expect(result.failures.keys, <String>['private/a']);
+        expect(result.failures['private/a'].message, 'Permission denied');
+      });
+
+      test('runNativeTransaction', () async {
+        final DatabaseReference reference = database.reference().child('foo');
+        final TransactionResult result = await reference
+            .runNativeTransaction(TransactionOperation.increment(3));
+        await reference.runNativeTransaction(TransactionOperation.append('x'));
+        await reference.runNativeTransaction(
+            TransactionOperation.compareAndSet('a', 'b', field: 'state'));
+        expect(result.committed, isTrue);
+        expect(result.error, isNull);
+        expect(result.dataSnapshot.value, 8);
+        expect(
+          log.map((MethodCall call) => call.arguments['operation']),
+          <Map<String, dynamic>>[
+            <String, dynamic>{'type': 'increment', 'delta': 3},
+            <String, dynamic>{'type': 'append', 'value': 'x'},
+            <String, dynamic>{
+              'type': 'compareAndSet',
+              'field': 'state',
+              'expected': 'a',
+              'value': 'b',
+            },
+          ],
+        );
+        expect(
+          log.first,
+          isMethodCall(
+            'DatabaseReference#runNativeTransaction',
+            arguments: <String, dynamic>{
+              'app': app.name,
+              'databaseURL': databaseURL,
+              'path': 'foo',
+              'operation': <String, dynamic>{'type': 'increment', 'delta': 3},
+            },
+          ),
+        );
+      });
+
+      test('runNativeTransaction compareAndSet on an empty location',
+          () async {
+        final DatabaseReference reference = database.reference().child('empty');
+        final TransactionResult result = await reference.runNativeTransaction(
+            TransactionOperation.compareAndSet('a', 'b'));
+        expect(result.committed, isFalse);
+        expect(result.error, isNull);
+        expect(result.dataSnapshot.value, isNull);
+      });
     });
 
     group('$OnDisconnect', () {
@@ -556,6 +700,212 @@ void main() {
           ],
         );
       });
+      test('observing batched child events', () async {
+        mockHandleId = 42;
+        final String path = 'foo';
+        final Query query =
+            database.reference().child(path).batchChildEvents(maxBatchSize: 50);
+        final AsyncQueue<Event> events = AsyncQueue<Event>();
+
+        // Subscribe and allow subscription to complete.
+        final StreamSubscription<Event> subscription =
+            query.onChildAdded.listen(events.add);
+        await Future<void>.delayed(const Duration(seconds: 0));
+
+        await BinaryMessages.handlePlatformMessage(
+          channel.name,
+          channel.codec.encodeMethodCall(
+            MethodCall('Events', <String, dynamic>{
+              'handle': 42,
+              'events': <Map<String, dynamic>>[
+                <String, dynamic>{
+                  'snapshot': <String, dynamic>{'key': 'a', 'value': 1},
+                  'previousSiblingKey': null,
+                },
+                <String, dynamic>{
+                  'snapshot': <String, dynamic>{'key': 'b', 'value': 2},
+                  'previousSiblingKey': 'a',
+                },
+              ],
+            }),
+          ),
+          (_) {},
+        );
+        final Event event1 = await events.remove();
+        final Event event2 = await events.remove();
+        expect(event1.snapshot.key, 'a');
+        expect(event1.snapshot.value, 1);
+        expect(event1.previousSiblingKey, isNull);
+        expect(event2.snapshot.key, 'b');
+        expect(event2.previousSiblingKey, 'a');
+
+        subscription.cancel();
+        await Future<void>.delayed(const Duration(seconds: 0));
+
+        expect(
+          log.first,
+          isMethodCall(
+            'Query#observe',
+            arguments: <String, dynamic>{
+              'app': app.name,
+              'databaseURL': databaseURL,
+              'path': path,
+              'parameters': <String, dynamic>{},
+              'eventType': '_EventType.childAdded',
+              'maxBatchSize': 50,
+            },
+          ),
+        );
+      });
+      test('observing several child event types', () async {
+        mockHandleId = 43;
+        final String path = 'foo';
+        final Query query = database.reference().child(path);
+        Future<void> simulateEvent(String eventType, String key) async {
+          await BinaryMessages.handlePlatformMessage(
+            channel.name,
+            channel.codec.encodeMethodCall(
+              MethodCall('Event', <String, dynamic>{
+                'handle': 43,
+                'eventType': eventType,
+                'snapshot': <String, dynamic>{'key': key, 'value': key},
+              }),
+            ),
+            (_) {},
+          );
+        }
+
+        final AsyncQueue<Event> events = AsyncQueue<Event>();
+
+        // Subscribe and allow subscription to complete.
+        final Set<ChildEventType> eventTypes = Set<ChildEventType>.from(
+            <ChildEventType>[ChildEventType.added, ChildEventType.removed]);
+        final StreamSubscription<Event> subscription =
+            query.onChildEvents(eventTypes).listen(events.add);
+        await Future<void>.delayed(const Duration(seconds: 0));
+
+        await simulateEvent('_EventType.childAdded', 'a');
+        await simulateEvent('_EventType.childRemoved', 'a');
+        final Event event1 = await events.remove();
+        final Event event2 = await events.remove();
+        expect(event1.type, ChildEventType.added);
+        expect(event1.snapshot.key, 'a');
+        expect(event2.type, ChildEventType.removed);
+
+        subscription.cancel();
+        await Future<void>.delayed(const Duration(seconds: 0));
+
+        expect(
+          log.first,
+          isMethodCall(
+            'Query#observe',
+            arguments: <String, dynamic>{
+              'app': app.name,
+              'databaseURL': databaseURL,
+              'path': path,
+              'parameters': <String, dynamic>{},
+              'eventTypes': <String>[
+                '_EventType.childAdded',
+                '_EventType.childRemoved',
+              ],
+            },
+          ),
+        );
+      });
+      test('observing several child event types on iOS', () async {
+        debugDefaultTargetPlatformOverride = TargetPlatform.iOS;
+        mockHandleId = 44;
+        final String path = 'foo';
+        final Query query = database.reference().child(path);
+        Future<void> simulateEvent(int handle, String key) async {
+          await BinaryMessages.handlePlatformMessage(
+            channel.name,
+            channel.codec.encodeMethodCall(
+              MethodCall('Event', <String, dynamic>{
+                'handle': handle,
+                'snapshot': <String, dynamic>{'key': key, 'value': key},
+              }),
+            ),
+            (_) {},
+          );
+        }
+
+        final AsyncQueue<Event> events = AsyncQueue<Event>();
+
+        // Subscribe and allow subscription to complete.
+        final Set<ChildEventType> eventTypes = Set<ChildEventType>.from(
+            <ChildEventType>[ChildEventType.added, ChildEventType.removed]);
+        final StreamSubscription<Event> subscription =
+            query.onChildEvents(eventTypes).listen(events.add);
+        await Future<void>.delayed(const Duration(seconds: 0));
+
+        await simulateEvent(44, 'a');
+        await simulateEvent(45, 'a');
+        final Event event1 = await events.remove();
+        final Event event2 = await events.remove();
+        expect(event1.type, ChildEventType.added);
+        expect(event1.snapshot.key, 'a');
+        expect(event2.type, ChildEventType.removed);
+
+        subscription.cancel();
+        await Future<void>.delayed(const Duration(seconds: 0));
+
+        expect(
+          log.where((MethodCall call) => call.method == 'Query#observe'),
+          <Matcher>[
+            isMethodCall(
+              'Query#observe',
+              arguments: <String, dynamic>{
+                'app': app.name,
+                'databaseURL': databaseURL,
+                'path': path,
+                'parameters': <String, dynamic>{},
+                'eventType': '_EventType.childAdded',
+              },
+            ),
+            isMethodCall(
+              'Query#observe',
+              arguments: <String, dynamic>{
+                'app': app.name,
+                'databaseURL': databaseURL,
+                'path': path,
+                'parameters': <String, dynamic>{},
+                'eventType': '_EventType.childRemoved',
+              },
+            ),
+          ],
+        );
+      });
+      test('observing projected events', () async {
+        final Query query = database
+            .reference()
+            .child('foo')
+            .project(maxDepth: 2, fields: <String>['title', 'author'])
+            .batchChildEvents()
+            .limitToFirst(10);
+        final StreamSubscription<Event> subscription =
+            query.onChildAdded.listen((_) {});
+        await Future<void>.delayed(const Duration(seconds: 0));
+        subscription.cancel();
+        await Future<void>.delayed(const Duration(seconds: 0));
+
+        expect(
+          log.first,
+          isMethodCall(
+            'Query#observe',
+            arguments: <String, dynamic>{
+              'app': app.name,
+              'databaseURL': databaseURL,
+              'path': 'foo',
+              'parameters': <String, dynamic>{'limitToFirst': 10},
+              'eventType': '_EventType.childAdded',
+              'maxDepth': 2,
+              'fields': <String>['title', 'author'],
+              'maxBatchSize': 500,
+            },
+          ),
+        );
+      });
     });
   });
 }